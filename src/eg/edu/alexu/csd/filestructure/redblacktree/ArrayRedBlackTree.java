@@ -0,0 +1,356 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Red black tree stored as parallel arrays instead of a graph of {@link Node}s.
+ * A node is an int slot: its links live in the left/right/parent arrays, its color
+ * in one bit of a packed bitset and its entry in the keys/values arrays. Deleted
+ * slots are chained into a free list and handed out again before the arrays grow.
+ */
+class ArrayRedBlackTree<T extends Comparable<T>, V> extends IndexedRedBlackTree implements IRedBlackTree<T, V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private long[] red;
+    private Object[] keys;
+    private Object[] values;
+    private int top;
+    private int free;
+    private final Comparator<? super T> comparator;
+
+    ArrayRedBlackTree() {
+        this(INITIAL_CAPACITY, null);
+    }
+
+    /**
+     * Creates a tree ordered by the given comparator, or by the keys' natural ordering if it is null.
+     */
+    ArrayRedBlackTree(Comparator<? super T> comparator) {
+        this(INITIAL_CAPACITY, comparator);
+    }
+
+    ArrayRedBlackTree(int capacity, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        allocate(Math.max(capacity, 1) + 1);
+    }
+
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    private void allocate(int capacity) {
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        red = new long[(capacity + 63) >>> 6];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        root = NIL;
+        top = 1;
+        free = NIL;
+    }
+
+    /**
+     * return the root of the given Red black tree.
+     *
+     * @return root.
+     */
+    public INode<T, V> getRoot() {
+        return new SlotNode(root);
+    }
+
+    /**
+     * return whether the given tree isEmpty or not.
+     *
+     * @return boolean represent the state of the tree.
+     */
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    /**
+     * Clear all keys in the given tree.
+     */
+    public void clear() {
+        allocate(INITIAL_CAPACITY + 1);
+    }
+
+    /**
+     * return the value associated with the given key or null if no value is found.
+     *
+     * @param key to search.
+     * @return value associated with this key.
+     */
+    public V search(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null key!"));
+        }
+        return value(getSlotWithKey(key));
+    }
+
+    /**
+     * return true if the tree contains the given key and false otherwise.
+     *
+     * @param key to search.
+     * @return found key in tree or not.
+     */
+    public boolean contains(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't check for a null key"));
+        }
+        return getSlotWithKey(key) != NIL;
+    }
+
+    /**
+     * Insert the given key in the tree while maintaining the red black tree properties.
+     * If the key is already present in the tree, update its value.
+     *
+     * @param key   to be inserted
+     * @param value the associated value with the given key
+     * @return the value the key had before, or null if a new node was created.
+     */
+    public V insert(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        int current = root;
+        int currentParent = NIL;
+        int comparison = 0;
+        while (current != NIL) {
+            currentParent = current;
+            comparison = compare(key, key(current));
+            if (comparison < 0) {
+                current = left[current];
+            } else if (comparison > 0) {
+                current = right[current];
+            } else {
+                V previous = value(current);
+                values[current] = value;
+                return previous;
+            }
+        }
+        link(newSlot(key, value), currentParent, comparison < 0);
+        return null;
+    }
+
+    /**
+     * Delete the node associated with the given key.
+     * Return true in case of success and false otherwise.
+     *
+     * @param key to be deleted.
+     * @return true in case of success and false otherwise.
+     */
+    public boolean delete(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't delete a null key!"));
+        }
+        int toBeDeleted = getSlotWithKey(key);
+        if (toBeDeleted == NIL) {
+            return false;
+        }
+        freeSlot(unlink(toBeDeleted));
+        return true;
+    }
+
+    private int getSlotWithKey(T key) {
+        int current = root;
+        while (current != NIL) {
+            int comparison = compare(key, key(current));
+            if (comparison < 0) {
+                current = left[current];
+            } else if (comparison > 0) {
+                current = right[current];
+            } else {
+                return current;
+            }
+        }
+        return NIL;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T key(int slot) {
+        return (T) keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot) {
+        return (V) values[slot];
+    }
+
+    int left(int slot) {
+        return left[slot];
+    }
+
+    void setLeft(int slot, int left) {
+        this.left[slot] = left;
+    }
+
+    int right(int slot) {
+        return right[slot];
+    }
+
+    void setRight(int slot, int right) {
+        this.right[slot] = right;
+    }
+
+    int parent(int slot) {
+        return parent[slot];
+    }
+
+    void setParent(int slot, int parent) {
+        this.parent[slot] = parent;
+    }
+
+    boolean isRed(int slot) {
+        return (red[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    void setRed(int slot, boolean isRed) {
+        if (isRed) {
+            red[slot >>> 6] |= 1L << slot;
+        } else {
+            red[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    void copyEntry(int from, int to) {
+        keys[to] = keys[from];
+        values[to] = values[from];
+    }
+
+    private int newSlot(T key, V value) {
+        int slot;
+        if (free != NIL) {
+            slot = free;
+            free = left[slot];
+        } else {
+            if (top == keys.length) {
+                grow();
+            }
+            slot = top++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        return slot;
+    }
+
+    private void freeSlot(int slot) {
+        keys[slot] = null;
+        values[slot] = null;
+        right[slot] = NIL;
+        parent[slot] = NIL;
+        setRed(slot, false);
+        left[slot] = free;
+        free = slot;
+    }
+
+    private void grow() {
+        int capacity = keys.length + (keys.length >> 1) + 1;
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        red = Arrays.copyOf(red, (capacity + 63) >>> 6);
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    /**
+     * {@link INode} view of a slot. Views are created on demand and write through to the arrays.
+     * Slot 0 is the shared sentinel leaf, so writes through its view are ignored.
+     */
+    private final class SlotNode implements INode<T, V> {
+        private final int slot;
+
+        SlotNode(int slot) {
+            this.slot = slot;
+        }
+
+        public void setParent(INode<T, V> parent) {
+            if (slot != NIL) {
+                ArrayRedBlackTree.this.parent[slot] = slotOf(parent);
+            }
+        }
+
+        public INode<T, V> getParent() {
+            return slot == root || slot == NIL ? null : new SlotNode(parent[slot]);
+        }
+
+        public void setLeftChild(INode<T, V> leftChild) {
+            if (slot != NIL) {
+                left[slot] = slotOf(leftChild);
+            }
+        }
+
+        public INode<T, V> getLeftChild() {
+            return slot == NIL ? null : new SlotNode(left[slot]);
+        }
+
+        public void setRightChild(INode<T, V> rightChild) {
+            if (slot != NIL) {
+                right[slot] = slotOf(rightChild);
+            }
+        }
+
+        public INode<T, V> getRightChild() {
+            return slot == NIL ? null : new SlotNode(right[slot]);
+        }
+
+        public T getKey() {
+            return key(slot);
+        }
+
+        public void setKey(T key) {
+            if (slot != NIL) {
+                keys[slot] = key;
+            }
+        }
+
+        public V getValue() {
+            return value(slot);
+        }
+
+        public void setValue(V value) {
+            if (slot != NIL) {
+                values[slot] = value;
+            }
+        }
+
+        public boolean getColor() {
+            return isRed(slot) ? INode.RED : INode.BLACK;
+        }
+
+        public void setColor(boolean color) {
+            if (slot != NIL) {
+                setRed(slot, color == INode.RED);
+            }
+        }
+
+        public boolean isNull() {
+            return slot == NIL;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int slotOf(INode<T, V> node) {
+            return node == null ? NIL : ((SlotNode) node).slot;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ArrayRedBlackTree<?, ?>.SlotNode && ((ArrayRedBlackTree<?, ?>.SlotNode) o).slot == slot;
+        }
+
+        @Override
+        public int hashCode() {
+            return slot;
+        }
+    }
+}
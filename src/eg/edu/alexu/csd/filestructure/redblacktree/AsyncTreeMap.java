@@ -0,0 +1,232 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Asynchronous front end to a plain {@link TreeMap} that only one thread ever touches.
+ * Callers queue requests and get futures back; the owner thread drains the queue in short
+ * batches, in the style of flat combining, so callers never contend on the tree itself.
+ * Each run of consecutive puts and removes in a batch is applied with one
+ * {@link TreeMap#applyBatch} call. Futures complete on the owner thread, so callers should
+ * chain work with the async variants of the CompletableFuture methods rather than run it there.
+ */
+class AsyncTreeMap<T extends Comparable<T>, V> implements AutoCloseable {
+
+    /**
+     * Most requests the owner takes from the queue before answering them.
+     */
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * Times the owner yields to callers on an empty queue before it parks, since waking it
+     * costs a callers' unpark and a context switch.
+     */
+    private static final int SPINS = 64;
+
+    /**
+     * A put or remove when op is set, any other operation on the map otherwise.
+     */
+    private static final class Request<T extends Comparable<T>, V> {
+        final Op<T, V> op;
+        final Function<ITreeMap<T, V>, ?> read;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Request(Op<T, V> op, Function<ITreeMap<T, V>, ?> read) {
+            this.op = op;
+            this.read = read;
+        }
+    }
+
+    private final TreeMap<T, V> map;
+    private final ConcurrentLinkedQueue<Request<T, V>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean sleeping = new AtomicBoolean();
+    private final Thread owner;
+    private volatile boolean closed;
+
+    AsyncTreeMap() {
+        this(null);
+    }
+
+    AsyncTreeMap(Comparator<? super T> comparator) {
+        map = new TreeMap<T, V>(comparator);
+        owner = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        }, "async-tree-map");
+        owner.setDaemon(true);
+        owner.start();
+    }
+
+    /**
+     * Maps key to value; the future holds the value key had before, or null.
+     */
+    public CompletableFuture<V> put(T key, V value) {
+        return submit(Op.put(key, value), null);
+    }
+
+    /**
+     * Removes key; the future holds whether it was present.
+     */
+    public CompletableFuture<Boolean> remove(T key) {
+        CompletableFuture<V> previous = submit(Op.<T, V>remove(key), null);
+        return previous.thenApply(value -> value != null);
+    }
+
+    public CompletableFuture<V> get(T key) {
+        return submit(map -> map.get(key));
+    }
+
+    public CompletableFuture<Boolean> containsKey(T key) {
+        return submit(map -> map.containsKey(key));
+    }
+
+    public CompletableFuture<Map.Entry<T, V>> ceilingEntry(T key) {
+        return submit(map -> map.ceilingEntry(key));
+    }
+
+    public CompletableFuture<Map.Entry<T, V>> floorEntry(T key) {
+        return submit(map -> map.floorEntry(key));
+    }
+
+    public CompletableFuture<Map.Entry<T, V>> firstEntry() {
+        return submit(ITreeMap::firstEntry);
+    }
+
+    public CompletableFuture<Map.Entry<T, V>> lastEntry() {
+        return submit(ITreeMap::lastEntry);
+    }
+
+    public CompletableFuture<ArrayList<Map.Entry<T, V>>> headMap(T toKey, boolean inclusive) {
+        return submit(map -> map.headMap(toKey, inclusive));
+    }
+
+    public CompletableFuture<Integer> size() {
+        return submit(ITreeMap::size);
+    }
+
+    /**
+     * Runs any operation on the owner thread, in order with the other requests.
+     * @param action to run against the map; it must not keep a reference to it.
+     * @return future holding the action's result.
+     */
+    public <R> CompletableFuture<R> submit(Function<ITreeMap<T, V>, R> action) {
+        if (action == null) {
+            throw new RuntimeErrorException(new Error("Can't submit a null action"));
+        }
+        return submit(null, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> CompletableFuture<R> submit(Op<T, V> op, Function<ITreeMap<T, V>, ?> read) {
+        Request<T, V> request = new Request<>(op, read);
+        if (closed) {
+            request.future.completeExceptionally(new RuntimeErrorException(new Error("Can't use a closed map")));
+        } else {
+            queue.offer(request);
+            if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+                LockSupport.unpark(owner);
+            }
+            if (closed && queue.remove(request)) {
+                request.future.completeExceptionally(new RuntimeErrorException(new Error("Can't use a closed map")));
+            }
+        }
+        return (CompletableFuture<R>) (CompletableFuture<?>) request.future;
+    }
+
+    /**
+     * Answers every request already queued, then stops the owner thread.
+     * An interrupt while waiting for the owner doesn't cut this short; it is kept set on return.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(owner);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                owner.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve() {
+        List<Request<T, V>> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            Request<T, V> request;
+            while (batch.size() < MAX_BATCH && (request = queue.poll()) != null) {
+                batch.add(request);
+            }
+            if (!batch.isEmpty()) {
+                execute(batch);
+                batch.clear();
+                continue;
+            }
+            if (closed) {
+                for (Request<T, V> late; (late = queue.poll()) != null; ) {
+                    late.future.completeExceptionally(new RuntimeErrorException(new Error("Can't use a closed map")));
+                }
+                return;
+            }
+            for (int spin = 0; spin < SPINS && queue.isEmpty() && !closed; spin++) {
+                Thread.yield();
+            }
+            sleeping.set(true);
+            if (queue.isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+            sleeping.set(false);
+        }
+    }
+
+    /**
+     * Answers every request in the batch. Whatever a request throws, errors included, only fails
+     * its own future, since the owner thread dying would leave every later future pending.
+     */
+    private void execute(List<Request<T, V>> batch) {
+        List<Op<T, V>> ops = new ArrayList<>();
+        int runStart = 0;
+        for (int i = 0; i <= batch.size(); i++) {
+            Request<T, V> request = i < batch.size() ? batch.get(i) : null;
+            if (request != null && request.op != null) {
+                ops.add(request.op);
+                continue;
+            }
+            if (!ops.isEmpty()) {
+                try {
+                    List<V> previous = map.applyBatch(ops);
+                    for (int j = 0; j < ops.size(); j++) {
+                        batch.get(runStart + j).future.complete(previous.get(j));
+                    }
+                } catch (Throwable e) {
+                    for (int j = 0; j < ops.size(); j++) {
+                        batch.get(runStart + j).future.completeExceptionally(e);
+                    }
+                }
+                ops.clear();
+            }
+            runStart = i + 1;
+            if (request != null) {
+                try {
+                    request.future.complete(request.read.apply(map));
+                } catch (Throwable e) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,855 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import eg.edu.alexu.csd.filestructure.redblacktree.server.LoadGenerator;
+import eg.edu.alexu.csd.filestructure.redblacktree.server.TreeMapServer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rough wall-clock benchmarks for the tree engines. Run with the suite name as the
+ * first argument, e.g. {@code java Benchmark engines 1000000}.
+ */
+public class Benchmark {
+
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        String suite = args.length > 0 ? args[0] : "engines";
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        switch (suite) {
+            case "engines":
+                engines(n);
+                break;
+            case "offheap":
+                offHeap(n);
+                break;
+            case "bulkload":
+                bulkLoad(n);
+                break;
+            case "append":
+                append(n);
+                break;
+            case "concurrent":
+                concurrent(n);
+                break;
+            case "snapshot":
+                snapshot(n);
+                break;
+            case "scalability":
+                scalability(n);
+                break;
+            case "batch":
+                batch(n);
+                break;
+            case "scan":
+                scan(n);
+                break;
+            case "ranges":
+                ranges(n);
+                break;
+            case "navigation":
+                navigation(n);
+                break;
+            case "compute":
+                compute(n);
+                break;
+            case "views":
+                views(n);
+                break;
+            case "stream":
+                stream(n);
+                break;
+            case "setops":
+                setOperations(n);
+                break;
+            case "server":
+                server(n);
+                break;
+            case "async":
+                async(n);
+                break;
+            case "locking":
+                locking(n);
+                break;
+            default:
+                System.out.println("Unknown suite " + suite);
+        }
+    }
+
+    /**
+     * Footprint and insert/search throughput of the node based, array based and top down trees.
+     */
+    static void engines(int n) {
+        Integer[] keys = randomKeys(n);
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            engine("RedBlackTree", new RedBlackTree<Integer, Integer>(), keys);
+            engine("ArrayRedBlackTree", new ArrayRedBlackTree<Integer, Integer>(), keys);
+            engine("TopDownRedBlackTree", new TopDownRedBlackTree<Integer, Integer>(), keys);
+        }
+    }
+
+    private static void engine(String name, IRedBlackTree<Integer, Integer> tree, Integer[] keys) {
+        long before = usedMemory();
+        long start = System.nanoTime();
+        for (Integer key : keys) {
+            tree.insert(key, key);
+        }
+        long inserted = System.nanoTime();
+        long found = 0;
+        for (Integer key : keys) {
+            if (tree.search(key) != null) {
+                found++;
+            }
+        }
+        long searched = System.nanoTime();
+        long bytes = usedMemory() - before;
+        System.out.printf("  %-20s insert %8.1f ns/op  search %8.1f ns/op  %6.1f bytes/entry (%d found)%n",
+                name, (inserted - start) / (double) keys.length, (searched - inserted) / (double) keys.length,
+                bytes / (double) keys.length, found);
+        tree.clear();
+    }
+
+    /**
+     * Heap growth and collector work while filling a long to long map on and off heap.
+     */
+    static void offHeap(int n) {
+        Random random = new Random(SEED);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextLong();
+        }
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            long before = usedMemory();
+            long collections = collections();
+            long start = System.nanoTime();
+            LongRedBlackTree<Long> onHeap = new LongRedBlackTree<>();
+            for (long key : keys) {
+                onHeap.put(key, key);
+            }
+            report("LongRedBlackTree", start, collections, before, n);
+            onHeap.clear();
+            before = usedMemory();
+            collections = collections();
+            start = System.nanoTime();
+            OffHeapLongRedBlackTree offHeap = new OffHeapLongRedBlackTree();
+            for (long key : keys) {
+                offHeap.put(key, key);
+            }
+            report("OffHeapLongRedBlackTree", start, collections, before, n);
+            offHeap.close();
+        }
+    }
+
+    private static void report(String name, long start, long collections, long before, int n) {
+        long elapsed = System.nanoTime() - start;
+        long gcs = collections() - collections;
+        System.out.printf("  %-24s put %8.1f ns/op  %4d collections  %6.1f heap bytes/entry%n",
+                name, elapsed / (double) n, gcs, (usedMemory() - before) / (double) n);
+    }
+
+    static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += bean.getCollectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * Rebuilding a map from a sorted snapshot with n puts and with one bulk load.
+     */
+    static void bulkLoad(int n) {
+        SortedMap<Integer, Integer> snapshot = new java.util.TreeMap<>();
+        for (Integer key : randomKeys(n)) {
+            snapshot.put(key, key);
+        }
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            long start = System.nanoTime();
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            for (Map.Entry<Integer, Integer> entry : snapshot.entrySet()) {
+                map.put(entry.getKey(), entry.getValue());
+            }
+            long puts = System.nanoTime();
+            map = new TreeMap<>();
+            map.putAll(snapshot);
+            long bulk = System.nanoTime();
+            System.out.printf("  put loop %8.1f ms  putAll(sorted) %8.1f ms  (%d entries)%n",
+                    (puts - start) / 1e6, (bulk - puts) / 1e6, map.size());
+        }
+    }
+
+    /**
+     * Insert throughput for ascending, descending and random keys.
+     */
+    static void append(int n) {
+        Integer[] ascending = new Integer[n];
+        Integer[] descending = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ascending[i] = i;
+            descending[i] = n - i;
+        }
+        Integer[] random = randomKeys(n);
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("round %d  sequential %7.1f ns/op  reverse %7.1f ns/op  random %7.1f ns/op%n", round,
+                    insertTime(ascending), insertTime(descending), insertTime(random));
+        }
+    }
+
+    private static double insertTime(Integer[] keys) {
+        RedBlackTree<Integer, Integer> tree = new RedBlackTree<>();
+        long start = System.nanoTime();
+        for (Integer key : keys) {
+            tree.insert(key, key);
+        }
+        return (System.nanoTime() - start) / (double) keys.length;
+    }
+
+    /**
+     * Total throughput of a synchronized TreeMap, the StampedLock map and the sharded map for growing thread
+     * counts and write ratios. Keys are drawn from twice the preloaded range so about half
+     * of the lookups miss.
+     */
+    static void concurrent(int n) {
+        int[] threadCounts = {1, 2, 4, 8};
+        int[] writePercents = {0, 1, 10, 50};
+        for (int writePercent : writePercents) {
+            for (int threads : threadCounts) {
+                double locked = throughput(new TreeMap<Integer, Integer>(), true, n, threads, writePercent);
+                double optimistic = throughput(new ConcurrentTreeMap<Integer, Integer>(), false, n, threads, writePercent);
+                double sharded = throughput(new ShardedTreeMap<Integer, Integer>(), false, n, threads, writePercent);
+                System.out.printf("  writes %2d%%  threads %d  synchronized %8.2f Mops/s  stamped %8.2f Mops/s"
+                        + "  sharded %8.2f Mops/s%n", writePercent, threads, locked, optimistic, sharded);
+            }
+        }
+    }
+
+    /**
+     * Total throughput of a synchronized TreeMap and the lock free map from 1 to 64 threads.
+     */
+    static void scalability(int n) {
+        int[] writePercents = {10, 50};
+        for (int writePercent : writePercents) {
+            for (int threads = 1; threads <= 64; threads *= 2) {
+                double locked = throughput(new TreeMap<Integer, Integer>(), true, n, threads, writePercent);
+                double lockFree = throughput(new LockFreeTreeMap<Integer, Integer>(), false, n, threads, writePercent);
+                System.out.printf("  writes %2d%%  threads %2d  synchronized %8.2f Mops/s  lock free %8.2f Mops/s%n",
+                        writePercent, threads, locked, lockFree);
+            }
+        }
+    }
+
+    /**
+     * Total throughput of a synchronized TreeMap and the asynchronous map, with each caller
+     * waiting on every request and with up to 64 requests in flight per caller.
+     */
+    static void async(int n) throws Exception {
+        int writePercent = 20;
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            double locked = throughput(new TreeMap<Integer, Integer>(), true, n, threads, writePercent);
+            double waiting = asyncThroughput(n, threads, writePercent, 1);
+            double pipelined = asyncThroughput(n, threads, writePercent, 64);
+            System.out.printf("  writes %2d%%  threads %2d  synchronized %8.2f Mops/s  async %8.2f Mops/s"
+                    + "  async 64 in flight %8.2f Mops/s%n", writePercent, threads, locked, waiting, pipelined);
+        }
+    }
+
+    /**
+     * Total throughput of a synchronized RedBlackTree and the lock coupled tree for growing
+     * thread counts and write ratios.
+     */
+    static void locking(int n) {
+        int[] writePercents = {10, 50};
+        for (int writePercent : writePercents) {
+            for (int threads = 1; threads <= 8; threads *= 2) {
+                double locked = treeThroughput(new RedBlackTree<Integer, Integer>(), true, n, threads, writePercent);
+                double coupled = treeThroughput(new LockCouplingRedBlackTree<Integer, Integer>(), false, n, threads,
+                        writePercent);
+                System.out.printf("  writes %2d%%  threads %d  synchronized %8.2f Mops/s  lock coupling %8.2f Mops/s%n",
+                        writePercent, threads, locked, coupled);
+            }
+        }
+    }
+
+    private static double treeThroughput(final IRedBlackTree<Integer, Integer> tree, final boolean synchronize,
+                                         final int n, int threads, final int writePercent) {
+        for (int i = 0; i < n; i += 2) {
+            tree.insert(i, i);
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long done = 0;
+                    started.countDown();
+                    while (running.get()) {
+                        Integer key = random.nextInt(n);
+                        boolean write = random.nextInt(100) < writePercent;
+                        if (synchronize) {
+                            synchronized (tree) {
+                                operate(tree, key, write);
+                            }
+                        } else {
+                            operate(tree, key, write);
+                        }
+                        done++;
+                    }
+                    operations.addAndGet(done);
+                }
+            });
+            workers[t].start();
+        }
+        try {
+            started.await();
+            long start = System.nanoTime();
+            Thread.sleep(500);
+            running.set(false);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return operations.get() / ((System.nanoTime() - start) / 1e3);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private static void operate(IRedBlackTree<Integer, Integer> tree, Integer key, boolean write) {
+        if (!write) {
+            tree.search(key);
+        } else if ((key & 1) == 0) {
+            tree.insert(key + 1, key);
+        } else {
+            tree.delete(key);
+        }
+    }
+
+    private static double asyncThroughput(final int n, int threads, final int writePercent, final int window)
+            throws Exception {
+        final AsyncTreeMap<Integer, Integer> map = new AsyncTreeMap<>();
+        for (int i = 0; i < n; i += 2) {
+            map.put(i, i);
+        }
+        map.size().join();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    ArrayDeque<CompletableFuture<?>> inFlight = new ArrayDeque<>(window);
+                    long done = 0;
+                    started.countDown();
+                    while (running.get()) {
+                        if (inFlight.size() == window) {
+                            inFlight.poll().join();
+                        }
+                        Integer key = random.nextInt(n);
+                        if (random.nextInt(100) >= writePercent) {
+                            inFlight.add(map.get(key));
+                        } else if ((key & 1) == 0) {
+                            inFlight.add(map.put(key + 1, key));
+                        } else {
+                            inFlight.add(map.remove(key));
+                        }
+                        done++;
+                    }
+                    for (CompletableFuture<?> future : inFlight) {
+                        future.join();
+                    }
+                    operations.addAndGet(done);
+                }
+            });
+            workers[t].start();
+        }
+        started.await();
+        long start = System.nanoTime();
+        Thread.sleep(500);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double result = operations.get() / ((System.nanoTime() - start) / 1e3);
+        map.close();
+        return result;
+    }
+
+    private static double throughput(final ITreeMap<Integer, Integer> map, final boolean synchronize, final int n,
+                                     int threads, final int writePercent) {
+        for (int i = 0; i < n; i += 2) {
+            map.put(i, i);
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong operations = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long done = 0;
+                    started.countDown();
+                    while (running.get()) {
+                        Integer key = random.nextInt(n);
+                        boolean write = random.nextInt(100) < writePercent;
+                        if (synchronize) {
+                            synchronized (map) {
+                                operate(map, key, write);
+                            }
+                        } else {
+                            operate(map, key, write);
+                        }
+                        done++;
+                    }
+                    operations.addAndGet(done);
+                }
+            });
+            workers[t].start();
+        }
+        try {
+            started.await();
+            long start = System.nanoTime();
+            Thread.sleep(500);
+            running.set(false);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return operations.get() / ((System.nanoTime() - start) / 1e3);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private static void operate(ITreeMap<Integer, Integer> map, Integer key, boolean write) {
+        if (!write) {
+            map.get(key);
+        } else if ((key & 1) == 0) {
+            map.put(key + 1, key);
+        } else {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Full in order scan of a map of n entries, with the java.util.Stack walk TreeMap used to do,
+     * the same walk on an ArrayDeque and the parent linked NodeIterator both ways.
+     */
+    @SuppressWarnings("UseOfObsoleteCollectionType")
+    static void scan(int n) {
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new java.util.AbstractMap.SimpleImmutableEntry<>(i, i));
+        }
+        TreeMap<Integer, Integer> map = TreeMap.fromSorted(entries.iterator());
+        entries = null;
+        INode<Integer, Integer> root = map.tree().getRoot();
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            java.util.Stack<INode<Integer, Integer>> stack = new java.util.Stack<>();
+            INode<Integer, Integer> current = root;
+            while (!current.isNull() || !stack.empty()) {
+                while (!current.isNull()) {
+                    stack.push(current);
+                    current = current.getLeftChild();
+                }
+                current = stack.pop();
+                sum += current.getKey();
+                current = current.getRightChild();
+            }
+            long stacked = System.nanoTime();
+            ArrayDeque<INode<Integer, Integer>> deque = new ArrayDeque<>();
+            current = root;
+            while (!current.isNull() || !deque.isEmpty()) {
+                while (!current.isNull()) {
+                    deque.push(current);
+                    current = current.getLeftChild();
+                }
+                current = deque.pop();
+                sum += current.getKey();
+                current = current.getRightChild();
+            }
+            long dequed = System.nanoTime();
+            for (NodeIterator<Integer, Integer> nodes = new NodeIterator<>(map.tree().first(), false); nodes.hasNext(); ) {
+                sum += nodes.next().getKey();
+            }
+            long ascending = System.nanoTime();
+            for (NodeIterator<Integer, Integer> nodes = new NodeIterator<>(map.tree().last(), true); nodes.hasNext(); ) {
+                sum += nodes.next().getKey();
+            }
+            long descending = System.nanoTime();
+            System.out.printf("round %d  Stack %7.1f ms  ArrayDeque %7.1f ms  NodeIterator %7.1f ms"
+                            + "  descending %7.1f ms  (%d)%n", round, (stacked - start) / 1e6, (dequed - stacked) / 1e6,
+                    (ascending - dequed) / 1e6, (descending - ascending) / 1e6, sum);
+        }
+    }
+
+    /**
+     * Reading the first 100 entries of a range covering half of a map of n entries, through the
+     * copied headMap and through the lazy range views.
+     */
+    static void ranges(int n) {
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new java.util.AbstractMap.SimpleImmutableEntry<>(i, i));
+        }
+        TreeMap<Integer, Integer> map = TreeMap.fromSorted(entries.iterator());
+        entries = null;
+        int queries = 20;
+        for (int round = 0; round < 3; round++) {
+            Random random = new Random(SEED);
+            long sum = 0;
+            long start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                List<Map.Entry<Integer, Integer>> head = map.headMap(n / 2 + random.nextInt(n / 2), false);
+                for (int i = 0; i < 100; i++) {
+                    sum += head.get(i).getValue();
+                }
+            }
+            long copied = System.nanoTime();
+            random = new Random(SEED);
+            for (int q = 0; q < queries; q++) {
+                int taken = 0;
+                for (Integer value : map.headMapView(n / 2 + random.nextInt(n / 2), false).values()) {
+                    sum += value;
+                    if (++taken == 100) {
+                        break;
+                    }
+                }
+            }
+            long lazy = System.nanoTime();
+            random = new Random(SEED);
+            for (int q = 0; q < queries; q++) {
+                int from = random.nextInt(n / 2);
+                int taken = 0;
+                for (Integer value : map.subMap(from, true, from + n / 2, false).values()) {
+                    sum += value;
+                    if (++taken == 100) {
+                        break;
+                    }
+                }
+            }
+            long sub = System.nanoTime();
+            System.out.printf("round %d  per query: headMap copy %9.3f ms  headMapView %7.3f ms  subMap %7.3f ms  (%d)%n",
+                    round, (copied - start) / 1e6 / queries, (lazy - copied) / 1e6 / queries,
+                    (sub - lazy) / 1e6 / queries, sum);
+        }
+    }
+
+    /**
+     * Time and heap allocated per floor, ceiling, higher and lower lookup on a map of n entries,
+     * for the entry and the key variants.
+     */
+    static void navigation(int n) {
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            map.put(i * 2, i);
+        }
+        Integer[] probes = new Integer[1 << 16];
+        Random random = new Random(SEED);
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = random.nextInt(2 * n);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int lookups = 4 * 1000000;
+        for (int round = 0; round < 3; round++) {
+            long sum = 0;
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i += 4) {
+                Integer probe = probes[i & (probes.length - 1)];
+                Map.Entry<Integer, Integer> floor = map.floorEntry(probe);
+                Map.Entry<Integer, Integer> ceiling = map.ceilingEntry(probe);
+                Map.Entry<Integer, Integer> lower = map.lowerEntry(probe);
+                Map.Entry<Integer, Integer> higher = map.higherEntry(probe);
+                sum += (floor == null ? 0 : floor.getValue()) + (ceiling == null ? 0 : ceiling.getValue())
+                        + (lower == null ? 0 : lower.getValue()) + (higher == null ? 0 : higher.getValue());
+            }
+            long entries = System.nanoTime();
+            long entryBytes = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < lookups; i += 4) {
+                Integer probe = probes[i & (probes.length - 1)];
+                Integer floor = map.floorKey(probe);
+                Integer ceiling = map.ceilingKey(probe);
+                Integer lower = map.lowerKey(probe);
+                Integer higher = map.higherKey(probe);
+                sum += (floor == null ? 0 : floor) + (ceiling == null ? 0 : ceiling)
+                        + (lower == null ? 0 : lower) + (higher == null ? 0 : higher);
+            }
+            long keys = System.nanoTime();
+            long keyBytes = threads.getThreadAllocatedBytes(thread);
+            System.out.printf("round %d  entries %6.1f ns/op %5.1f B/op  keys %6.1f ns/op %5.1f B/op  (%d)%n", round,
+                    (entries - start) / (double) lookups, (entryBytes - bytes) / (double) lookups,
+                    (keys - entries) / (double) lookups, (keyBytes - entryBytes) / (double) lookups, sum);
+        }
+    }
+
+    /**
+     * Counting n random keys, half of them new, with containsKey and put the way put used to
+     * keep its size, with get and put, and with merge.
+     */
+    static void compute(int n) {
+        Integer[] keys = new Integer[n];
+        Random random = new Random(SEED);
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt(2 * n);
+        }
+        Integer one = 1;
+        for (int round = 0; round < 3; round++) {
+            TreeMap<Integer, Integer> twice = new TreeMap<>();
+            long start = System.nanoTime();
+            for (Integer key : keys) {
+                Integer count = twice.containsKey(key) ? twice.get(key) + 1 : one;
+                twice.put(key, count);
+            }
+            long contained = System.nanoTime();
+            TreeMap<Integer, Integer> read = new TreeMap<>();
+            for (Integer key : keys) {
+                Integer count = read.get(key);
+                read.put(key, count == null ? one : count + 1);
+            }
+            long got = System.nanoTime();
+            TreeMap<Integer, Integer> merged = new TreeMap<>();
+            for (Integer key : keys) {
+                merged.merge(key, one, Integer::sum);
+            }
+            long end = System.nanoTime();
+            System.out.printf("round %d  containsKey+get+put %6.1f ns/op  get+put %6.1f ns/op  merge %6.1f ns/op  (%d %d %d)%n",
+                    round, (contained - start) / (double) n, (got - contained) / (double) n, (end - got) / (double) n,
+                    twice.size(), read.size(), merged.size());
+        }
+    }
+
+    /**
+     * One full pass over entrySet(), keySet() and values() of a map of n entries, against
+     * copying the entries into a TreeSet the way entrySet() used to.
+     */
+    static void views(int n) {
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        for (Integer key : randomKeys(n)) {
+            map.put(key, key);
+        }
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            Set<Map.Entry<Integer, Integer>> copy = new TreeSet<>(Map.Entry.<Integer, Integer>comparingByKey());
+            copy.addAll(map.entrySet());
+            long copied = System.nanoTime();
+            long sum = 0;
+            for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                sum += entry.getKey();
+            }
+            long entries = System.nanoTime();
+            for (Integer key : map.keySet()) {
+                sum += key;
+            }
+            long keys = System.nanoTime();
+            for (Integer value : map.values()) {
+                sum += value;
+            }
+            long values = System.nanoTime();
+            System.out.printf("round %d  TreeSet copy %7.1f ms  entrySet %7.1f ms  keySet %7.1f ms  values %7.1f ms"
+                            + "  (%d %d)%n", round, (copied - start) / 1e6, (entries - copied) / 1e6,
+                    (keys - entries) / 1e6, (values - keys) / 1e6, copy.size(), sum);
+        }
+    }
+
+    /**
+     * Insert cost of path copying, and the cost of a consistent view: copying the entries of a
+     * TreeMap against taking a snapshot of the persistent tree.
+     */
+    static void snapshot(int n) {
+        Integer[] keys = randomKeys(n);
+        for (int round = 0; round < 3; round++) {
+            System.out.println("round " + round);
+            TreeMap<Integer, Integer> map = new TreeMap<>();
+            long start = System.nanoTime();
+            for (Integer key : keys) {
+                map.put(key, key);
+            }
+            long inserted = System.nanoTime();
+            int copied = new ArrayList<>(map.entrySet()).size();
+            long viewed = System.nanoTime();
+            System.out.printf("  %-24s insert %8.1f ns/op  view %12.3f ms (%d entries)%n", "TreeMap entrySet",
+                    (inserted - start) / (double) n, (viewed - inserted) / 1e6, copied);
+            map = null;
+            PersistentRedBlackTree<Integer, Integer> tree = new PersistentRedBlackTree<>();
+            start = System.nanoTime();
+            for (Integer key : keys) {
+                tree.insert(key, key);
+            }
+            inserted = System.nanoTime();
+            int seen = tree.snapshot().size();
+            viewed = System.nanoTime();
+            System.out.printf("  %-24s insert %8.1f ns/op  view %12.3f ms (%d entries)%n", "PersistentRedBlackTree",
+                    (inserted - start) / (double) n, (viewed - inserted) / 1e6, seen);
+        }
+    }
+
+    /**
+     * Applying batches of random puts and removes to a map of n entries one key at a time
+     * and through applyBatch.
+     */
+    static void batch(int n) {
+        int[] batchSizes = {10000, 100000};
+        Random random = new Random(SEED);
+        for (int batchSize : batchSizes) {
+            List<Op<Integer, Integer>> ops = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                int key = random.nextInt(2 * n);
+                ops.add(random.nextInt(3) == 0 ? Op.<Integer, Integer>remove(key) : Op.put(key, i));
+            }
+            for (int round = 0; round < 5; round++) {
+                TreeMap<Integer, Integer> loop = new TreeMap<>();
+                for (int i = 0; i < 2 * n; i += 2) {
+                    loop.put(i, i);
+                }
+                usedMemory();
+                long start = System.nanoTime();
+                for (Op<Integer, Integer> op : ops) {
+                    if (op.isRemove()) {
+                        loop.remove(op.getKey());
+                    } else {
+                        loop.put(op.getKey(), op.getValue());
+                    }
+                }
+                long looped = System.nanoTime() - start;
+                int loopSize = loop.size();
+                loop = null;
+                TreeMap<Integer, Integer> batched = new TreeMap<>();
+                for (int i = 0; i < 2 * n; i += 2) {
+                    batched.put(i, i);
+                }
+                usedMemory();
+                start = System.nanoTime();
+                batched.applyBatch(ops);
+                long applied = System.nanoTime() - start;
+                System.out.printf("  batch %6d  per key %8.1f ns/op  applyBatch %8.1f ns/op  (%d = %d entries)%n",
+                        batchSize, looped / (double) batchSize, applied / (double) batchSize, loopSize, batched.size());
+            }
+        }
+    }
+
+    /**
+     * Summing the values of a map of n entries through values(), stream() and parallelStream().
+     */
+    static void stream(int n) {
+        TreeMap<Integer, Integer> map = new TreeMap<>();
+        for (Integer key : randomKeys(n)) {
+            map.put(key, key & 1023);
+        }
+        for (int round = 0; round < 5; round++) {
+            usedMemory();
+            long start = System.nanoTime();
+            long copied = 0;
+            for (Integer value : map.values()) {
+                copied += value;
+            }
+            long valuesTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            long sequential = map.stream().mapToLong(Map.Entry::getValue).sum();
+            long streamTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            long parallel = map.parallelStream().mapToLong(Map.Entry::getValue).sum();
+            long parallelTime = System.nanoTime() - start;
+            System.out.printf("round %d  values() %7.1f ms  stream %7.1f ms  parallelStream %7.1f ms  (%d %s %d %s %d)%n",
+                    round, valuesTime / 1e6, streamTime / 1e6, parallelTime / 1e6, copied,
+                    copied == sequential ? "=" : "!=", sequential, sequential == parallel ? "=" : "!=", parallel);
+        }
+    }
+
+    /**
+     * Union of a map of n entries with maps of n / 1000 to n entries, by a put loop and by union.
+     */
+    static void setOperations(int n) {
+        Random random = new Random(SEED);
+        for (int m = Math.max(1, n / 1000); m <= n; m *= 10) {
+            TreeMap<Integer, Integer> other = new TreeMap<>();
+            while (other.size() < m) {
+                int key = random.nextInt(4 * n);
+                other.put(key, key);
+            }
+            for (int round = 0; round < 3; round++) {
+                TreeMap<Integer, Integer> looped = new TreeMap<>();
+                TreeMap<Integer, Integer> joined = new TreeMap<>();
+                for (int i = 0; i < 2 * n; i += 2) {
+                    looped.put(i, i);
+                    joined.put(i, i);
+                }
+                usedMemory();
+                long start = System.nanoTime();
+                for (Map.Entry<Integer, Integer> entry : other.entrySet()) {
+                    Integer value = looped.get(entry.getKey());
+                    looped.put(entry.getKey(), value == null ? entry.getValue() : value + entry.getValue());
+                }
+                long loopTime = System.nanoTime() - start;
+                usedMemory();
+                start = System.nanoTime();
+                joined.union(other, Integer::sum);
+                long unionTime = System.nanoTime() - start;
+                System.out.printf("  m %8d  put loop %8.1f ms  union %8.1f ms  (%d = %d entries)%n",
+                        m, loopTime / 1e6, unionTime / 1e6, looped.size(), joined.size());
+            }
+        }
+    }
+
+    /**
+     * Throughput and latency of a loopback server over a map of n entries, for growing
+     * numbers of connections and pipeline depths.
+     */
+    static void server(int n) throws Exception {
+        TreeMap<String, String> map = new TreeMap<>();
+        for (int i = 0; i < n; i += 2) {
+            String key = LoadGenerator.key(i);
+            map.put(key, key);
+        }
+        try (TreeMapServer server = new TreeMapServer(map, 0)) {
+            server.start();
+            for (int connections : new int[]{1, 4, 16}) {
+                for (int depth : new int[]{1, 16, 128}) {
+                    LoadGenerator.run("127.0.0.1", server.getPort(), connections, depth, 2, n);
+                }
+            }
+        }
+    }
+
+    static Integer[] randomKeys(int n) {
+        Random random = new Random(SEED);
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+        }
+        return keys;
+    }
+
+    static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
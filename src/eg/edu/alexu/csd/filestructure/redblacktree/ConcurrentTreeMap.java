@@ -0,0 +1,413 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+
+/**
+ * Thread safe {@link TreeMap}. Writers take the write lock. Point lookups, floor/ceiling and
+ * first/last keys first walk the tree under an optimistic stamp and only take the read lock if
+ * a writer got in the way; everything else takes the read lock.
+ * A walk that races a rotation may see a torn tree, so it is bounded by the deepest a valid red
+ * black tree of int size can be, and any exception it throws just counts as a failed validation.
+ */
+class ConcurrentTreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
+
+    /**
+     * A red black tree of n nodes is at most 2 * log2(n + 1) deep.
+     */
+    private static final int MAX_DEPTH = 64;
+    private static final int EXACT = 0;
+    private static final int CEILING = 1;
+    private static final int FLOOR = -1;
+    private static final int HIGHER = 2;
+    private static final int LOWER = -2;
+
+    private final TreeMap<T, V> map;
+    private final Comparator<? super T> comparator;
+    private final StampedLock lock = new StampedLock();
+
+    ConcurrentTreeMap() {
+        this(null);
+    }
+
+    ConcurrentTreeMap(Comparator<? super T> comparator) {
+        this(new TreeMap<T, V>(comparator), comparator);
+    }
+
+    /**
+     * Wraps a map ordered by comparator that no other thread can reach yet.
+     */
+    ConcurrentTreeMap(TreeMap<T, V> map, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.map = map;
+    }
+
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    /**
+     * Entry of the node matching key in the given direction, read optimistically when possible.
+     */
+    private Map.Entry<T, V> lookup(T key, int direction) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Map.Entry<T, V> entry = descend(key, direction);
+                if (lock.validate(stamp)) {
+                    return entry;
+                }
+            } catch (RuntimeException torn) {
+                // a writer moved nodes under us, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return descend(key, direction);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Map.Entry<T, V> descend(T key, int direction) {
+        INode<T, V> candidate = null;
+        INode<T, V> current = map.tree().getRoot();
+        for (int depth = 0; !current.isNull(); depth++) {
+            if (depth == MAX_DEPTH) {
+                throw new IllegalStateException("Torn read");
+            }
+            int comparison = compare(key, current.getKey());
+            if (comparison == 0 && direction != HIGHER && direction != LOWER) {
+                candidate = current;
+                break;
+            }
+            if (comparison < 0 || (comparison == 0 && direction == LOWER)) {
+                if (direction == CEILING || direction == HIGHER) {
+                    candidate = current;
+                }
+                current = current.getLeftChild();
+            } else {
+                if (direction == FLOOR || direction == LOWER) {
+                    candidate = current;
+                }
+                current = current.getRightChild();
+            }
+        }
+        if (candidate == null) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(candidate.getKey(), candidate.getValue());
+    }
+
+    /**
+     * First or last key, read optimistically when possible.
+     */
+    private T end(boolean last) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                INode<T, V> node = last ? map.tree().last() : map.tree().first();
+                T key = node == null ? null : node.getKey();
+                if (lock.validate(stamp)) {
+                    return key;
+                }
+            } catch (RuntimeException torn) {
+                // a writer moved nodes under us, retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return last ? map.lastKey() : map.firstKey();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> ceilingEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a ceil for null key"));
+        }
+        return lookup(key, CEILING);
+    }
+
+    public T ceilingKey(T key) {
+        Map.Entry<T, V> ceilingEntry = ceilingEntry(key);
+        return ceilingEntry == null ? null : ceilingEntry.getKey();
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            map.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean containsKey(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't check for a null key"));
+        }
+        return lookup(key, EXACT) != null;
+    }
+
+    public boolean containsValue(V value) {
+        long stamp = lock.readLock();
+        try {
+            return map.containsValue(value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * A copy taken under the read lock, since the map's own views walk the live tree.
+     */
+    public Set<Map.Entry<T, V>> entrySet() {
+        return new LinkedHashSet<>(snapshot());
+    }
+
+    /**
+     * Copies the entries in key order under the read lock. The map's entries are backed by its
+     * nodes, so each one is copied too.
+     */
+    List<Map.Entry<T, V>> snapshot() {
+        long stamp = lock.readLock();
+        try {
+            List<Map.Entry<T, V>> entries = new ArrayList<>(map.size());
+            for (Map.Entry<T, V> entry : map.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+            }
+            return entries;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> firstEntry() {
+        long stamp = lock.readLock();
+        try {
+            return map.firstEntry();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public T firstKey() {
+        return end(false);
+    }
+
+    public Map.Entry<T, V> floorEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a floor for null key"));
+        }
+        return lookup(key, FLOOR);
+    }
+
+    public T floorKey(T key) {
+        Map.Entry<T, V> floorEntry = floorEntry(key);
+        return floorEntry == null ? null : floorEntry.getKey();
+    }
+
+    public V get(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null key!"));
+        }
+        Map.Entry<T, V> entry = lookup(key, EXACT);
+        return entry == null ? null : entry.getValue();
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey) {
+        return headMap(toKey, false);
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey, boolean inclusive) {
+        long stamp = lock.readLock();
+        try {
+            return map.headMap(toKey, inclusive);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> higherEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a higher entry for null key"));
+        }
+        return lookup(key, HIGHER);
+    }
+
+    public T higherKey(T key) {
+        Map.Entry<T, V> higherEntry = higherEntry(key);
+        return higherEntry == null ? null : higherEntry.getKey();
+    }
+
+    /**
+     * A copy taken under the read lock.
+     */
+    public Set<T> keySet() {
+        long stamp = lock.readLock();
+        try {
+            return new LinkedHashSet<>(map.keySet());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> lastEntry() {
+        long stamp = lock.readLock();
+        try {
+            return map.lastEntry();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public T lastKey() {
+        return end(true);
+    }
+
+    public Map.Entry<T, V> lowerEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a lower entry for null key"));
+        }
+        return lookup(key, LOWER);
+    }
+
+    public T lowerKey(T key) {
+        Map.Entry<T, V> lowerEntry = lowerEntry(key);
+        return lowerEntry == null ? null : lowerEntry.getKey();
+    }
+
+    public Map.Entry<T, V> pollFirstEntry() {
+        long stamp = lock.writeLock();
+        try {
+            return map.pollFirstEntry();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> pollLastEntry() {
+        long stamp = lock.writeLock();
+        try {
+            return map.pollLastEntry();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void put(T key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            map.put(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public V putIfAbsent(T key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            return map.putIfAbsent(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Runs function under the write lock, so it must not use this map.
+     */
+    public V compute(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        long stamp = lock.writeLock();
+        try {
+            return map.compute(key, function);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void putAll(Map<T, V> map) {
+        long stamp = lock.writeLock();
+        try {
+            this.map.putAll(map);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(T key) {
+        long stamp = lock.writeLock();
+        try {
+            return map.remove(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return map.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int rank(T key) {
+        long stamp = lock.readLock();
+        try {
+            return map.rank(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> select(int index) {
+        long stamp = lock.readLock();
+        try {
+            return map.select(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int countInRange(T lo, T hi) {
+        long stamp = lock.readLock();
+        try {
+            return map.countInRange(lo, hi);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public List<V> applyBatch(List<Op<T, V>> ops) {
+        long stamp = lock.writeLock();
+        try {
+            return map.applyBatch(ops);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * A copy taken under the read lock.
+     */
+    public Collection<V> values() {
+        long stamp = lock.readLock();
+        try {
+            return new ArrayList<>(map.values());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * Red black tree keyed by primitive doubles. Keys are stored as longs whose signed
+ * order matches {@link Double#compare}, so this delegates to a {@link LongRedBlackTree}.
+ */
+public class DoubleRedBlackTree<V> implements IDoubleRedBlackTree<V> {
+
+    private final LongRedBlackTree<V> tree;
+
+    public DoubleRedBlackTree() {
+        tree = new LongRedBlackTree<>();
+    }
+
+    /**
+     * Flips the magnitude bits of negative numbers so that they sort below the positives
+     * in reverse magnitude. The mapping is its own inverse.
+     */
+    private static long toSortable(long bits) {
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static long encode(double key) {
+        return toSortable(Double.doubleToLongBits(key));
+    }
+
+    private static double decode(long key) {
+        return Double.longBitsToDouble(toSortable(key));
+    }
+
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public void clear() {
+        tree.clear();
+    }
+
+    public V get(double key) {
+        return tree.get(encode(key));
+    }
+
+    public boolean contains(double key) {
+        return tree.contains(encode(key));
+    }
+
+    public void put(double key, V value) {
+        tree.put(encode(key), value);
+    }
+
+    public boolean remove(double key) {
+        return tree.remove(encode(key));
+    }
+
+    public double ceilingKey(double key, double defaultKey) {
+        return decode(tree.ceilingKey(encode(key), encode(defaultKey)));
+    }
+
+    public V ceilingValue(double key) {
+        return tree.ceilingValue(encode(key));
+    }
+
+    public double floorKey(double key, double defaultKey) {
+        return decode(tree.floorKey(encode(key), encode(defaultKey)));
+    }
+
+    public V floorValue(double key) {
+        return tree.floorValue(encode(key));
+    }
+
+    public double firstKey(double defaultKey) {
+        return decode(tree.firstKey(encode(defaultKey)));
+    }
+
+    public V firstValue() {
+        return tree.firstValue();
+    }
+
+    public double lastKey(double defaultKey) {
+        return decode(tree.lastKey(encode(defaultKey)));
+    }
+
+    public V lastValue() {
+        return tree.lastValue();
+    }
+
+    public double higherKey(double key, double defaultKey) {
+        return decode(tree.higherKey(encode(key), encode(defaultKey)));
+    }
+
+    public V higherValue(double key) {
+        return tree.higherValue(encode(key));
+    }
+
+    public double lowerKey(double key, double defaultKey) {
+        return decode(tree.lowerKey(encode(key), encode(defaultKey)));
+    }
+
+    public V lowerValue(double key) {
+        return tree.lowerValue(encode(key));
+    }
+
+    public PrimitiveIterator.OfDouble keyIterator() {
+        final PrimitiveIterator.OfLong keys = tree.keyIterator();
+        return new PrimitiveIterator.OfDouble() {
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            public double nextDouble() {
+                return decode(keys.nextLong());
+            }
+        };
+    }
+
+    public Iterator<V> valueIterator() {
+        return tree.valueIterator();
+    }
+}
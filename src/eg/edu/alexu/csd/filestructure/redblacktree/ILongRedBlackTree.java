@@ -0,0 +1,152 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+public interface ILongRedBlackTree<V> {
+
+    /**
+     * return whether the given tree isEmpty or not.
+     * @return boolean represent the state of the tree.
+     */
+    public boolean isEmpty();
+
+    /**
+     * Returns the number of keys in the tree.
+     * @return
+     */
+    public int size();
+
+    /**
+     * Clear all keys in the given tree.
+     */
+    public void clear();
+
+    /**
+     * return the value associated with the given key or null if no value is found.
+     * @param key to search.
+     * @return value associated with this key.
+     */
+    public V get(long key);
+
+    /**
+     * return true if the tree contains the given key and false otherwise.
+     * @param key to search.
+     * @return found key in tree or not.
+     */
+    public boolean contains(long key);
+
+    /**
+     * Insert the given key in the tree while maintaining the red black tree properties.
+     * If the key is already present in the tree, update its value.
+     * @param key to be inserted
+     * @param value the associated value with the given key
+     */
+    public void put(long key, V value);
+
+    /**
+     * Delete the node associated with the given key.
+     * @param key to be deleted.
+     * @return true in case of success and false otherwise.
+     */
+    public boolean remove(long key);
+
+    /**
+     * Returns the least key greater than or equal to the given key, or defaultKey if there is no such key.
+     * @param key
+     * @param defaultKey
+     * @return
+     */
+    public long ceilingKey(long key, long defaultKey);
+
+    /**
+     * Returns the value of the least key greater than or equal to the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public V ceilingValue(long key);
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or defaultKey if there is no such key.
+     * @param key
+     * @param defaultKey
+     * @return
+     */
+    public long floorKey(long key, long defaultKey);
+
+    /**
+     * Returns the value of the greatest key less than or equal to the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public V floorValue(long key);
+
+    /**
+     * Returns the least key in the tree, or defaultKey if it is empty.
+     * @param defaultKey
+     * @return
+     */
+    public long firstKey(long defaultKey);
+
+    /**
+     * Returns the value of the least key in the tree, or null if it is empty.
+     * @return
+     */
+    public V firstValue();
+
+    /**
+     * Returns the greatest key in the tree, or defaultKey if it is empty.
+     * @param defaultKey
+     * @return
+     */
+    public long lastKey(long defaultKey);
+
+    /**
+     * Returns the value of the greatest key in the tree, or null if it is empty.
+     * @return
+     */
+    public V lastValue();
+
+    /**
+     * Returns the least key strictly greater than the given key, or defaultKey if there is no such key.
+     * @param key
+     * @param defaultKey
+     * @return
+     */
+    public long higherKey(long key, long defaultKey);
+
+    /**
+     * Returns the value of the least key strictly greater than the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public V higherValue(long key);
+
+    /**
+     * Returns the greatest key strictly less than the given key, or defaultKey if there is no such key.
+     * @param key
+     * @param defaultKey
+     * @return
+     */
+    public long lowerKey(long key, long defaultKey);
+
+    /**
+     * Returns the value of the greatest key strictly less than the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public V lowerValue(long key);
+
+    /**
+     * Returns an iterator over the keys in ascending order. The tree must not change while it is iterated.
+     * @return
+     */
+    public PrimitiveIterator.OfLong keyIterator();
+
+    /**
+     * Returns an iterator over the values in ascending key order. The tree must not change while it is iterated.
+     * @return
+     */
+    public Iterator<V> valueIterator();
+
+}
@@ -1,5 +1,9 @@
 package eg.edu.alexu.csd.filestructure.redblacktree;
 
+import javax.management.RuntimeErrorException;
+import java.util.ArrayList;
+import java.util.List;
+
 public interface IRedBlackTree <T extends Comparable<T>, V> {
 
     /**
@@ -38,8 +42,9 @@ public interface IRedBlackTree <T extends Comparable<T>, V> {
      * If the key is already present in the tree, update its value.
      * @param key to be inserted
      * @param value the associated value with the given key
+     * @return the value the key had before, or null if a new node was created.
      */
-    public void insert(T key, V value);
+    public V insert(T key, V value);
 
     /**
      * Delete the node associated with the given key.
@@ -49,7 +54,29 @@ public interface IRedBlackTree <T extends Comparable<T>, V> {
      */
     public boolean delete(T key);
 
-
+    /**
+     * Apply the given puts and removes as if one at a time in list order.
+     * @param ops to be applied.
+     * @return for every op, the value its key held just before it, or null.
+     */
+    public default List<V> applyBatch(List<Op<T, V>> ops) {
+        if (ops == null || ops.contains(null)) {
+            throw new RuntimeErrorException(new Error("Can't apply a null op"));
+        }
+        List<V> previous = new ArrayList<>(ops.size());
+        for (Op<T, V> op : ops) {
+            if (!op.isRemove()) {
+                previous.add(insert(op.getKey(), op.getValue()));
+                continue;
+            }
+            V value = search(op.getKey());
+            previous.add(value);
+            if (value != null) {
+                delete(op.getKey());
+            }
+        }
+        return previous;
+    }
 
 
 }
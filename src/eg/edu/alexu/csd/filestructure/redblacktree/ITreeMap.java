@@ -1,9 +1,14 @@
 package eg.edu.alexu.csd.filestructure.redblacktree;
 
+import javax.management.RuntimeErrorException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 public interface ITreeMap <T extends Comparable<T>, V> {
@@ -96,6 +101,20 @@ public interface ITreeMap <T extends Comparable<T>, V> {
      */
     public ArrayList<Map.Entry<T, V>> headMap(T toKey, boolean inclusive);
 
+    /**
+     * Returns a key-value mapping associated with the least key strictly greater than the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public Map.Entry<T, V> higherEntry(T key);
+
+    /**
+     * Returns the least key strictly greater than the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public T higherKey(T key);
+
     /**
      * Returns a Set view of the keys contained in this map.
      * @return
@@ -114,6 +133,20 @@ public interface ITreeMap <T extends Comparable<T>, V> {
      */
     public T lastKey();
 
+    /**
+     * Returns a key-value mapping associated with the greatest key strictly less than the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public Map.Entry<T, V> lowerEntry(T key);
+
+    /**
+     * Returns the greatest key strictly less than the given key, or null if there is no such key.
+     * @param key
+     * @return
+     */
+    public T lowerKey(T key);
+
     /**
      * Removes and returns a key-value mapping associated with the least key in this map, or null if the map is empty.
      * @return
@@ -152,6 +185,143 @@ public interface ITreeMap <T extends Comparable<T>, V> {
      */
     public int size();
 
+    /**
+     * Returns the number of keys in this map that are strictly less than the given key.
+     * @param key
+     * @return
+     */
+    public int rank(T key);
+
+    /**
+     * Returns the key-value mapping whose key has the given zero based rank in ascending order, or null if there is no such key.
+     * @param index
+     * @return
+     */
+    public Map.Entry<T, V> select(int index);
+
+    /**
+     * Returns the number of keys in this map that are greater than or equal to lo and less than or equal to hi.
+     * @param lo
+     * @param hi
+     * @return
+     */
+    public int countInRange(T lo, T hi);
+
+    /**
+     * Applies the given puts and removes as if one at a time in list order.
+     * @param ops
+     * @return for every op, the value its key held just before it, or null.
+     */
+    public default List<V> applyBatch(List<Op<T, V>> ops) {
+        if (ops == null || ops.contains(null)) {
+            throw new RuntimeErrorException(new Error("Can't apply a null op"));
+        }
+        List<V> previous = new ArrayList<>(ops.size());
+        for (Op<T, V> op : ops) {
+            V value = get(op.getKey());
+            previous.add(value);
+            if (!op.isRemove()) {
+                put(op.getKey(), op.getValue());
+            } else if (value != null) {
+                remove(op.getKey());
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Maps key to value unless it is already present.
+     * @param key
+     * @param value
+     * @return the value key already had, or null if value was put.
+     */
+    public default V putIfAbsent(T key, V value) {
+        V previous = get(key);
+        if (previous == null) {
+            put(key, value);
+        }
+        return previous;
+    }
+
+    /**
+     * Maps key to what function returns for it and its current value, or null if absent; a null result removes key.
+     * @param key
+     * @param function
+     * @return the new value, or null if key is now absent.
+     */
+    public default V compute(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        if (function == null) {
+            throw new RuntimeErrorException(new Error("Can't compute with a null function"));
+        }
+        V previous = get(key);
+        V value = function.apply(key, previous);
+        if (value != null) {
+            put(key, value);
+        } else if (previous != null) {
+            remove(key);
+        }
+        return value;
+    }
+
+    /**
+     * Maps an absent key to what function returns for it, unless that is null.
+     * @param key
+     * @param function
+     * @return the value key now has, or null if it is still absent.
+     */
+    public default V computeIfAbsent(T key, Function<? super T, ? extends V> function) {
+        if (function == null) {
+            throw new RuntimeErrorException(new Error("Can't compute with a null function"));
+        }
+        return compute(key, (k, previous) -> previous != null ? previous : function.apply(k));
+    }
+
+    /**
+     * Maps a present key to what function returns for it and its value; a null result removes key.
+     * @param key
+     * @param function
+     * @return the new value, or null if key is now absent.
+     */
+    public default V computeIfPresent(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        if (function == null) {
+            throw new RuntimeErrorException(new Error("Can't compute with a null function"));
+        }
+        return compute(key, (k, previous) -> previous == null ? null : function.apply(k, previous));
+    }
+
+    /**
+     * Maps an absent key to value, and a present one to what function returns for its value and value; a null result removes key.
+     * @param key
+     * @param value
+     * @param function
+     * @return the new value, or null if key is now absent.
+     */
+    public default V merge(T key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't merge a null value"));
+        }
+        if (function == null) {
+            throw new RuntimeErrorException(new Error("Can't merge with a null function"));
+        }
+        return compute(key, (k, previous) -> previous == null ? value : function.apply(previous, value));
+    }
+
+    /**
+     * Returns a sequential stream over the entries in key order.
+     * @return
+     */
+    public default Stream<Map.Entry<T, V>> stream() {
+        return entrySet().stream();
+    }
+
+    /**
+     * Returns a possibly parallel stream over the entries in key order.
+     * @return
+     */
+    public default Stream<Map.Entry<T, V>> parallelStream() {
+        return entrySet().parallelStream();
+    }
+
     /**
      * Returns a Collection view of the values contained in this map.
      * @return
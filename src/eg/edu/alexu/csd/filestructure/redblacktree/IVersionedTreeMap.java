@@ -0,0 +1,51 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A map that keeps past versions of its values, stamped with a global epoch that every write
+ * advances. A read at a timestamp sees exactly the writes stamped at or before it.
+ * Versions a reader may still need are kept only while some reader pins their timestamp.
+ */
+public interface IVersionedTreeMap<T extends Comparable<T>, V> extends ITreeMap<T, V> {
+
+    /**
+     * Returns the timestamp of the latest write and keeps every version visible at it until unpinned.
+     * @return pinned read timestamp.
+     */
+    public long pin();
+
+    /**
+     * Releases a timestamp returned by pin.
+     * @param timestamp
+     */
+    public void unpin(long timestamp);
+
+    /**
+     * Returns the value key had at the given timestamp, or null if it had none.
+     * @param key
+     * @param timestamp pinned read timestamp.
+     * @return
+     */
+    public V get(T key, long timestamp);
+
+    /**
+     * Returns the entry with the least key greater than or equal to key at the given timestamp, or null.
+     * @param key
+     * @param timestamp pinned read timestamp.
+     * @return
+     */
+    public Map.Entry<T, V> ceilingEntry(T key, long timestamp);
+
+    /**
+     * Iterates in key order over the entries with keys from from, inclusive, to to, exclusive,
+     * as they were at the given timestamp. A null bound leaves that side open. The timestamp
+     * must stay pinned until the iteration ends.
+     * @param from
+     * @param to
+     * @param timestamp pinned read timestamp.
+     * @return
+     */
+    public Iterator<Map.Entry<T, V>> range(T from, T to, long timestamp);
+}
@@ -0,0 +1,212 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+/**
+ * Rebalancing shared by the trees that address their nodes by int slot instead of by
+ * reference. Subclasses decide where the links and colors of a slot are stored.
+ * Slot 0 is the black sentinel leaf and also stands for "no parent"; it is never written.
+ */
+abstract class IndexedRedBlackTree {
+
+    static final int NIL = 0;
+
+    int root = NIL;
+
+    abstract int left(int slot);
+
+    abstract void setLeft(int slot, int left);
+
+    abstract int right(int slot);
+
+    abstract void setRight(int slot, int right);
+
+    abstract int parent(int slot);
+
+    abstract void setParent(int slot, int parent);
+
+    abstract boolean isRed(int slot);
+
+    abstract void setRed(int slot, boolean red);
+
+    /**
+     * Copies the key and value of one slot over another.
+     */
+    abstract void copyEntry(int from, int to);
+
+    /**
+     * Hangs a freshly allocated red slot under parent and restores the red black properties.
+     */
+    final void link(int slot, int parent, boolean asLeftChild) {
+        setLeft(slot, NIL);
+        setRight(slot, NIL);
+        setParent(slot, parent);
+        setRed(slot, true);
+        if (parent == NIL) {
+            root = slot;
+        } else if (asLeftChild) {
+            setLeft(parent, slot);
+        } else {
+            setRight(parent, slot);
+        }
+        reColor(slot);
+    }
+
+    /**
+     * Removes the entry stored at slot and restores the red black properties.
+     * An entry with two children is replaced by its successor's, so the slot that actually
+     * leaves the tree may differ from the one passed in.
+     *
+     * @return the slot that was unlinked and can be reused.
+     */
+    final int unlink(int slot) {
+        if (left(slot) != NIL && right(slot) != NIL) {
+            int successor = right(slot);
+            while (left(successor) != NIL) {
+                successor = left(successor);
+            }
+            copyEntry(successor, slot);
+            slot = successor;
+        }
+        int replacement = left(slot) != NIL ? left(slot) : right(slot);
+        int replacementParent = parent(slot);
+        replaceChild(slot, replacement);
+        if (!isRed(slot)) {
+            if (isRed(replacement)) {
+                setRed(replacement, false);
+            } else {
+                fixDoubleBlack(replacement, replacementParent);
+            }
+        }
+        return slot;
+    }
+
+    private void reColor(int current) {
+        while (current != root && isRed(parent(current))) {
+            int currentParent = parent(current);
+            int grandParent = parent(currentParent);
+            boolean parentIsLeft = currentParent == left(grandParent);
+            int uncle = parentIsLeft ? right(grandParent) : left(grandParent);
+            if (isRed(uncle)) {
+                setRed(currentParent, false);
+                setRed(uncle, false);
+                setRed(grandParent, true);
+                current = grandParent;
+                continue;
+            }
+            if (parentIsLeft) {
+                if (current == right(currentParent)) {
+                    leftRotate(currentParent);
+                    currentParent = current;
+                }
+                rightRotate(grandParent);
+            } else {
+                if (current == left(currentParent)) {
+                    rightRotate(currentParent);
+                    currentParent = current;
+                }
+                leftRotate(grandParent);
+            }
+            setRed(currentParent, false);
+            setRed(grandParent, true);
+            break;
+        }
+        setRed(root, false);
+    }
+
+    private void fixDoubleBlack(int doubleBlack, int doubleBlackParent) {
+        while (doubleBlack != root && !isRed(doubleBlack)) {
+            int p = doubleBlackParent;
+            if (doubleBlack == left(p)) {
+                int sibling = right(p);
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(p, true);
+                    leftRotate(p);
+                    sibling = right(p);
+                }
+                if (!isRed(left(sibling)) && !isRed(right(sibling))) {
+                    setRed(sibling, true);
+                    doubleBlack = p;
+                    doubleBlackParent = parent(p);
+                    continue;
+                }
+                if (!isRed(right(sibling))) {
+                    setRed(left(sibling), false);
+                    setRed(sibling, true);
+                    rightRotate(sibling);
+                    sibling = right(p);
+                }
+                setRed(sibling, isRed(p));
+                setRed(p, false);
+                setRed(right(sibling), false);
+                leftRotate(p);
+            } else {
+                int sibling = left(p);
+                if (isRed(sibling)) {
+                    setRed(sibling, false);
+                    setRed(p, true);
+                    rightRotate(p);
+                    sibling = left(p);
+                }
+                if (!isRed(left(sibling)) && !isRed(right(sibling))) {
+                    setRed(sibling, true);
+                    doubleBlack = p;
+                    doubleBlackParent = parent(p);
+                    continue;
+                }
+                if (!isRed(left(sibling))) {
+                    setRed(right(sibling), false);
+                    setRed(sibling, true);
+                    leftRotate(sibling);
+                    sibling = left(p);
+                }
+                setRed(sibling, isRed(p));
+                setRed(p, false);
+                setRed(left(sibling), false);
+                rightRotate(p);
+            }
+            doubleBlack = root;
+        }
+        if (doubleBlack != NIL) {
+            setRed(doubleBlack, false);
+        }
+    }
+
+    private void leftRotate(int current) {
+        int pivot = right(current);
+        setRight(current, left(pivot));
+        if (left(pivot) != NIL) {
+            setParent(left(pivot), current);
+        }
+        replaceChild(current, pivot);
+        setLeft(pivot, current);
+        setParent(current, pivot);
+    }
+
+    private void rightRotate(int current) {
+        int pivot = left(current);
+        setLeft(current, right(pivot));
+        if (right(pivot) != NIL) {
+            setParent(right(pivot), current);
+        }
+        replaceChild(current, pivot);
+        setRight(pivot, current);
+        setParent(current, pivot);
+    }
+
+    /**
+     * Hangs replacement where current used to be under current's parent.
+     */
+    private void replaceChild(int current, int replacement) {
+        int currentParent = parent(current);
+        if (replacement != NIL) {
+            setParent(replacement, currentParent);
+        }
+        if (currentParent == NIL) {
+            root = replacement;
+        } else if (left(currentParent) == current) {
+            setLeft(currentParent, replacement);
+        } else {
+            setRight(currentParent, replacement);
+        }
+    }
+}
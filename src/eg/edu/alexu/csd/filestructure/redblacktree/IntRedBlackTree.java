@@ -0,0 +1,110 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * Red black tree keyed by primitive ints. Every int widens to a distinct long in the
+ * same order, so this delegates to a {@link LongRedBlackTree}.
+ */
+public class IntRedBlackTree<V> implements IIntRedBlackTree<V> {
+
+    private final LongRedBlackTree<V> tree;
+
+    public IntRedBlackTree() {
+        tree = new LongRedBlackTree<>();
+    }
+
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    public int size() {
+        return tree.size();
+    }
+
+    public void clear() {
+        tree.clear();
+    }
+
+    public V get(int key) {
+        return tree.get(key);
+    }
+
+    public boolean contains(int key) {
+        return tree.contains(key);
+    }
+
+    public void put(int key, V value) {
+        tree.put(key, value);
+    }
+
+    public boolean remove(int key) {
+        return tree.remove(key);
+    }
+
+    public int ceilingKey(int key, int defaultKey) {
+        return (int) tree.ceilingKey(key, defaultKey);
+    }
+
+    public V ceilingValue(int key) {
+        return tree.ceilingValue(key);
+    }
+
+    public int floorKey(int key, int defaultKey) {
+        return (int) tree.floorKey(key, defaultKey);
+    }
+
+    public V floorValue(int key) {
+        return tree.floorValue(key);
+    }
+
+    public int firstKey(int defaultKey) {
+        return (int) tree.firstKey(defaultKey);
+    }
+
+    public V firstValue() {
+        return tree.firstValue();
+    }
+
+    public int lastKey(int defaultKey) {
+        return (int) tree.lastKey(defaultKey);
+    }
+
+    public V lastValue() {
+        return tree.lastValue();
+    }
+
+    public int higherKey(int key, int defaultKey) {
+        return (int) tree.higherKey(key, defaultKey);
+    }
+
+    public V higherValue(int key) {
+        return tree.higherValue(key);
+    }
+
+    public int lowerKey(int key, int defaultKey) {
+        return (int) tree.lowerKey(key, defaultKey);
+    }
+
+    public V lowerValue(int key) {
+        return tree.lowerValue(key);
+    }
+
+    public PrimitiveIterator.OfInt keyIterator() {
+        final PrimitiveIterator.OfLong keys = tree.keyIterator();
+        return new PrimitiveIterator.OfInt() {
+            public boolean hasNext() {
+                return keys.hasNext();
+            }
+
+            public int nextInt() {
+                return (int) keys.nextLong();
+            }
+        };
+    }
+
+    public Iterator<V> valueIterator() {
+        return tree.valueIterator();
+    }
+}
@@ -0,0 +1,444 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe version of {@link TopDownRedBlackTree} with a lock on every node.
+ * Every operation walks down from a fixed head node with hand over hand locking: it locks a
+ * child before letting go of the nodes above the few it may still rotate or recolor, so
+ * writers working in different subtrees run in parallel once their paths part.
+ * Since the rebalancing happens on the way down, no operation ever needs a node above its
+ * window again, and locks are only ever taken on children of held nodes, which can't deadlock.
+ * Delete also keeps the node holding the key locked until it has been replaced.
+ */
+class LockCouplingRedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T, V> {
+
+    static final class LockNode<T extends Comparable<T>, V> extends ReentrantLock implements INode<T, V> {
+        private static final long serialVersionUID = 1L;
+        private T key;
+        private V value;
+        private boolean color;
+        private LockNode<T, V> leftChild;
+        private LockNode<T, V> rightChild;
+
+        LockNode(T key, V value, boolean color, LockNode<T, V> leftChild, LockNode<T, V> rightChild) {
+            this.key = key;
+            this.value = value;
+            this.color = color;
+            this.leftChild = leftChild;
+            this.rightChild = rightChild;
+        }
+
+        LockNode<T, V> child(boolean right) {
+            return right ? rightChild : leftChild;
+        }
+
+        void setChild(boolean right, LockNode<T, V> child) {
+            if (right) {
+                rightChild = child;
+            } else {
+                leftChild = child;
+            }
+        }
+
+        boolean isRed() {
+            return color == INode.RED;
+        }
+
+        /**
+         * Nodes don't know their parent, so this does nothing.
+         */
+        public void setParent(INode<T, V> parent) {
+        }
+
+        /**
+         * Nodes don't know their parent.
+         *
+         * @return null.
+         */
+        public INode<T, V> getParent() {
+            return null;
+        }
+
+        public void setLeftChild(INode<T, V> leftChild) {
+            this.leftChild = (LockNode<T, V>) leftChild;
+        }
+
+        public INode<T, V> getLeftChild() {
+            return leftChild;
+        }
+
+        public void setRightChild(INode<T, V> rightChild) {
+            this.rightChild = (LockNode<T, V>) rightChild;
+        }
+
+        public INode<T, V> getRightChild() {
+            return rightChild;
+        }
+
+        public T getKey() {
+            return key;
+        }
+
+        public void setKey(T key) {
+            this.key = key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public void setValue(V value) {
+            this.value = value;
+        }
+
+        public boolean getColor() {
+            return color;
+        }
+
+        public void setColor(boolean color) {
+            this.color = color;
+        }
+
+        public boolean isNull() {
+            return this == NIL;
+        }
+    }
+
+    /**
+     * Shared leaf; it is never written, so it is never locked.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final LockNode NIL = new LockNode<>(null, null, INode.BLACK, null, null);
+
+    private final LockNode<T, V> nil;
+    private final Comparator<? super T> comparator;
+    /**
+     * Fake parent of root, locked first by every operation. Root is its right child.
+     */
+    private final LockNode<T, V> head;
+
+    LockCouplingRedBlackTree() {
+        this(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    LockCouplingRedBlackTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        nil = NIL;
+        head = new LockNode<>(null, null, INode.BLACK, nil, nil);
+    }
+
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    /**
+     * Nodes locked by one operation, in the order they were locked.
+     */
+    private final class Held {
+        private final List<LockNode<T, V>> nodes = new ArrayList<>(8);
+
+        void lock(LockNode<T, V> node) {
+            if (node != nil && !nodes.contains(node)) {
+                node.lock();
+                nodes.add(node);
+            }
+        }
+
+        /**
+         * Unlocks every held node except the given ones.
+         */
+        void keep(LockNode<T, V> first, LockNode<T, V> second, LockNode<T, V> third, LockNode<T, V> fourth) {
+            for (int i = nodes.size() - 1; i >= 0; i--) {
+                LockNode<T, V> node = nodes.get(i);
+                if (node != first && node != second && node != third && node != fourth) {
+                    nodes.remove(i).unlock();
+                }
+            }
+        }
+
+        void unlockAll() {
+            for (LockNode<T, V> node : nodes) {
+                node.unlock();
+            }
+            nodes.clear();
+        }
+    }
+
+    /**
+     * return the root of the given Red black tree. Only meaningful while no operation is running.
+     *
+     * @return root.
+     */
+    public INode<T, V> getRoot() {
+        head.lock();
+        try {
+            return head.rightChild;
+        } finally {
+            head.unlock();
+        }
+    }
+
+    /**
+     * return whether the given tree isEmpty or not.
+     *
+     * @return boolean represent the state of the tree.
+     */
+    public boolean isEmpty() {
+        return getRoot() == nil;
+    }
+
+    /**
+     * Clear all keys in the given tree. Operations already past the head finish on the old tree.
+     */
+    public void clear() {
+        head.lock();
+        try {
+            head.rightChild = nil;
+        } finally {
+            head.unlock();
+        }
+    }
+
+    /**
+     * return the value associated with the given key or null if no value is found.
+     *
+     * @param key to search.
+     * @return value associated with this key.
+     */
+    public V search(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null key!"));
+        }
+        LockNode<T, V> current = head;
+        current.lock();
+        LockNode<T, V> next = current.rightChild;
+        while (next != nil) {
+            next.lock();
+            current.unlock();
+            current = next;
+            int comparison = compare(key, current.key);
+            if (comparison == 0) {
+                V value = current.value;
+                current.unlock();
+                return value;
+            }
+            next = current.child(comparison > 0);
+        }
+        current.unlock();
+        return null;
+    }
+
+    /**
+     * return true if the tree contains the given key and false otherwise.
+     *
+     * @param key to search.
+     * @return found key in tree or not.
+     */
+    public boolean contains(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't check for a null key"));
+        }
+        return search(key) != null;
+    }
+
+    /**
+     * Insert the given key in the tree while maintaining the red black tree properties.
+     * If the key is already present in the tree, update its value.
+     *
+     * @param key   to be inserted
+     * @param value the associated value with the given key
+     * @return the value the key had before, or null if a new node was created.
+     */
+    public V insert(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        Held held = new Held();
+        try {
+            held.lock(head);
+            if (head.rightChild == nil) {
+                head.rightChild = new LockNode<>(key, value, INode.BLACK, nil, nil);
+                return null;
+            }
+            LockNode<T, V> greatGrandParent = head;
+            LockNode<T, V> grandParent = null;
+            LockNode<T, V> parent = null;
+            LockNode<T, V> current = head.rightChild;
+            held.lock(current);
+            boolean dir = false;
+            boolean last = false;
+            boolean created = false;
+            while (true) {
+                if (current == nil) {
+                    current = new LockNode<>(key, value, INode.RED, nil, nil);
+                    held.lock(current);
+                    parent.setChild(dir, current);
+                    created = true;
+                } else {
+                    held.lock(current.leftChild);
+                    held.lock(current.rightChild);
+                    if (current.leftChild.isRed() && current.rightChild.isRed()) {
+                        current.color = parent == null ? INode.BLACK : INode.RED;
+                        current.leftChild.color = INode.BLACK;
+                        current.rightChild.color = INode.BLACK;
+                    }
+                }
+                if (current.isRed() && parent != null && parent.isRed()) {
+                    boolean grandParentIsRight = greatGrandParent.rightChild == grandParent;
+                    if (current == parent.child(last)) {
+                        greatGrandParent.setChild(grandParentIsRight, singleRotate(grandParent, !last));
+                    } else {
+                        greatGrandParent.setChild(grandParentIsRight, doubleRotate(grandParent, !last));
+                    }
+                }
+                int comparison = compare(key, current.key);
+                if (comparison == 0) {
+                    if (created) {
+                        return null;
+                    }
+                    V previous = current.value;
+                    current.value = value;
+                    return previous;
+                }
+                last = dir;
+                dir = comparison > 0;
+                if (grandParent != null) {
+                    greatGrandParent = grandParent;
+                }
+                grandParent = parent;
+                parent = current;
+                current = current.child(dir);
+                held.lock(current);
+                held.keep(greatGrandParent, grandParent, parent, current);
+            }
+        } finally {
+            held.unlockAll();
+        }
+    }
+
+    /**
+     * Delete the node associated with the given key.
+     * Return true in case of success and false otherwise.
+     *
+     * @param key to be deleted.
+     * @return true in case of success and false otherwise.
+     */
+    public boolean delete(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't delete a null key!"));
+        }
+        Held held = new Held();
+        try {
+            held.lock(head);
+            if (head.rightChild == nil) {
+                return false;
+            }
+            LockNode<T, V> grandParent = null;
+            LockNode<T, V> parent = null;
+            LockNode<T, V> current = head;
+            LockNode<T, V> found = null;
+            boolean dir = true;
+            while (current.child(dir) != nil) {
+                boolean last = dir;
+                grandParent = parent;
+                parent = current;
+                current = current.child(dir);
+                held.lock(current);
+                held.keep(grandParent, parent, current, found);
+                held.lock(current.leftChild);
+                held.lock(current.rightChild);
+                int comparison = compare(key, current.key);
+                dir = comparison > 0;
+                if (comparison == 0) {
+                    found = current;
+                }
+                if (!current.isRed() && !current.child(dir).isRed()) {
+                    if (current.child(!dir).isRed()) {
+                        LockNode<T, V> rotated = singleRotate(current, dir);
+                        parent.setChild(last, rotated);
+                        if (parent == head) {
+                            rotated.color = INode.BLACK;
+                        }
+                        parent = rotated;
+                    } else {
+                        LockNode<T, V> sibling = parent.child(!last);
+                        if (sibling != nil) {
+                            held.lock(sibling);
+                            held.lock(sibling.leftChild);
+                            held.lock(sibling.rightChild);
+                            if (!sibling.child(!last).isRed() && !sibling.child(last).isRed()) {
+                                parent.color = INode.BLACK;
+                                sibling.color = INode.RED;
+                                current.color = INode.RED;
+                            } else {
+                                boolean parentIsRight = grandParent.rightChild == parent;
+                                LockNode<T, V> rotated;
+                                if (sibling.child(last).isRed()) {
+                                    rotated = doubleRotate(parent, last);
+                                } else {
+                                    rotated = singleRotate(parent, last);
+                                }
+                                grandParent.setChild(parentIsRight, rotated);
+                                current.color = INode.RED;
+                                rotated.color = grandParent == head ? INode.BLACK : INode.RED;
+                                rotated.leftChild.color = INode.BLACK;
+                                rotated.rightChild.color = INode.BLACK;
+                            }
+                        }
+                    }
+                }
+            }
+            if (found != null) {
+                found.key = current.key;
+                found.value = current.value;
+                parent.setChild(parent.rightChild == current, current.leftChild == nil ? current.rightChild : current.leftChild);
+            }
+            return found != null;
+        } finally {
+            held.unlockAll();
+        }
+    }
+
+    /**
+     * Apply the given puts and removes as if one at a time in list order. The head stays locked
+     * for the whole batch, and every operation starts there, so nothing runs between its ops and
+     * the values it reports are the ones it replaced; other operations wait for the batch.
+     *
+     * @param ops to be applied.
+     * @return for every op, the value its key held just before it, or null.
+     */
+    public List<V> applyBatch(List<Op<T, V>> ops) {
+        head.lock();
+        try {
+            return IRedBlackTree.super.applyBatch(ops);
+        } finally {
+            head.unlock();
+        }
+    }
+
+    /**
+     * Rotates node towards dir and colors the new subtree root black and node red.
+     */
+    private static <T extends Comparable<T>, V> LockNode<T, V> singleRotate(LockNode<T, V> node, boolean dir) {
+        LockNode<T, V> save = node.child(!dir);
+        node.setChild(!dir, save.child(dir));
+        save.setChild(dir, node);
+        node.color = INode.RED;
+        save.color = INode.BLACK;
+        return save;
+    }
+
+    private static <T extends Comparable<T>, V> LockNode<T, V> doubleRotate(LockNode<T, V> node, boolean dir) {
+        node.setChild(!dir, singleRotate(node.child(!dir), !dir));
+        return singleRotate(node, dir);
+    }
+}
@@ -0,0 +1,294 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * Non blocking thread safe map. The whole map is one {@link PersistentNode} version behind an
+ * atomic root. A writer builds its new version by path copying off the root it read and
+ * publishes it with a compare and set, starting over if another writer got in first; no thread
+ * ever waits on another, and a failed attempt only wastes the path it copied.
+ * Every operation takes effect at the single read or successful swap of the root, so reads,
+ * including the ones that span the map, always see one consistent version.
+ */
+class LockFreeTreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
+
+    private final Comparator<? super T> comparator;
+    private final AtomicReference<PersistentNode<T, V>> root;
+
+    LockFreeTreeMap() {
+        this(null);
+    }
+
+    LockFreeTreeMap(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        root = new AtomicReference<>(PersistentNode.<T, V>nil());
+    }
+
+    /**
+     * Returns an immutable view of the current version.
+     */
+    ITreeMap<T, V> snapshot() {
+        return new SnapshotTreeMap<>(root.get(), comparator);
+    }
+
+    public Map.Entry<T, V> ceilingEntry(T key) {
+        return snapshot().ceilingEntry(key);
+    }
+
+    public T ceilingKey(T key) {
+        return snapshot().ceilingKey(key);
+    }
+
+    public void clear() {
+        root.set(PersistentNode.<T, V>nil());
+    }
+
+    public boolean containsKey(T key) {
+        return snapshot().containsKey(key);
+    }
+
+    public boolean containsValue(V value) {
+        return snapshot().containsValue(value);
+    }
+
+    public Set<Map.Entry<T, V>> entrySet() {
+        return snapshot().entrySet();
+    }
+
+    public Map.Entry<T, V> firstEntry() {
+        return snapshot().firstEntry();
+    }
+
+    public T firstKey() {
+        return snapshot().firstKey();
+    }
+
+    public Map.Entry<T, V> floorEntry(T key) {
+        return snapshot().floorEntry(key);
+    }
+
+    public T floorKey(T key) {
+        return snapshot().floorKey(key);
+    }
+
+    public V get(T key) {
+        return snapshot().get(key);
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey) {
+        return snapshot().headMap(toKey);
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey, boolean inclusive) {
+        return snapshot().headMap(toKey, inclusive);
+    }
+
+    public Map.Entry<T, V> higherEntry(T key) {
+        return snapshot().higherEntry(key);
+    }
+
+    public T higherKey(T key) {
+        return snapshot().higherKey(key);
+    }
+
+    public Set<T> keySet() {
+        return snapshot().keySet();
+    }
+
+    public Map.Entry<T, V> lastEntry() {
+        return snapshot().lastEntry();
+    }
+
+    public T lastKey() {
+        return snapshot().lastKey();
+    }
+
+    public Map.Entry<T, V> lowerEntry(T key) {
+        return snapshot().lowerEntry(key);
+    }
+
+    public T lowerKey(T key) {
+        return snapshot().lowerKey(key);
+    }
+
+    public Map.Entry<T, V> pollFirstEntry() {
+        return poll(false);
+    }
+
+    public Map.Entry<T, V> pollLastEntry() {
+        return poll(true);
+    }
+
+    private Map.Entry<T, V> poll(boolean last) {
+        while (true) {
+            PersistentNode<T, V> current = root.get();
+            ITreeMap<T, V> version = new SnapshotTreeMap<>(current, comparator);
+            Map.Entry<T, V> entry = last ? version.lastEntry() : version.firstEntry();
+            if (entry == null) {
+                return null;
+            }
+            PersistentNode<T, V> next = new PersistentRedBlackTree.Update<T, V>(comparator).delete(current, entry.getKey());
+            if (root.compareAndSet(current, next)) {
+                return entry;
+            }
+        }
+    }
+
+    public void put(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        while (true) {
+            PersistentNode<T, V> current = root.get();
+            PersistentNode<T, V> next = new PersistentRedBlackTree.Update<T, V>(comparator).insert(current, key, value);
+            if (root.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    public V putIfAbsent(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        while (true) {
+            PersistentNode<T, V> current = root.get();
+            V previous = PersistentRedBlackTree.find(current, key, comparator).value;
+            if (previous != null) {
+                return previous;
+            }
+            PersistentNode<T, V> next = new PersistentRedBlackTree.Update<T, V>(comparator).insert(current, key, value);
+            if (root.compareAndSet(current, next)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * function runs again whenever another write gets in first, so it should have no side effects.
+     * A result identical to the current value publishes nothing.
+     */
+    public V compute(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't compute a value for a null key"));
+        }
+        if (function == null) {
+            throw new RuntimeErrorException(new Error("Can't compute with a null function"));
+        }
+        while (true) {
+            PersistentNode<T, V> current = root.get();
+            V previous = PersistentRedBlackTree.find(current, key, comparator).value;
+            V value = function.apply(key, previous);
+            if (value == previous) {
+                return value;
+            }
+            PersistentRedBlackTree.Update<T, V> update = new PersistentRedBlackTree.Update<T, V>(comparator);
+            PersistentNode<T, V> next = value == null ? update.delete(current, key) : update.insert(current, key, value);
+            if (root.compareAndSet(current, next)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Publishes all the entries as one version, so readers see either none or all of them.
+     */
+    public void putAll(Map<T, V> map) {
+        if (map == null) {
+            throw new RuntimeErrorException(new Error("Can't add a keys-values from a null map"));
+        }
+        for (Map.Entry<T, V> entry : map.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                throw new RuntimeErrorException(new Error("Can't insert a null key or value"));
+            }
+        }
+        while (true) {
+            PersistentNode<T, V> current = root.get();
+            PersistentRedBlackTree.Update<T, V> update = new PersistentRedBlackTree.Update<T, V>(comparator);
+            PersistentNode<T, V> next = current;
+            for (Map.Entry<T, V> entry : map.entrySet()) {
+                next = update.insert(next, entry.getKey(), entry.getValue());
+            }
+            if (root.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publishes the whole batch as one version.
+     */
+    public List<V> applyBatch(List<Op<T, V>> ops) {
+        if (ops == null || ops.contains(null)) {
+            throw new RuntimeErrorException(new Error("Can't apply a null op"));
+        }
+        while (true) {
+            PersistentNode<T, V> current = root.get();
+            PersistentRedBlackTree.Update<T, V> update = new PersistentRedBlackTree.Update<T, V>(comparator);
+            PersistentNode<T, V> next = current;
+            List<V> previous = new ArrayList<>(ops.size());
+            for (Op<T, V> op : ops) {
+                V value = PersistentRedBlackTree.find(next, op.getKey(), comparator).value;
+                previous.add(value);
+                if (!op.isRemove()) {
+                    next = update.insert(next, op.getKey(), op.getValue());
+                } else if (value != null) {
+                    next = update.delete(next, op.getKey());
+                }
+            }
+            if (root.compareAndSet(current, next)) {
+                return previous;
+            }
+        }
+    }
+
+    public boolean remove(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't delete a null key!"));
+        }
+        while (true) {
+            PersistentNode<T, V> current = root.get();
+            if (PersistentRedBlackTree.find(current, key, comparator).isNull()) {
+                return false;
+            }
+            PersistentNode<T, V> next = new PersistentRedBlackTree.Update<T, V>(comparator).delete(current, key);
+            if (root.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return root.get().size;
+    }
+
+    public int rank(T key) {
+        return snapshot().rank(key);
+    }
+
+    public Map.Entry<T, V> select(int index) {
+        return snapshot().select(index);
+    }
+
+    public int countInRange(T lo, T hi) {
+        return snapshot().countInRange(lo, hi);
+    }
+
+    public Collection<V> values() {
+        return snapshot().values();
+    }
+}
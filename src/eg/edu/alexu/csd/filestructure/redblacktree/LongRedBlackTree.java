@@ -0,0 +1,446 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Red black tree keyed by primitive longs. Keys are stored unboxed and compared
+ * with the primitive operators, so lookups allocate nothing.
+ */
+public class LongRedBlackTree<V> implements ILongRedBlackTree<V> {
+
+    private static final class LongNode<V> {
+        long key;
+        V value;
+        boolean color;
+        LongNode<V> parent;
+        LongNode<V> leftChild;
+        LongNode<V> rightChild;
+
+        LongNode(long key, V value, boolean color, LongNode<V> parent, LongNode<V> leftChild, LongNode<V> rightChild) {
+            this.key = key;
+            this.value = value;
+            this.color = color;
+            this.parent = parent;
+            this.leftChild = leftChild;
+            this.rightChild = rightChild;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final LongNode NIL = new LongNode<>(0, null, INode.BLACK, null, null, null);
+
+    private final LongNode<V> nil;
+    private LongNode<V> root;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public LongRedBlackTree() {
+        nil = NIL;
+        root = nil;
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return root == nil;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        root = nil;
+        size = 0;
+    }
+
+    public V get(long key) {
+        LongNode<V> node = getNodeWithKey(key);
+        return node == nil ? null : node.value;
+    }
+
+    public boolean contains(long key) {
+        return getNodeWithKey(key) != nil;
+    }
+
+    public void put(long key, V value) {
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        LongNode<V> current = root;
+        LongNode<V> parent = null;
+        while (current != nil) {
+            parent = current;
+            if (key < current.key) {
+                current = current.leftChild;
+            } else if (key > current.key) {
+                current = current.rightChild;
+            } else {
+                current.value = value;
+                return;
+            }
+        }
+        size++;
+        if (parent == null) {
+            root = new LongNode<>(key, value, INode.BLACK, null, nil, nil);
+            return;
+        }
+        current = new LongNode<>(key, value, INode.RED, parent, nil, nil);
+        if (key < parent.key) {
+            parent.leftChild = current;
+        } else {
+            parent.rightChild = current;
+        }
+        reColor(current);
+    }
+
+    public boolean remove(long key) {
+        LongNode<V> toBeDeleted = getNodeWithKey(key);
+        if (toBeDeleted == nil) {
+            return false;
+        }
+        size--;
+        if (toBeDeleted.leftChild != nil && toBeDeleted.rightChild != nil) {
+            LongNode<V> successor = toBeDeleted.rightChild;
+            while (successor.leftChild != nil) {
+                successor = successor.leftChild;
+            }
+            toBeDeleted.key = successor.key;
+            toBeDeleted.value = successor.value;
+            toBeDeleted = successor;
+        }
+        LongNode<V> replacement = toBeDeleted.leftChild != nil ? toBeDeleted.leftChild : toBeDeleted.rightChild;
+        LongNode<V> parent = toBeDeleted.parent;
+        if (parent == null) {
+            root = replacement;
+        } else if (toBeDeleted == parent.leftChild) {
+            parent.leftChild = replacement;
+        } else {
+            parent.rightChild = replacement;
+        }
+        if (replacement != nil) {
+            replacement.parent = parent;
+        }
+        toBeDeleted.parent = toBeDeleted.leftChild = toBeDeleted.rightChild = null;
+        toBeDeleted.value = null;
+        if (toBeDeleted.color == INode.BLACK) {
+            if (replacement.color == INode.RED) {
+                replacement.color = INode.BLACK;
+            } else {
+                fixDoubleBlack(replacement, parent);
+            }
+        }
+        return true;
+    }
+
+    public long ceilingKey(long key, long defaultKey) {
+        return keyOf(ceilingNode(key, true), defaultKey);
+    }
+
+    public V ceilingValue(long key) {
+        return ceilingNode(key, true).value;
+    }
+
+    public long floorKey(long key, long defaultKey) {
+        return keyOf(floorNode(key, true), defaultKey);
+    }
+
+    public V floorValue(long key) {
+        return floorNode(key, true).value;
+    }
+
+    public long firstKey(long defaultKey) {
+        return keyOf(end(false), defaultKey);
+    }
+
+    public V firstValue() {
+        return end(false).value;
+    }
+
+    public long lastKey(long defaultKey) {
+        return keyOf(end(true), defaultKey);
+    }
+
+    public V lastValue() {
+        return end(true).value;
+    }
+
+    public long higherKey(long key, long defaultKey) {
+        return keyOf(ceilingNode(key, false), defaultKey);
+    }
+
+    public V higherValue(long key) {
+        return ceilingNode(key, false).value;
+    }
+
+    public long lowerKey(long key, long defaultKey) {
+        return keyOf(floorNode(key, false), defaultKey);
+    }
+
+    public V lowerValue(long key) {
+        return floorNode(key, false).value;
+    }
+
+    public PrimitiveIterator.OfLong keyIterator() {
+        final Cursor cursor = new Cursor();
+        return new PrimitiveIterator.OfLong() {
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            public long nextLong() {
+                return cursor.next().key;
+            }
+        };
+    }
+
+    public Iterator<V> valueIterator() {
+        final Cursor cursor = new Cursor();
+        return new Iterator<V>() {
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            public V next() {
+                return cursor.next().value;
+            }
+        };
+    }
+
+    /**
+     * In order walk over the nodes that follows the parent links, so it needs no stack.
+     */
+    private final class Cursor {
+        private LongNode<V> next = end(false);
+
+        boolean hasNext() {
+            return next != nil;
+        }
+
+        LongNode<V> next() {
+            LongNode<V> current = next;
+            if (current == nil) {
+                throw new NoSuchElementException();
+            }
+            if (current.rightChild != nil) {
+                next = current.rightChild;
+                while (next.leftChild != nil) {
+                    next = next.leftChild;
+                }
+            } else {
+                LongNode<V> child = current;
+                next = current.parent;
+                while (next != null && next.rightChild == child) {
+                    child = next;
+                    next = next.parent;
+                }
+                if (next == null) {
+                    next = nil;
+                }
+            }
+            return current;
+        }
+    }
+
+    private long keyOf(LongNode<V> node, long defaultKey) {
+        return node == nil ? defaultKey : node.key;
+    }
+
+    /**
+     * return the node with the greatest key if last is set and the least otherwise, or nil if the tree is empty.
+     */
+    private LongNode<V> end(boolean last) {
+        LongNode<V> current = root;
+        if (current == nil) {
+            return nil;
+        }
+        LongNode<V> child = last ? current.rightChild : current.leftChild;
+        while (child != nil) {
+            current = child;
+            child = last ? current.rightChild : current.leftChild;
+        }
+        return current;
+    }
+
+    private LongNode<V> getNodeWithKey(long key) {
+        LongNode<V> current = root;
+        while (current != nil) {
+            if (key < current.key) {
+                current = current.leftChild;
+            } else if (key > current.key) {
+                current = current.rightChild;
+            } else {
+                return current;
+            }
+        }
+        return nil;
+    }
+
+    private LongNode<V> ceilingNode(long key, boolean inclusive) {
+        LongNode<V> ceil = nil;
+        LongNode<V> current = root;
+        while (current != nil) {
+            if (key < current.key) {
+                ceil = current;
+                current = current.leftChild;
+            } else if (key > current.key || !inclusive) {
+                current = current.rightChild;
+            } else {
+                return current;
+            }
+        }
+        return ceil;
+    }
+
+    private LongNode<V> floorNode(long key, boolean inclusive) {
+        LongNode<V> floor = nil;
+        LongNode<V> current = root;
+        while (current != nil) {
+            if (key < current.key || (key == current.key && !inclusive)) {
+                current = current.leftChild;
+            } else if (key > current.key) {
+                floor = current;
+                current = current.rightChild;
+            } else {
+                return current;
+            }
+        }
+        return floor;
+    }
+
+    private void reColor(LongNode<V> current) {
+        while (current != root && current.parent.color == INode.RED) {
+            LongNode<V> parent = current.parent;
+            LongNode<V> grandParent = parent.parent;
+            if (parent == grandParent.leftChild) {
+                LongNode<V> uncle = grandParent.rightChild;
+                if (uncle.color == INode.RED) {
+                    parent.color = INode.BLACK;
+                    uncle.color = INode.BLACK;
+                    grandParent.color = INode.RED;
+                    current = grandParent;
+                    continue;
+                }
+                if (current == parent.rightChild) {
+                    leftRotate(parent);
+                    parent = current;
+                }
+                parent.color = INode.BLACK;
+                grandParent.color = INode.RED;
+                rightRotate(grandParent);
+            } else {
+                LongNode<V> uncle = grandParent.leftChild;
+                if (uncle.color == INode.RED) {
+                    parent.color = INode.BLACK;
+                    uncle.color = INode.BLACK;
+                    grandParent.color = INode.RED;
+                    current = grandParent;
+                    continue;
+                }
+                if (current == parent.leftChild) {
+                    rightRotate(parent);
+                    parent = current;
+                }
+                parent.color = INode.BLACK;
+                grandParent.color = INode.RED;
+                leftRotate(grandParent);
+            }
+            break;
+        }
+        root.color = INode.BLACK;
+    }
+
+    private void fixDoubleBlack(LongNode<V> doubleBlack, LongNode<V> parent) {
+        while (doubleBlack != root && doubleBlack.color == INode.BLACK) {
+            if (doubleBlack == parent.leftChild) {
+                LongNode<V> sibling = parent.rightChild;
+                if (sibling.color == INode.RED) {
+                    sibling.color = INode.BLACK;
+                    parent.color = INode.RED;
+                    leftRotate(parent);
+                    sibling = parent.rightChild;
+                }
+                if (sibling.leftChild.color == INode.BLACK && sibling.rightChild.color == INode.BLACK) {
+                    sibling.color = INode.RED;
+                    doubleBlack = parent;
+                    parent = parent.parent;
+                    continue;
+                }
+                if (sibling.rightChild.color == INode.BLACK) {
+                    sibling.leftChild.color = INode.BLACK;
+                    sibling.color = INode.RED;
+                    rightRotate(sibling);
+                    sibling = parent.rightChild;
+                }
+                sibling.color = parent.color;
+                parent.color = INode.BLACK;
+                sibling.rightChild.color = INode.BLACK;
+                leftRotate(parent);
+            } else {
+                LongNode<V> sibling = parent.leftChild;
+                if (sibling.color == INode.RED) {
+                    sibling.color = INode.BLACK;
+                    parent.color = INode.RED;
+                    rightRotate(parent);
+                    sibling = parent.leftChild;
+                }
+                if (sibling.leftChild.color == INode.BLACK && sibling.rightChild.color == INode.BLACK) {
+                    sibling.color = INode.RED;
+                    doubleBlack = parent;
+                    parent = parent.parent;
+                    continue;
+                }
+                if (sibling.leftChild.color == INode.BLACK) {
+                    sibling.rightChild.color = INode.BLACK;
+                    sibling.color = INode.RED;
+                    leftRotate(sibling);
+                    sibling = parent.leftChild;
+                }
+                sibling.color = parent.color;
+                parent.color = INode.BLACK;
+                sibling.leftChild.color = INode.BLACK;
+                rightRotate(parent);
+            }
+            doubleBlack = root;
+        }
+        if (doubleBlack != nil) {
+            doubleBlack.color = INode.BLACK;
+        }
+    }
+
+    private void leftRotate(LongNode<V> current) {
+        LongNode<V> pivot = current.rightChild;
+        current.rightChild = pivot.leftChild;
+        if (pivot.leftChild != nil) {
+            pivot.leftChild.parent = current;
+        }
+        replaceChild(current, pivot);
+        pivot.leftChild = current;
+        current.parent = pivot;
+    }
+
+    private void rightRotate(LongNode<V> current) {
+        LongNode<V> pivot = current.leftChild;
+        current.leftChild = pivot.rightChild;
+        if (pivot.rightChild != nil) {
+            pivot.rightChild.parent = current;
+        }
+        replaceChild(current, pivot);
+        pivot.rightChild = current;
+        current.parent = pivot;
+    }
+
+    private void replaceChild(LongNode<V> current, LongNode<V> pivot) {
+        LongNode<V> parent = current.parent;
+        pivot.parent = parent;
+        if (parent == null) {
+            root = pivot;
+        } else if (parent.leftChild == current) {
+            parent.leftChild = pivot;
+        } else {
+            parent.rightChild = pivot;
+        }
+    }
+}
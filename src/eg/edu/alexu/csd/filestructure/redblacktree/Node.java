@@ -9,12 +9,31 @@ public class Node<T extends Comparable<T>,V> implements INode<T, V>{
     private INode<T,V> parent;
     private INode<T,V> leftChild;
     private INode<T,V> rightChild;
+    private int size;
+
+    /**
+     * The single black leaf every empty child points at, shared by all trees.
+     * Its setters do nothing, so no caller can change it under another tree.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final INode NIL = new Node(null, null, BLACK, null, null, null);
+
+    /**
+     * return the shared sentinel leaf.
+     * @return sentinel leaf
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>, V> INode<T, V> nil() {
+        return NIL;
+    }
+
     public Node(T key,V value,boolean color,INode<T,V> parent,INode<T,V> leftChild,INode<T,V> rightChild){
         this.parent=parent;
         this.leftChild=leftChild;
         this.rightChild=rightChild;
         this.key=key;
         this.value= value;
+        this.size= key==null ? 0 : 1;
         if(color)
             this.color=RED;
         else
@@ -23,6 +42,8 @@ public class Node<T extends Comparable<T>,V> implements INode<T, V>{
 
 
     public void setParent(INode<T, V> parent){
+        if(this == NIL)
+            return;
         this.parent= parent;
     }
 
@@ -31,6 +52,8 @@ public class Node<T extends Comparable<T>,V> implements INode<T, V>{
     }
 
     public void setLeftChild(INode<T, V> leftChild){
+        if(this == NIL)
+            return;
         this.leftChild=leftChild;
     }
 
@@ -39,6 +62,8 @@ public class Node<T extends Comparable<T>,V> implements INode<T, V>{
     }
 
     public void setRightChild(INode<T, V> rightChild){
+        if(this == NIL)
+            return;
         this.rightChild=rightChild;
     }
 
@@ -50,6 +75,8 @@ public class Node<T extends Comparable<T>,V> implements INode<T, V>{
         return key;
     }
     public void setKey(T key){
+        if(this == NIL)
+            return;
         this.key=key;
     }
 
@@ -57,6 +84,8 @@ public class Node<T extends Comparable<T>,V> implements INode<T, V>{
         return value;
     }
     public void setValue(V value){
+        if(this == NIL)
+            return;
         this.value=value;
     }
 
@@ -64,17 +93,28 @@ public class Node<T extends Comparable<T>,V> implements INode<T, V>{
         return color;
     }
     public void setColor(boolean color){
+        if(this == NIL)
+            return;
         if(color)
             this.color=RED;
         else
             this.color=BLACK;
     }
 
+    /**
+     * Get/Set the number of keys in the subtree rooted at the current node.
+     * @return size of the subtree, zero for the sentinel leaf
+     */
+    int getSize(){
+        return size;
+    }
+    void setSize(int size){
+        if(this == NIL)
+            return;
+        this.size=size;
+    }
+
     public boolean isNull(){
-        if(key==null){
-            return true;
-        }else {
-            return false;
-        }
+        return this == NIL;
     }
 }
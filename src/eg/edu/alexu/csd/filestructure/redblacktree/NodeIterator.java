@@ -0,0 +1,89 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * In order iterator over the nodes of a tree whose nodes keep their parent, ascending or descending.
+ * Each step follows the child and parent links, so it needs no stack and allocates nothing;
+ * a full pass touches every edge twice. The tree must not change while it is iterated.
+ */
+class NodeIterator<T extends Comparable<T>, V> implements Iterator<INode<T, V>> {
+
+    private INode<T, V> next;
+    private final boolean descending;
+
+    /**
+     * @param first      node to start from, or null for an empty iteration.
+     * @param descending whether to walk towards smaller keys.
+     */
+    NodeIterator(INode<T, V> first, boolean descending) {
+        this.next = first;
+        this.descending = descending;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * return the node next() would return, or null at the end.
+     */
+    INode<T, V> peek() {
+        return next;
+    }
+
+    public INode<T, V> next() {
+        INode<T, V> current = next;
+        if (current == null) {
+            throw new NoSuchElementException();
+        }
+        next = descending ? predecessor(current) : successor(current);
+        return current;
+    }
+
+    /**
+     * Makes the given node, or the end if it is null, the next one returned.
+     */
+    void skipTo(INode<T, V> node) {
+        next = node;
+    }
+
+    /**
+     * return the node with the next larger key, or null if node holds the largest.
+     */
+    static <T extends Comparable<T>, V> INode<T, V> successor(INode<T, V> node) {
+        INode<T, V> child = node.getRightChild();
+        if (!child.isNull()) {
+            while (!child.getLeftChild().isNull()) {
+                child = child.getLeftChild();
+            }
+            return child;
+        }
+        INode<T, V> parent = node.getParent();
+        while (parent != null && parent.getRightChild() == node) {
+            node = parent;
+            parent = parent.getParent();
+        }
+        return parent;
+    }
+
+    /**
+     * return the node with the next smaller key, or null if node holds the smallest.
+     */
+    static <T extends Comparable<T>, V> INode<T, V> predecessor(INode<T, V> node) {
+        INode<T, V> child = node.getLeftChild();
+        if (!child.isNull()) {
+            while (!child.getRightChild().isNull()) {
+                child = child.getRightChild();
+            }
+            return child;
+        }
+        INode<T, V> parent = node.getParent();
+        while (parent != null && parent.getLeftChild() == node) {
+            node = parent;
+            parent = parent.getParent();
+        }
+        return parent;
+    }
+}
@@ -0,0 +1,258 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Red black tree from long keys to long values whose nodes live outside the java heap.
+ * Nodes are fixed 32 byte records in direct buffers that are allocated in chunks as the
+ * tree grows, so the garbage collector only ever sees the handful of chunk objects no
+ * matter how many entries the tree holds.
+ */
+public class OffHeapLongRedBlackTree extends IndexedRedBlackTree implements Closeable {
+
+    private static final int NODE_BYTES = 32;
+    private static final int KEY = 0;
+    private static final int VALUE = 8;
+    private static final int LEFT = 16;
+    private static final int RIGHT = 20;
+    private static final int PARENT = 24;
+    private static final int COLOR = 28;
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_NODES = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_NODES - 1;
+
+    private ByteBuffer[] chunks;
+    private int chunkCount;
+    private int top;
+    private int free;
+    private int size;
+
+    public OffHeapLongRedBlackTree() {
+        chunks = new ByteBuffer[4];
+        addChunk();
+        top = 1;
+        free = NIL;
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Clear all keys in the given tree. The allocated chunks are kept for reuse.
+     */
+    public void clear() {
+        checkOpen();
+        root = NIL;
+        top = 1;
+        free = NIL;
+        size = 0;
+    }
+
+    /**
+     * Returns the value associated with the given key, or defaultValue if there is no such key.
+     */
+    public long get(long key, long defaultValue) {
+        int slot = getSlotWithKey(key);
+        return slot == NIL ? defaultValue : getLong(slot, VALUE);
+    }
+
+    public boolean contains(long key) {
+        return getSlotWithKey(key) != NIL;
+    }
+
+    /**
+     * Insert the given key in the tree while maintaining the red black tree properties.
+     * If the key is already present in the tree, update its value.
+     */
+    public void put(long key, long value) {
+        checkOpen();
+        int current = root;
+        int currentParent = NIL;
+        long currentKey = 0;
+        while (current != NIL) {
+            currentParent = current;
+            currentKey = getLong(current, KEY);
+            if (key < currentKey) {
+                current = left(current);
+            } else if (key > currentKey) {
+                current = right(current);
+            } else {
+                putLong(current, VALUE, value);
+                return;
+            }
+        }
+        int slot = newSlot();
+        putLong(slot, KEY, key);
+        putLong(slot, VALUE, value);
+        link(slot, currentParent, key < currentKey);
+        size++;
+    }
+
+    public boolean remove(long key) {
+        checkOpen();
+        int toBeDeleted = getSlotWithKey(key);
+        if (toBeDeleted == NIL) {
+            return false;
+        }
+        int slot = unlink(toBeDeleted);
+        putInt(slot, LEFT, free);
+        free = slot;
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key, or defaultKey if there is no such key.
+     */
+    public long ceilingKey(long key, long defaultKey) {
+        int ceil = NIL;
+        int current = root;
+        while (current != NIL) {
+            long currentKey = getLong(current, KEY);
+            if (key < currentKey) {
+                ceil = current;
+                current = left(current);
+            } else if (key > currentKey) {
+                current = right(current);
+            } else {
+                return key;
+            }
+        }
+        return ceil == NIL ? defaultKey : getLong(ceil, KEY);
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or defaultKey if there is no such key.
+     */
+    public long floorKey(long key, long defaultKey) {
+        int floor = NIL;
+        int current = root;
+        while (current != NIL) {
+            long currentKey = getLong(current, KEY);
+            if (key < currentKey) {
+                current = left(current);
+            } else if (key > currentKey) {
+                floor = current;
+                current = right(current);
+            } else {
+                return key;
+            }
+        }
+        return floor == NIL ? defaultKey : getLong(floor, KEY);
+    }
+
+    /**
+     * Drops every chunk. The tree can't be used after it is closed; the native memory is
+     * handed back once the buffers are collected.
+     */
+    public void close() {
+        chunks = null;
+        chunkCount = 0;
+        root = NIL;
+        size = 0;
+    }
+
+    private int getSlotWithKey(long key) {
+        checkOpen();
+        int current = root;
+        while (current != NIL) {
+            long currentKey = getLong(current, KEY);
+            if (key < currentKey) {
+                current = left(current);
+            } else if (key > currentKey) {
+                current = right(current);
+            } else {
+                return current;
+            }
+        }
+        return NIL;
+    }
+
+    private void checkOpen() {
+        if (chunks == null) {
+            throw new RuntimeErrorException(new Error("Can't use a closed tree"));
+        }
+    }
+
+    private int newSlot() {
+        if (free != NIL) {
+            int slot = free;
+            free = left(slot);
+            return slot;
+        }
+        if (top == chunkCount << CHUNK_SHIFT) {
+            addChunk();
+        }
+        return top++;
+    }
+
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount++] = ByteBuffer.allocateDirect(CHUNK_NODES * NODE_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    private long getLong(int slot, int field) {
+        return chunks[slot >>> CHUNK_SHIFT].getLong((slot & CHUNK_MASK) * NODE_BYTES + field);
+    }
+
+    private void putLong(int slot, int field, long value) {
+        chunks[slot >>> CHUNK_SHIFT].putLong((slot & CHUNK_MASK) * NODE_BYTES + field, value);
+    }
+
+    private int getInt(int slot, int field) {
+        return chunks[slot >>> CHUNK_SHIFT].getInt((slot & CHUNK_MASK) * NODE_BYTES + field);
+    }
+
+    private void putInt(int slot, int field, int value) {
+        chunks[slot >>> CHUNK_SHIFT].putInt((slot & CHUNK_MASK) * NODE_BYTES + field, value);
+    }
+
+    int left(int slot) {
+        return getInt(slot, LEFT);
+    }
+
+    void setLeft(int slot, int left) {
+        putInt(slot, LEFT, left);
+    }
+
+    int right(int slot) {
+        return getInt(slot, RIGHT);
+    }
+
+    void setRight(int slot, int right) {
+        putInt(slot, RIGHT, right);
+    }
+
+    int parent(int slot) {
+        return getInt(slot, PARENT);
+    }
+
+    void setParent(int slot, int parent) {
+        putInt(slot, PARENT, parent);
+    }
+
+    boolean isRed(int slot) {
+        return getInt(slot, COLOR) != 0;
+    }
+
+    void setRed(int slot, boolean red) {
+        putInt(slot, COLOR, red ? 1 : 0);
+    }
+
+    void copyEntry(int from, int to) {
+        putLong(to, KEY, getLong(from, KEY));
+        putLong(to, VALUE, getLong(from, VALUE));
+    }
+}
@@ -0,0 +1,60 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+
+/**
+ * One put or remove in a batch handed to {@link ITreeMap#applyBatch} or {@link IRedBlackTree#applyBatch}.
+ */
+public final class Op<T extends Comparable<T>, V> {
+    private final T key;
+    private final V value;
+
+    private Op(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't apply an op with null key"));
+        }
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * return an op mapping key to value.
+     *
+     * @param key   to be inserted.
+     * @param value the associated value with the given key.
+     * @return put op.
+     */
+    public static <T extends Comparable<T>, V> Op<T, V> put(T key, V value) {
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        return new Op<>(key, value);
+    }
+
+    /**
+     * return an op removing key.
+     *
+     * @param key to be deleted.
+     * @return remove op.
+     */
+    public static <T extends Comparable<T>, V> Op<T, V> remove(T key) {
+        return new Op<>(key, null);
+    }
+
+    public T getKey() {
+        return key;
+    }
+
+    /**
+     * return the value put by this op, or null if it is a remove.
+     *
+     * @return value.
+     */
+    public V getValue() {
+        return value;
+    }
+
+    public boolean isRemove() {
+        return value == null;
+    }
+}
@@ -0,0 +1,119 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+
+/**
+ * Node of a {@link PersistentRedBlackTree}. Once a node is reachable from a published root it
+ * never changes again; updates copy the path they touch instead. A node may only be written by
+ * the update whose edit token it carries, which lets an update mutate the copies it made itself
+ * rather than copying them again at every rebalancing step. The {@link INode} setters always throw.
+ */
+final class PersistentNode<T extends Comparable<T>, V> implements INode<T, V> {
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentNode NIL = new PersistentNode<>(null, null, INode.BLACK, null, null, null);
+
+    T key;
+    V value;
+    boolean color;
+    PersistentNode<T, V> left;
+    PersistentNode<T, V> right;
+    int size;
+    Object owner;
+
+    PersistentNode(T key, V value, boolean color, PersistentNode<T, V> left, PersistentNode<T, V> right, Object owner) {
+        this.key = key;
+        this.value = value;
+        this.color = color;
+        this.left = left;
+        this.right = right;
+        this.size = key == null ? 0 : left.size + right.size + 1;
+        this.owner = owner;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>, V> PersistentNode<T, V> nil() {
+        return NIL;
+    }
+
+    /**
+     * Returns this node if it carries the given edit token, a copy carrying it otherwise.
+     */
+    PersistentNode<T, V> editable(Object edit) {
+        if (owner == edit) {
+            return this;
+        }
+        PersistentNode<T, V> copy = new PersistentNode<>(key, value, color, left, right, edit);
+        copy.size = size;
+        return copy;
+    }
+
+    boolean isRed() {
+        return color == INode.RED;
+    }
+
+    void resize() {
+        size = left.size + right.size + 1;
+    }
+
+    private static RuntimeErrorException readOnly() {
+        return new RuntimeErrorException(new Error("Can't modify a persistent node"));
+    }
+
+    public void setParent(INode<T, V> parent) {
+        throw readOnly();
+    }
+
+    /**
+     * Persistent nodes are shared between versions, so they have no single parent.
+     *
+     * @return null.
+     */
+    public INode<T, V> getParent() {
+        return null;
+    }
+
+    public void setLeftChild(INode<T, V> leftChild) {
+        throw readOnly();
+    }
+
+    public INode<T, V> getLeftChild() {
+        return left;
+    }
+
+    public void setRightChild(INode<T, V> rightChild) {
+        throw readOnly();
+    }
+
+    public INode<T, V> getRightChild() {
+        return right;
+    }
+
+    public T getKey() {
+        return key;
+    }
+
+    public void setKey(T key) {
+        throw readOnly();
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    public void setValue(V value) {
+        throw readOnly();
+    }
+
+    public boolean getColor() {
+        return color;
+    }
+
+    public void setColor(boolean color) {
+        throw readOnly();
+    }
+
+    public boolean isNull() {
+        return this == NIL;
+    }
+}
@@ -0,0 +1,331 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.Comparator;
+
+/**
+ * Red black tree whose versions share structure. Insert and delete copy only the nodes on the
+ * path they touch and publish a new root, so every earlier root stays a valid, unchanging tree
+ * and {@link #snapshot()} is just a read of the current root.
+ * The tree is kept left leaning (no red right children) which keeps the copied paths short.
+ */
+class PersistentRedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T, V> {
+
+    private final Comparator<? super T> comparator;
+    private volatile PersistentNode<T, V> root;
+
+    PersistentRedBlackTree() {
+        this(null);
+    }
+
+    PersistentRedBlackTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        root = PersistentNode.nil();
+    }
+
+    /**
+     * Returns an immutable view of the tree as it is now. Later updates don't show through it,
+     * and it can be read from any thread without locking.
+     *
+     * @return the current version as a read only map.
+     */
+    ITreeMap<T, V> snapshot() {
+        return new SnapshotTreeMap<>(root, comparator);
+    }
+
+    /**
+     * return the root of the given Red black tree.
+     *
+     * @return root.
+     */
+    public INode<T, V> getRoot() {
+        return root;
+    }
+
+    /**
+     * return whether the given tree isEmpty or not.
+     *
+     * @return boolean represent the state of the tree.
+     */
+    public boolean isEmpty() {
+        return root.isNull();
+    }
+
+    int size() {
+        return root.size;
+    }
+
+    /**
+     * Clear all keys in the given tree. Snapshots taken before keep their entries.
+     */
+    public void clear() {
+        root = PersistentNode.nil();
+    }
+
+    /**
+     * return the value associated with the given key or null if no value is found.
+     *
+     * @param key to search.
+     * @return value associated with this key.
+     */
+    public V search(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null key!"));
+        }
+        return find(root, key, comparator).value;
+    }
+
+    /**
+     * return true if the tree contains the given key and false otherwise.
+     *
+     * @param key to search.
+     * @return found key in tree or not.
+     */
+    public boolean contains(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't check for a null key"));
+        }
+        return !find(root, key, comparator).isNull();
+    }
+
+    /**
+     * Insert the given key in the tree while maintaining the red black tree properties.
+     * If the key is already present in the tree, update its value.
+     *
+     * @param key   to be inserted
+     * @param value the associated value with the given key
+     * @return the value the key had before, or null if a new node was created.
+     */
+    public V insert(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        Update<T, V> update = new Update<T, V>(comparator);
+        root = update.insert(root, key, value);
+        return update.previous();
+    }
+
+    /**
+     * Delete the node associated with the given key.
+     * Return true in case of success and false otherwise.
+     *
+     * @param key to be deleted.
+     * @return true in case of success and false otherwise.
+     */
+    public boolean delete(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't delete a null key!"));
+        }
+        if (find(root, key, comparator).isNull()) {
+            return false;
+        }
+        root = new Update<T, V>(comparator).delete(root, key);
+        return true;
+    }
+
+    /**
+     * Node holding key under root, or the sentinel if there is none.
+     */
+    static <T extends Comparable<T>, V> PersistentNode<T, V> find(PersistentNode<T, V> root, T key,
+                                                                 Comparator<? super T> comparator) {
+        PersistentNode<T, V> current = root;
+        while (!current.isNull()) {
+            int comparison = comparator == null ? key.compareTo(current.key) : comparator.compare(key, current.key);
+            if (comparison == 0) {
+                break;
+            }
+            current = comparison < 0 ? current.left : current.right;
+        }
+        return current;
+    }
+
+    /**
+     * One insert or delete against a given root. Nodes it copies carry its edit token and are
+     * written in place until the new root is handed back. Nothing reachable from the old root is
+     * ever written. The token is a bare object rather than the update itself, so published nodes
+     * don't keep the replaced value or the comparator reachable.
+     */
+    static final class Update<T extends Comparable<T>, V> {
+        private final Comparator<? super T> comparator;
+        private final Object edit = new Object();
+        private V previous;
+
+        Update(Comparator<? super T> comparator) {
+            this.comparator = comparator;
+        }
+
+        private int compare(T first, T second) {
+            return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+        }
+
+        /**
+         * return the value the last insert replaced, or null if it added the key.
+         */
+        V previous() {
+            return previous;
+        }
+
+        /**
+         * Returns the root of a version with key mapped to value.
+         */
+        PersistentNode<T, V> insert(PersistentNode<T, V> root, T key, V value) {
+            root = put(root, key, value);
+            if (root.isRed()) {
+                root = root.editable(edit);
+                root.color = INode.BLACK;
+            }
+            return root;
+        }
+
+        /**
+         * Returns the root of a version without key, which must be present under root.
+         */
+        PersistentNode<T, V> delete(PersistentNode<T, V> root, T key) {
+            if (!isRed(root.left) && !isRed(root.right)) {
+                root = root.editable(edit);
+                root.color = INode.RED;
+            }
+            root = remove(root, key);
+            if (!root.isNull() && root.isRed()) {
+                root = root.editable(edit);
+                root.color = INode.BLACK;
+            }
+            return root;
+        }
+
+        private PersistentNode<T, V> put(PersistentNode<T, V> node, T key, V value) {
+            if (node.isNull()) {
+                return new PersistentNode<>(key, value, INode.RED, node, node, edit);
+            }
+            node = node.editable(edit);
+            int comparison = compare(key, node.key);
+            if (comparison < 0) {
+                node.left = put(node.left, key, value);
+            } else if (comparison > 0) {
+                node.right = put(node.right, key, value);
+            } else {
+                previous = node.value;
+                node.value = value;
+                return node;
+            }
+            return balance(node);
+        }
+
+        private PersistentNode<T, V> remove(PersistentNode<T, V> node, T key) {
+            node = node.editable(edit);
+            if (compare(key, node.key) < 0) {
+                if (!isRed(node.left) && !isRed(node.left.left)) {
+                    node = moveRedLeft(node);
+                }
+                node.left = remove(node.left, key);
+            } else {
+                if (isRed(node.left)) {
+                    node = rotateRight(node);
+                }
+                if (compare(key, node.key) == 0 && node.right.isNull()) {
+                    return node.right;
+                }
+                if (!isRed(node.right) && !isRed(node.right.left)) {
+                    node = moveRedRight(node);
+                }
+                if (compare(key, node.key) == 0) {
+                    PersistentNode<T, V> successor = node.right;
+                    while (!successor.left.isNull()) {
+                        successor = successor.left;
+                    }
+                    node.key = successor.key;
+                    node.value = successor.value;
+                    node.right = removeMin(node.right);
+                } else {
+                    node.right = remove(node.right, key);
+                }
+            }
+            return balance(node);
+        }
+
+        private PersistentNode<T, V> removeMin(PersistentNode<T, V> node) {
+            if (node.left.isNull()) {
+                return node.left;
+            }
+            node = node.editable(edit);
+            if (!isRed(node.left) && !isRed(node.left.left)) {
+                node = moveRedLeft(node);
+            }
+            node.left = removeMin(node.left);
+            return balance(node);
+        }
+
+        private PersistentNode<T, V> balance(PersistentNode<T, V> node) {
+            if (isRed(node.right) && !isRed(node.left)) {
+                node = rotateLeft(node);
+            }
+            if (isRed(node.left) && isRed(node.left.left)) {
+                node = rotateRight(node);
+            }
+            if (isRed(node.left) && isRed(node.right)) {
+                flipColors(node);
+            }
+            node.resize();
+            return node;
+        }
+
+        private PersistentNode<T, V> moveRedLeft(PersistentNode<T, V> node) {
+            flipColors(node);
+            if (isRed(node.right.left)) {
+                node.right = rotateRight(node.right.editable(edit));
+                node = rotateLeft(node);
+                flipColors(node);
+            }
+            return node;
+        }
+
+        private PersistentNode<T, V> moveRedRight(PersistentNode<T, V> node) {
+            flipColors(node);
+            if (isRed(node.left.left)) {
+                node = rotateRight(node);
+                flipColors(node);
+            }
+            return node;
+        }
+
+        /**
+         * Rotations and flips expect node to be owned by this update already.
+         */
+        private PersistentNode<T, V> rotateLeft(PersistentNode<T, V> node) {
+            PersistentNode<T, V> pivot = node.right.editable(edit);
+            node.right = pivot.left;
+            pivot.left = node;
+            pivot.color = node.color;
+            node.color = INode.RED;
+            pivot.size = node.size;
+            node.resize();
+            return pivot;
+        }
+
+        private PersistentNode<T, V> rotateRight(PersistentNode<T, V> node) {
+            PersistentNode<T, V> pivot = node.left.editable(edit);
+            node.left = pivot.right;
+            pivot.right = node;
+            pivot.color = node.color;
+            node.color = INode.RED;
+            pivot.size = node.size;
+            node.resize();
+            return pivot;
+        }
+
+        private void flipColors(PersistentNode<T, V> node) {
+            node.color = !node.color;
+            node.left = node.left.editable(edit);
+            node.left.color = !node.left.color;
+            node.right = node.right.editable(edit);
+            node.right.color = !node.right.color;
+        }
+
+        private static boolean isRed(PersistentNode<?, ?> node) {
+            return node != null && node.color == INode.RED;
+        }
+    }
+}
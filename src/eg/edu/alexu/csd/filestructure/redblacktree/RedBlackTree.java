@@ -1,14 +1,59 @@
 package eg.edu.alexu.csd.filestructure.redblacktree;
 
 import javax.management.RuntimeErrorException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 
 public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T, V> {
     INode<T, V> root;
+    /**
+     * Fingers on the nodes holding the smallest and the largest key, nil while the tree is empty.
+     * Keys beyond either end are linked straight under them instead of descending from root.
+     */
+    private INode<T, V> first;
+    private INode<T, V> last;
+
+    private final INode<T, V> nil = Node.nil();
+    private final Comparator<? super T> comparator;
 
     RedBlackTree() {
-        root = new Node<T, V>(null, null, INode.BLACK, null, null, null);
-        root.setRightChild(new Node<T, V>(null, null, INode.BLACK, root, null, null));
-        root.setLeftChild(new Node<T, V>(null, null, INode.BLACK, root, null, null));
+        this(null);
+    }
+
+    /**
+     * Creates a tree ordered by the given comparator, or by the keys' natural ordering if it is null.
+     *
+     * @param comparator used to order the keys.
+     */
+    RedBlackTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        root = nil;
+        first = nil;
+        last = nil;
+    }
+
+    /**
+     * return the comparator used to order the keys, or null if they use their natural ordering.
+     *
+     * @return comparator.
+     */
+    Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Compares two keys once, with the comparator if there is one.
+     */
+    int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
     }
 
     /**
@@ -26,16 +71,16 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
      * @return boolean represent the state of the tree.
      */
     public boolean isEmpty() {
-        return (root.isNull());
+        return root == nil;
     }
 
     /**
      * Clear all keys in the given tree.
      */
     public void clear() {
-        root = new Node<T, V>(null, null, INode.BLACK, null, null, null);
-        root.setRightChild(new Node<T, V>(null, null, INode.BLACK, root, null, null));
-        root.setLeftChild(new Node<T, V>(null, null, INode.BLACK, root, null, null));
+        root = nil;
+        first = nil;
+        last = nil;
     }
 
     /**
@@ -48,20 +93,8 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
         if (key == null) {
             throw new RuntimeErrorException(new Error("Can't search for a null key!"));
         }
-        if (root.isNull()) {
-            return null;
-        }
-        INode<T, V> current = root;
-        while (!current.isNull()) {
-            if (current.getKey().compareTo(key) == 0) {
-                return current.getValue();
-            } else if (current.getKey().compareTo(key) < 0) {
-                current = current.getRightChild();
-            } else {
-                current = current.getLeftChild();
-            }
-        }
-        return null;
+        INode<T, V> node = getNodeWithKey(key);
+        return node == null ? null : node.getValue();
     }
 
     /**
@@ -74,20 +107,7 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
         if (key == null) {
             throw new RuntimeErrorException(new Error("Can't check for a null key"));
         }
-        INode<T, V> current = root;
-        if (root.isNull()) {
-            return false;
-        }
-        while (!current.isNull()) {
-            if (current.getKey().compareTo(key) == 0) {
-                return true;
-            } else if (current.getKey().compareTo(key) < 0) {
-                current = current.getRightChild();
-            } else {
-                current = current.getLeftChild();
-            }
-        }
-        return false;
+        return getNodeWithKey(key) != null;
     }
 
     /**
@@ -96,38 +116,122 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
      *
      * @param key   to be inserted
      * @param value the associated value with the given key
+     * @return the value the key had before, or null if a new node was created.
      */
-    public void insert(T key, V value) {
+    public V insert(T key, V value) {
+        return insert(key, value, true);
+    }
+
+    /**
+     * Inserts the given key with one descent; an existing key keeps its value unless replace is set.
+     *
+     * @param key     to be inserted
+     * @param value   the associated value with the given key
+     * @param replace whether an existing key takes the new value.
+     * @return the value the key had before, or null if a new node was created.
+     */
+    V insert(T key, V value, boolean replace) {
         if (key == null) {
             throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
         }
         if (value == null) {
             throw new RuntimeErrorException(new Error("Can't insert a null value"));
         }
-        if (root.isNull()) {
-            root = new Node<>(key, value, false, null, null, null);
-            root.setLeftChild(new Node<>(null, null, false, root, null, null));
-            root.setRightChild(new Node<>(null, null, false, root, null, null));
-            return;
+        if (root == nil) {
+            link(null, 0, key, value);
+            return null;
         }
         INode<T, V> current = root;
-        while (!current.isNull()) {
-            if (current.getKey().compareTo(key) == 0) {
-                break;
-            } else if (current.getKey().compareTo(key) < 0) {
+        INode<T, V> parent = null;
+        int comparison = compare(key, last.getKey());
+        if (comparison > 0) {
+            parent = last;
+            current = nil;
+        } else if (comparison < 0 && compare(key, first.getKey()) < 0) {
+            parent = first;
+            current = nil;
+        }
+        while (current != nil) {
+            parent = current;
+            comparison = compare(key, current.getKey());
+            if (comparison < 0) {
+                current = current.getLeftChild();
+            } else if (comparison > 0) {
                 current = current.getRightChild();
             } else {
-                current = current.getLeftChild();
+                V previous = current.getValue();
+                if (replace) {
+                    current.setValue(value);
+                }
+                return previous;
+            }
+        }
+        link(parent, comparison, key, value);
+        return null;
+    }
+
+    /**
+     * Maps key to what the function returns for it and its current value, or null if absent,
+     * with one descent; a null result removes the key. The function must not change the tree.
+     *
+     * @param key      to remap.
+     * @param function from the key and its value to the new value.
+     * @return the new value, or null if the key is now absent.
+     */
+    V compute(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't compute a value for a null key"));
+        }
+        INode<T, V> current = root;
+        INode<T, V> parent = null;
+        int comparison = 0;
+        while (current != nil) {
+            comparison = compare(key, current.getKey());
+            if (comparison == 0) {
+                break;
+            }
+            parent = current;
+            current = comparison < 0 ? current.getLeftChild() : current.getRightChild();
+        }
+        V value = function.apply(key, current == nil ? null : current.getValue());
+        if (current != nil) {
+            if (value == null) {
+                unlink(current);
+            } else {
+                current.setValue(value);
             }
+        } else if (value != null) {
+            link(parent, comparison, key, value);
         }
-        current.setValue(value);
-        if (current.isNull()) {
-            current.setColor(true);
-            current.setKey(key);
-            current.setLeftChild(new Node<>(null, null, false, current, null, null));
-            current.setRightChild(new Node<>(null, null, false, current, null, null));
-            reColor(current);
+        return value;
+    }
+
+    /**
+     * Hangs a new red node under parent, on the side given by the sign of comparison, and
+     * restores the red black properties. A null parent makes the node the root of an empty tree.
+     */
+    private INode<T, V> link(INode<T, V> parent, int comparison, T key, V value) {
+        if (parent == null) {
+            root = new Node<>(key, value, INode.BLACK, null, nil, nil);
+            first = root;
+            last = root;
+            return root;
+        }
+        INode<T, V> current = new Node<>(key, value, INode.RED, parent, nil, nil);
+        if (comparison < 0) {
+            parent.setLeftChild(current);
+            if (parent == first) {
+                first = current;
+            }
+        } else {
+            parent.setRightChild(current);
+            if (parent == last) {
+                last = current;
+            }
         }
+        resizePath(parent, 1);
+        reColor(current);
+        return current;
     }
 
     /**
@@ -145,7 +249,115 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
         if (toBeDeleted == null) {
             return false;
         }
-        if (!toBeDeleted.getLeftChild().isNull() && !toBeDeleted.getRightChild().isNull()) {
+        unlink(toBeDeleted);
+        return true;
+    }
+
+    /**
+     * Apply the given puts and removes as if one at a time in list order.
+     * The ops are sorted by key and applied in one left to right walk: each key is searched
+     * for from the node the previous key ended at, climbing only as far as needed instead
+     * of starting over at root. Several ops on the same key touch the tree once, with the
+     * net effect of the run.
+     *
+     * @param ops to be applied.
+     * @return for every op, the value its key held just before it, or null.
+     */
+    public List<V> applyBatch(List<Op<T, V>> ops) {
+        if (ops == null || ops.contains(null)) {
+            throw new RuntimeErrorException(new Error("Can't apply a null op"));
+        }
+        @SuppressWarnings("unchecked")
+        Step<T>[] steps = (Step<T>[]) new Step<?>[ops.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = new Step<>(ops.get(i).getKey(), i);
+        }
+        Arrays.sort(steps, new Comparator<Step<T>>() {
+            public int compare(Step<T> first, Step<T> second) {
+                return RedBlackTree.this.compare(first.key, second.key);
+            }
+        });
+        Object[] previous = new Object[steps.length];
+        INode<T, V> finger = null;
+        for (int run = 0; run < steps.length; ) {
+            T key = steps[run].key;
+            INode<T, V> current = finger == null ? root : climb(finger, key);
+            INode<T, V> parent = current == root ? null : current.getParent();
+            INode<T, V> floor = finger;
+            int comparison = 0;
+            while (current != nil) {
+                comparison = compare(key, current.getKey());
+                if (comparison == 0) {
+                    break;
+                }
+                parent = current;
+                if (comparison < 0) {
+                    current = current.getLeftChild();
+                } else {
+                    floor = current;
+                    current = current.getRightChild();
+                }
+            }
+            V value = current == nil ? null : current.getValue();
+            int end = run;
+            for (; end < steps.length && compare(steps[end].key, key) == 0; end++) {
+                previous[steps[end].index] = value;
+                value = ops.get(steps[end].index).getValue();
+            }
+            run = end;
+            if (value == null) {
+                if (current != nil) {
+                    unlink(current);
+                }
+                finger = floor;
+            } else if (current != nil) {
+                current.setValue(value);
+                finger = current;
+            } else {
+                finger = link(parent, comparison, key, value);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<V> result = (List<V>) Arrays.asList(previous);
+        return result;
+    }
+
+    /**
+     * Key of an op in a batch and the op's position in the batch.
+     */
+    private static final class Step<T> {
+        final T key;
+        final int index;
+
+        Step(T key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Climbs from a node whose key is less than key to the lowest ancestor whose subtree
+     * spans key, so the search can go on downwards from there.
+     */
+    private INode<T, V> climb(INode<T, V> from, T key) {
+        INode<T, V> current = from;
+        while (current.getParent() != null) {
+            INode<T, V> parent = current.getParent();
+            if (parent.getLeftChild() == current && compare(key, parent.getKey()) < 0) {
+                return current;
+            }
+            current = parent;
+        }
+        return current;
+    }
+
+    /**
+     * Removes the entry held by the given node and restores the red black properties.
+     * An entry with two children is swapped with its successor's first, so the node that
+     * actually leaves the tree is the successor's.
+     */
+    private void unlink(INode<T, V> toBeDeleted) {
+        if (toBeDeleted.getLeftChild() != nil && toBeDeleted.getRightChild() != nil) {
             INode<T, V> successor = getSuccessor(toBeDeleted);
             T swapTmpKey = successor.getKey();
             V swapTmpValue = successor.getValue();
@@ -153,44 +365,665 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
             successor.setValue(toBeDeleted.getValue());
             toBeDeleted.setKey(swapTmpKey);
             toBeDeleted.setValue(swapTmpValue);
+            if (successor == last) {
+                last = toBeDeleted;
+            }
             toBeDeleted = successor;
         }
-        if (!toBeDeleted.getLeftChild().isNull()) {
+        if (toBeDeleted == first) {
+            first = toBeDeleted.getRightChild() != nil ? toBeDeleted.getRightChild() : toBeDeleted.getParent();
+        } else if (toBeDeleted == last) {
+            last = toBeDeleted.getLeftChild() != nil ? toBeDeleted.getLeftChild() : toBeDeleted.getParent();
+        }
+        if (first == null) {
+            first = nil;
+            last = nil;
+        }
+        resizePath(toBeDeleted.getParent(), -1);
+        if (toBeDeleted.getLeftChild() != nil) {
             INode<T, V> replacement = toBeDeleted.getLeftChild();
             if (toBeDeleted.getColor() == INode.RED || toBeDeleted.getLeftChild().getColor() == INode.RED) {
                 leftDelete(toBeDeleted);
             } else {
                 leftDelete(toBeDeleted);
-                fixDoubleBlack(replacement);
+                fixDoubleBlack(replacement, replacement.getParent());
             }
-        } else if (!toBeDeleted.getRightChild().isNull()) {
+        } else if (toBeDeleted.getRightChild() != nil) {
             INode<T, V> replacement = toBeDeleted.getRightChild();
             if (toBeDeleted.getColor() == INode.RED || toBeDeleted.getRightChild().getColor() == INode.RED) {
                 rightDelete(toBeDeleted);
             } else {
                 rightDelete(toBeDeleted);
-                fixDoubleBlack(replacement);
+                fixDoubleBlack(replacement, replacement.getParent());
             }
         } else {
-            INode<T, V> replacement = new Node<>(null, null, INode.BLACK, toBeDeleted.getParent(), null, null);
+            INode<T, V> parent = toBeDeleted.getParent();
             if (toBeDeleted.getColor() == INode.RED) {
-                leafDelete(toBeDeleted, replacement);
+                leafDelete(toBeDeleted);
             } else {
-                leafDelete(toBeDeleted, replacement);
-                fixDoubleBlack(replacement);
+                leafDelete(toBeDeleted);
+                fixDoubleBlack(nil, parent);
             }
         }
-        return true;
+    }
+
+    /**
+     * return the number of keys in the tree.
+     *
+     * @return size.
+     */
+    int size() {
+        return size(root);
+    }
+
+    /**
+     * return the node holding the smallest key, or null if the tree is empty.
+     *
+     * @return first node.
+     */
+    INode<T, V> first() {
+        return first == nil ? null : first;
+    }
+
+    /**
+     * return the node holding the largest key, or null if the tree is empty.
+     *
+     * @return last node.
+     */
+    INode<T, V> last() {
+        return last == nil ? null : last;
+    }
+
+    /**
+     * return the node holding the smallest key greater than the given key, or equal to it if inclusive,
+     * or null if there is none.
+     *
+     * @param key       to look up.
+     * @param inclusive whether a node holding the key itself qualifies.
+     * @return ceiling node.
+     */
+    INode<T, V> ceiling(T key, boolean inclusive) {
+        INode<T, V> candidate = null;
+        INode<T, V> current = root;
+        while (current != nil) {
+            int comparison = compare(key, current.getKey());
+            if (comparison < 0 || (inclusive && comparison == 0)) {
+                candidate = current;
+                if (comparison == 0) {
+                    break;
+                }
+                current = current.getLeftChild();
+            } else {
+                current = current.getRightChild();
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * return the node holding the largest key less than the given key, or equal to it if inclusive,
+     * or null if there is none.
+     *
+     * @param key       to look up.
+     * @param inclusive whether a node holding the key itself qualifies.
+     * @return floor node.
+     */
+    INode<T, V> floor(T key, boolean inclusive) {
+        INode<T, V> candidate = null;
+        INode<T, V> current = root;
+        while (current != nil) {
+            int comparison = compare(key, current.getKey());
+            if (comparison > 0 || (inclusive && comparison == 0)) {
+                candidate = current;
+                if (comparison == 0) {
+                    break;
+                }
+                current = current.getRightChild();
+            } else {
+                current = current.getLeftChild();
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * return the number of keys strictly less than the given key, or less than or equal to it if inclusive.
+     *
+     * @param key       to rank.
+     * @param inclusive whether a key equal to the given one is counted.
+     * @return number of keys before the given key.
+     */
+    int rank(T key, boolean inclusive) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't rank a null key"));
+        }
+        int rank = 0;
+        INode<T, V> current = root;
+        while (current != nil) {
+            int comparison = compare(key, current.getKey());
+            if (comparison < 0) {
+                current = current.getLeftChild();
+            } else if (comparison > 0) {
+                rank += size(current.getLeftChild()) + 1;
+                current = current.getRightChild();
+            } else {
+                return rank + size(current.getLeftChild()) + (inclusive ? 1 : 0);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * return the node holding the key with the given zero based rank, or null if there is no such node.
+     *
+     * @param index rank of the wanted key.
+     * @return node with that rank.
+     */
+    INode<T, V> select(int index) {
+        if (index < 0 || index >= size(root)) {
+            return null;
+        }
+        INode<T, V> current = root;
+        while (true) {
+            int leftSize = size(current.getLeftChild());
+            if (index < leftSize) {
+                current = current.getLeftChild();
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                current = current.getRightChild();
+            } else {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * return a spliterator over the entries in key order that splits along subtree sizes.
+     *
+     * @return spliterator over the whole tree.
+     */
+    Spliterator<Map.Entry<T, V>> spliterator() {
+        return new TreeSpliterator<>(this, 0, size(root), null);
+    }
+
+    int size(INode<T, V> node) {
+        return ((Node<T, V>) node).getSize();
+    }
+
+    private void setSize(INode<T, V> node, int size) {
+        ((Node<T, V>) node).setSize(size);
+    }
+
+    /**
+     * Adds delta to the subtree size of node and of every ancestor.
+     */
+    private void resizePath(INode<T, V> node, int delta) {
+        while (node != null) {
+            setSize(node, size(node) + delta);
+            node = node.getParent();
+        }
+    }
+
+    /**
+     * Replaces the contents of the tree with the given entries in linear time.
+     * The entries must be in strictly ascending key order; otherwise the tree is left unchanged.
+     *
+     * @param entries iterator over exactly size entries.
+     * @param size    number of entries.
+     */
+    void buildFromSorted(Iterator<? extends Map.Entry<? extends T, ? extends V>> entries, int size) {
+        if (entries == null) {
+            throw new RuntimeErrorException(new Error("Can't build a tree from null entries"));
+        }
+        int redLevel = 0;
+        for (int m = size - 1; m >= 0; m = m / 2 - 1) {
+            redLevel++;
+        }
+        INode<T, V> built = buildFromSorted(entries, 0, size - 1, 0, redLevel);
+        if (built != nil) {
+            built.setParent(null);
+        }
+        root = built;
+        first = built;
+        last = built;
+        if (built != nil) {
+            while (first.getLeftChild() != nil) {
+                first = first.getLeftChild();
+            }
+            while (last.getRightChild() != nil) {
+                last = last.getRightChild();
+            }
+        }
+    }
+
+    /**
+     * Builds the subtree holding the entries lo..hi. Every level is black except the deepest
+     * one when it is only partly filled, which is red; that keeps all black heights equal.
+     * The order is checked against the neighbours in both subtrees, which costs linear time overall.
+     */
+    private INode<T, V> buildFromSorted(Iterator<? extends Map.Entry<? extends T, ? extends V>> entries,
+                                        int lo, int hi, int level, int redLevel) {
+        if (lo > hi) {
+            return nil;
+        }
+        int mid = (lo + hi) >>> 1;
+        INode<T, V> left = buildFromSorted(entries, lo, mid - 1, level + 1, redLevel);
+        if (!entries.hasNext()) {
+            throw new RuntimeErrorException(new Error("Fewer entries than the given size"));
+        }
+        Map.Entry<? extends T, ? extends V> entry = entries.next();
+        if (entry.getKey() == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (entry.getValue() == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        INode<T, V> middle = new Node<>(entry.getKey(), entry.getValue(), level == redLevel ? INode.RED : INode.BLACK, null, left, nil);
+        INode<T, V> right = buildFromSorted(entries, mid + 1, hi, level + 1, redLevel);
+        setSize(middle, size(left) + size(right) + 1);
+        if (left != nil) {
+            if (compare(getPredecessor(middle).getKey(), middle.getKey()) >= 0) {
+                throw new RuntimeErrorException(new Error("Entries are not in strictly ascending key order"));
+            }
+            left.setParent(middle);
+        }
+        if (right != nil) {
+            middle.setRightChild(right);
+            if (compare(middle.getKey(), getSuccessor(middle).getKey()) >= 0) {
+                throw new RuntimeErrorException(new Error("Entries are not in strictly ascending key order"));
+            }
+            right.setParent(middle);
+        }
+        return middle;
+    }
+
+    /**
+     * A detached subtree together with its black height, the number of black nodes on every
+     * path from its root down to a leaf. Carrying the height along lets join run in time
+     * proportional to the difference of the two heights.
+     */
+    static final class Subtree<T extends Comparable<T>, V> {
+        final INode<T, V> root;
+        final int height;
+
+        Subtree(INode<T, V> root, int height) {
+            this.root = root;
+            this.height = height;
+        }
+    }
+
+    /**
+     * The keys of a subtree below and above a split key, and the node holding the key itself.
+     */
+    private static final class Split<T extends Comparable<T>, V> {
+        final Subtree<T, V> less;
+        final INode<T, V> found;
+        final Subtree<T, V> greater;
+
+        Split(Subtree<T, V> less, INode<T, V> found, Subtree<T, V> greater) {
+            this.less = less;
+            this.found = found;
+            this.greater = greater;
+        }
+    }
+
+    /**
+     * Subtrees with at least this many nodes on the read side are combined in parallel.
+     */
+    private static final int PARALLEL_GRAIN = 4096;
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    /**
+     * Moves every entry with a key greater than the given key into a new tree, which is returned.
+     *
+     * @param key to split at, kept in this tree if present.
+     * @return tree of the greater keys.
+     */
+    RedBlackTree<T, V> split(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't split at a null key"));
+        }
+        Split<T, V> split = split(detach(), key);
+        Subtree<T, V> less = split.less;
+        if (split.found != null) {
+            less = join(less, split.found, new Subtree<>(nil, 0));
+        }
+        RedBlackTree<T, V> greater = new RedBlackTree<T, V>(comparator);
+        adopt(less);
+        greater.adopt(split.greater);
+        return greater;
+    }
+
+    /**
+     * Moves every entry of the given tree, whose keys must all be greater than this tree's, into this tree.
+     *
+     * @param greater tree left empty.
+     */
+    void join(RedBlackTree<T, V> greater) {
+        if (greater == null) {
+            throw new RuntimeErrorException(new Error("Can't join a null tree"));
+        }
+        if (greater == this || root != nil && greater.root != nil && compare(last.getKey(), greater.first.getKey()) >= 0) {
+            throw new RuntimeErrorException(new Error("Can't join a tree whose keys are not all greater"));
+        }
+        adopt(join(detach(), greater.detach()));
+    }
+
+    /**
+     * Adds the entries of other, resolving keys present in both with merge(this value, other value);
+     * a null merged value removes the key. The other tree is only read.
+     */
+    void union(RedBlackTree<T, V> other, BinaryOperator<V> merge) {
+        combine(UNION, other, merge);
+    }
+
+    /**
+     * Keeps only the keys also present in other, with merge(this value, other value) as their value;
+     * a null merged value removes the key. The other tree is only read.
+     */
+    void intersect(RedBlackTree<T, V> other, BinaryOperator<V> merge) {
+        combine(INTERSECTION, other, merge);
+    }
+
+    /**
+     * Removes every key present in other. The other tree is only read.
+     */
+    void difference(RedBlackTree<T, V> other) {
+        combine(DIFFERENCE, other, null);
+    }
+
+    /**
+     * Rebuilds this tree by splitting it at the keys of other from the top of other down, so
+     * the work is O(m log(n / m + 1)) for m keys in the smaller tree. Disjoint halves are
+     * combined as separate fork join tasks.
+     */
+    private void combine(int operation, RedBlackTree<T, V> other, BinaryOperator<V> merge) {
+        if (other == null) {
+            throw new RuntimeErrorException(new Error("Can't combine with a null tree"));
+        }
+        if (merge == null && operation != DIFFERENCE) {
+            throw new RuntimeErrorException(new Error("Can't combine with a null merge function"));
+        }
+        Subtree<T, V> read = other.subtree();
+        if (other == this) {
+            read = copy(read.root, read.height);
+        }
+        Subtree<T, V> own = detach();
+        Combine task = new Combine(operation, own, read, merge);
+        adopt(size(read.root) >= PARALLEL_GRAIN ? ForkJoinPool.commonPool().invoke(task) : task.compute());
+    }
+
+    private final class Combine extends RecursiveTask<Subtree<T, V>> {
+        private static final long serialVersionUID = 1L;
+        private final int operation;
+        private final Subtree<T, V> own;
+        private final Subtree<T, V> read;
+        private final BinaryOperator<V> merge;
+
+        Combine(int operation, Subtree<T, V> own, Subtree<T, V> read, BinaryOperator<V> merge) {
+            this.operation = operation;
+            this.own = own;
+            this.read = read;
+            this.merge = merge;
+        }
+
+        protected Subtree<T, V> compute() {
+            INode<T, V> other = read.root;
+            if (other == nil) {
+                return operation == INTERSECTION ? new Subtree<>(nil, 0) : own;
+            }
+            if (own.root == nil) {
+                return operation == UNION ? copy(other, read.height) : own;
+            }
+            int height = read.height - (other.getColor() == INode.BLACK ? 1 : 0);
+            Split<T, V> split = split(own, other.getKey());
+            Combine less = new Combine(operation, split.less, new Subtree<>(other.getLeftChild(), height), merge);
+            Combine greater = new Combine(operation, split.greater, new Subtree<>(other.getRightChild(), height), merge);
+            Subtree<T, V> left;
+            Subtree<T, V> right;
+            if (size(other) >= PARALLEL_GRAIN) {
+                less.fork();
+                right = greater.compute();
+                left = less.join();
+            } else {
+                left = less.compute();
+                right = greater.compute();
+            }
+            INode<T, V> middle = split.found;
+            if (operation == DIFFERENCE || operation == INTERSECTION && middle == null) {
+                return RedBlackTree.this.join(left, right);
+            }
+            V value = middle == null ? other.getValue() : merge.apply(middle.getValue(), other.getValue());
+            if (value == null) {
+                return RedBlackTree.this.join(left, right);
+            }
+            if (middle == null) {
+                middle = new Node<>(other.getKey(), value, INode.RED, null, nil, nil);
+            } else {
+                middle.setValue(value);
+            }
+            return RedBlackTree.this.join(left, middle, right);
+        }
+    }
+
+    /**
+     * return the whole tree as a subtree, leaving the tree itself in place.
+     */
+    private Subtree<T, V> subtree() {
+        int height = 0;
+        for (INode<T, V> current = root; current != nil; current = current.getLeftChild()) {
+            if (current.getColor() == INode.BLACK) {
+                height++;
+            }
+        }
+        return new Subtree<>(root, height);
+    }
+
+    /**
+     * Takes the nodes out of this tree, leaving it empty.
+     */
+    private Subtree<T, V> detach() {
+        Subtree<T, V> whole = subtree();
+        clear();
+        return whole;
+    }
+
+    /**
+     * Makes the given subtree the contents of this tree.
+     */
+    private void adopt(Subtree<T, V> subtree) {
+        root = subtree.root;
+        first = root;
+        last = root;
+        if (root == nil) {
+            return;
+        }
+        root.setParent(null);
+        root.setColor(INode.BLACK);
+        while (first.getLeftChild() != nil) {
+            first = first.getLeftChild();
+        }
+        while (last.getRightChild() != nil) {
+            last = last.getRightChild();
+        }
+    }
+
+    private Subtree<T, V> copy(INode<T, V> node, int height) {
+        if (node == nil) {
+            return new Subtree<>(nil, 0);
+        }
+        int childHeight = height - (node.getColor() == INode.BLACK ? 1 : 0);
+        INode<T, V> copy = new Node<>(node.getKey(), node.getValue(), node.getColor(), null, nil, nil);
+        attach(copy, copy(node.getLeftChild(), childHeight).root, copy(node.getRightChild(), childHeight).root);
+        return new Subtree<>(copy, height);
+    }
+
+    /**
+     * Splits a detached subtree into the keys below the given key, the node holding the key, and
+     * the keys above it, joining the pieces cut off on the way down back together on the way up.
+     */
+    private Split<T, V> split(Subtree<T, V> subtree, T key) {
+        INode<T, V> node = subtree.root;
+        if (node == nil) {
+            return new Split<>(subtree, null, subtree);
+        }
+        int height = subtree.height - (node.getColor() == INode.BLACK ? 1 : 0);
+        Subtree<T, V> left = new Subtree<>(node.getLeftChild(), height);
+        Subtree<T, V> right = new Subtree<>(node.getRightChild(), height);
+        attach(node, nil, nil);
+        int comparison = compare(key, node.getKey());
+        if (comparison == 0) {
+            return new Split<>(left, node, right);
+        }
+        if (comparison < 0) {
+            Split<T, V> split = split(left, key);
+            return new Split<>(split.less, split.found, join(split.greater, node, right));
+        }
+        Split<T, V> split = split(right, key);
+        return new Split<>(join(left, node, split.less), split.found, split.greater);
+    }
+
+    /**
+     * Joins two subtrees whose keys are all less than, and all greater than, the key of middle.
+     * middle is hung where the taller subtree's spine reaches the shorter one's height, and
+     * the red violations this may cause are rotated away on the way back up.
+     */
+    private Subtree<T, V> join(Subtree<T, V> left, INode<T, V> middle, Subtree<T, V> right) {
+        left = blacken(left);
+        right = blacken(right);
+        INode<T, V> joined;
+        int height;
+        if (left.height > right.height) {
+            joined = joinRight(left.root, left.height, middle, right);
+            height = left.height;
+        } else if (left.height < right.height) {
+            joined = joinLeft(left, middle, right.root, right.height);
+            height = right.height;
+        } else {
+            middle.setColor(INode.BLACK);
+            attach(middle, left.root, right.root);
+            return new Subtree<>(middle, left.height + 1);
+        }
+        if (joined.getColor() == INode.RED) {
+            joined.setColor(INode.BLACK);
+            height++;
+        }
+        return new Subtree<>(joined, height);
+    }
+
+    private INode<T, V> joinRight(INode<T, V> node, int height, INode<T, V> middle, Subtree<T, V> right) {
+        boolean black = node.getColor() == INode.BLACK;
+        if (black && height == right.height) {
+            middle.setColor(INode.RED);
+            attach(middle, node, right.root);
+            return middle;
+        }
+        INode<T, V> child = joinRight(node.getRightChild(), height - (black ? 1 : 0), middle, right);
+        attach(node, node.getLeftChild(), child);
+        if (black && child.getColor() == INode.RED && child.getRightChild().getColor() == INode.RED) {
+            child.getRightChild().setColor(INode.BLACK);
+            attach(node, node.getLeftChild(), child.getLeftChild());
+            attach(child, node, child.getRightChild());
+            return child;
+        }
+        return node;
+    }
+
+    private INode<T, V> joinLeft(Subtree<T, V> left, INode<T, V> middle, INode<T, V> node, int height) {
+        boolean black = node.getColor() == INode.BLACK;
+        if (black && height == left.height) {
+            middle.setColor(INode.RED);
+            attach(middle, left.root, node);
+            return middle;
+        }
+        INode<T, V> child = joinLeft(left, middle, node.getLeftChild(), height - (black ? 1 : 0));
+        attach(node, child, node.getRightChild());
+        if (black && child.getColor() == INode.RED && child.getLeftChild().getColor() == INode.RED) {
+            child.getLeftChild().setColor(INode.BLACK);
+            attach(node, child.getRightChild(), node.getRightChild());
+            attach(child, child.getLeftChild(), node);
+            return child;
+        }
+        return node;
+    }
+
+    /**
+     * Joins two subtrees whose keys are all less than, and all greater than, each other,
+     * using the largest node of the left one as the middle.
+     */
+    private Subtree<T, V> join(Subtree<T, V> left, Subtree<T, V> right) {
+        if (left.root == nil) {
+            return right;
+        }
+        if (right.root == nil) {
+            return left;
+        }
+        INode<T, V>[] largest = newNodeHolder();
+        Subtree<T, V> rest = removeLargest(left, largest);
+        return join(rest, largest[0], right);
+    }
+
+    @SuppressWarnings("unchecked")
+    private INode<T, V>[] newNodeHolder() {
+        return (INode<T, V>[]) new INode<?, ?>[1];
+    }
+
+    private Subtree<T, V> removeLargest(Subtree<T, V> subtree, INode<T, V>[] largest) {
+        INode<T, V> node = subtree.root;
+        int height = subtree.height - (node.getColor() == INode.BLACK ? 1 : 0);
+        Subtree<T, V> left = new Subtree<>(node.getLeftChild(), height);
+        if (node.getRightChild() == nil) {
+            attach(node, nil, nil);
+            largest[0] = node;
+            return left;
+        }
+        Subtree<T, V> rest = removeLargest(new Subtree<>(node.getRightChild(), height), largest);
+        attach(node, nil, nil);
+        return join(left, node, rest);
+    }
+
+    private Subtree<T, V> blacken(Subtree<T, V> subtree) {
+        if (subtree.root == nil || subtree.root.getColor() == INode.BLACK) {
+            return subtree;
+        }
+        subtree.root.setColor(INode.BLACK);
+        return new Subtree<>(subtree.root, subtree.height + 1);
+    }
+
+    /**
+     * Hangs the given children under node and recomputes its subtree size.
+     */
+    private void attach(INode<T, V> node, INode<T, V> left, INode<T, V> right) {
+        node.setLeftChild(left);
+        node.setRightChild(right);
+        if (left != nil) {
+            left.setParent(node);
+        }
+        if (right != nil) {
+            right.setParent(node);
+        }
+        setSize(node, size(left) + size(right) + 1);
     }
 
     private INode<T, V> getSuccessor(INode<T, V> node) {
         node = node.getRightChild();
-        while (!node.getLeftChild().isNull()) {
+        while (node.getLeftChild() != nil) {
             node = node.getLeftChild();
         }
         return node;
     }
 
+    private INode<T, V> getPredecessor(INode<T, V> node) {
+        node = node.getLeftChild();
+        while (node.getRightChild() != nil) {
+            node = node.getRightChild();
+        }
+        return node;
+    }
+
     private void reColor(INode<T, V> current) {
         while (current != root) {
             if (current.getParent().getColor() == INode.RED) {
@@ -247,7 +1080,8 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
     }
 
     private void rightRotate(INode<T, V> current) {
-        INode<T, V> temp = current.getLeftChild().getRightChild();
+        INode<T, V> pivot = current.getLeftChild();
+        INode<T, V> temp = pivot.getRightChild();
         if (current.getParent() == null) {
             root = current.getLeftChild();
         } else {
@@ -257,15 +1091,20 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
                 current.getParent().setRightChild(current.getLeftChild());
             }
         }
-        current.getLeftChild().setParent(current.getParent());
-        temp.getParent().setRightChild(current);
-        current.setParent(temp.getParent());
+        pivot.setParent(current.getParent());
+        pivot.setRightChild(current);
+        current.setParent(pivot);
         current.setLeftChild(temp);
-        temp.setParent(current);
+        if (temp != nil) {
+            temp.setParent(current);
+        }
+        setSize(pivot, size(current));
+        setSize(current, size(temp) + size(current.getRightChild()) + 1);
     }
 
     private void leftRotate(INode<T, V> current) {
-        INode<T, V> temp = current.getRightChild().getLeftChild();
+        INode<T, V> pivot = current.getRightChild();
+        INode<T, V> temp = pivot.getLeftChild();
         if (current.getParent() == null) {
             root = current.getRightChild();
         } else {
@@ -275,37 +1114,43 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
                 current.getParent().setRightChild(current.getRightChild());
             }
         }
-        current.getRightChild().setParent(current.getParent());
-        temp.getParent().setLeftChild(current);
-        current.setParent(temp.getParent());
+        pivot.setParent(current.getParent());
+        pivot.setLeftChild(current);
+        current.setParent(pivot);
         current.setRightChild(temp);
-        temp.setParent(current);
+        if (temp != nil) {
+            temp.setParent(current);
+        }
+        setSize(pivot, size(current));
+        setSize(current, size(current.getLeftChild()) + size(temp) + 1);
     }
 
     private INode<T, V> getNodeWithKey(T key) {
         INode<T, V> current = root;
-        while (!current.isNull()) {
-            if (current.getKey().compareTo(key) == 0) {
-                return current;
-            } else if (current.getKey().compareTo(key) < 0) {
+        while (current != nil) {
+            int comparison = compare(key, current.getKey());
+            if (comparison < 0) {
+                current = current.getLeftChild();
+            } else if (comparison > 0) {
                 current = current.getRightChild();
             } else {
-                current = current.getLeftChild();
+                return current;
             }
         }
         return null;
     }
 
-    private void fixDoubleBlack(INode<T, V> doubleBlack) {
+    private void fixDoubleBlack(INode<T, V> doubleBlack, INode<T, V> parent) {
         INode<T, V> sibling, redChild;
         while (doubleBlack != root) {
-            if (doubleBlack == doubleBlack.getParent().getLeftChild()) {
-                sibling = doubleBlack.getParent().getRightChild();
+            if (doubleBlack == parent.getLeftChild()) {
+                sibling = parent.getRightChild();
             } else {
-                sibling = doubleBlack.getParent().getLeftChild();
+                sibling = parent.getLeftChild();
             }
-            if (sibling.isNull()) {
-                doubleBlack = doubleBlack.getParent();
+            if (sibling == nil) {
+                doubleBlack = parent;
+                parent = parent.getParent();
                 continue;
             }
             if (sibling.getColor() == INode.BLACK) {
@@ -315,36 +1160,37 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
                         if (redChild == redChild.getParent().getLeftChild()) {
                             //left  left
                             redChild.setColor(sibling.getColor());
-                            sibling.setColor(doubleBlack.getParent().getColor());
+                            sibling.setColor(parent.getColor());
                         } else {
                             //left right
-                            redChild.setColor(doubleBlack.getParent().getColor());
+                            redChild.setColor(parent.getColor());
                             leftRotate(sibling);
                         }
-                        rightRotate(doubleBlack.getParent());
+                        rightRotate(parent);
                     } else {
                         redChild = sibling.getRightChild().getColor() == INode.RED ? sibling.getRightChild() : sibling.getLeftChild();
                         if (redChild == redChild.getParent().getLeftChild()) {
                             //right left
-                            redChild.setColor(doubleBlack.getParent().getColor());
+                            redChild.setColor(parent.getColor());
                             rightRotate(sibling);
 
                         } else {
                             //right right
                             redChild.setColor(sibling.getColor());
-                            sibling.setColor(doubleBlack.getParent().getColor());
+                            sibling.setColor(parent.getColor());
                         }
-                        leftRotate(doubleBlack.getParent());
+                        leftRotate(parent);
                     }
-                    doubleBlack.getParent().setColor(INode.BLACK);
+                    parent.setColor(INode.BLACK);
                     break;
                 } else {
                     //b
                     sibling.setColor(INode.RED);
-                    if (doubleBlack.getParent().getColor() == INode.BLACK) {
-                        doubleBlack = doubleBlack.getParent();
+                    if (parent.getColor() == INode.BLACK) {
+                        doubleBlack = parent;
+                        parent = parent.getParent();
                     } else {
-                        doubleBlack.getParent().setColor(INode.BLACK);
+                        parent.setColor(INode.BLACK);
                         break;
                     }
                 }
@@ -353,9 +1199,9 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
                 sibling.setColor(INode.BLACK);
                 sibling.getParent().setColor(INode.RED);
                 if (sibling == sibling.getParent().getRightChild()) {
-                    leftRotate(doubleBlack.getParent());
+                    leftRotate(parent);
                 } else {
-                    rightRotate(doubleBlack.getParent());
+                    rightRotate(parent);
                 }
             }
         }
@@ -400,15 +1246,15 @@ public class RedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T
         toBeDeleted.setRightChild(null);
     }
 
-    private void leafDelete(INode<T, V> toBeDeleted, INode<T, V> replacement) {
+    private void leafDelete(INode<T, V> toBeDeleted) {
         if (toBeDeleted != root) {
             if (toBeDeleted == toBeDeleted.getParent().getLeftChild()) {
-                toBeDeleted.getParent().setLeftChild(replacement);
+                toBeDeleted.getParent().setLeftChild(nil);
             } else {
-                toBeDeleted.getParent().setRightChild(replacement);
+                toBeDeleted.getParent().setRightChild(nil);
             }
         } else {
-            root = replacement;
+            root = nil;
         }
         toBeDeleted.setParent(null);
         toBeDeleted.setLeftChild(null);
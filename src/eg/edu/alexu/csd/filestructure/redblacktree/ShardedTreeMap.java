@@ -0,0 +1,706 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+
+/**
+ * Thread safe map that splits the key space into contiguous ranges, each held by its own
+ * {@link ConcurrentTreeMap}, so operations on different ranges never share a lock.
+ * <p>
+ * Point operations go to one shard. The shard table is read under an optimistic stamp of the
+ * routing lock, which only splits and merges ever write lock, so routing itself costs no shared
+ * write. An operation whose stamp fails validation may have hit a shard that was being copied
+ * and is redone under the routing read lock; puts and removes are safe to redo.
+ * Operations that span shards see each shard at a slightly different moment, like the views of
+ * java's concurrent maps.
+ * <p>
+ * A shard that grows past maxShardSize is split at its median key, and two neighbours that
+ * together hold less than a quarter of it are merged. Shard sizes are checked on a random
+ * sample of writes.
+ */
+class ShardedTreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
+
+    private static final int DEFAULT_MAX_SHARD_SIZE = 1 << 16;
+    private static final int CHECK_EVERY = 64;
+
+    /**
+     * Immutable routing table. Shard i holds the keys from bounds[i] up to, but excluding, bounds[i + 1].
+     * bounds[0] is unused since the first shard has no lower bound.
+     */
+    private static final class Shards<T extends Comparable<T>, V> {
+        final Object[] bounds;
+        final ConcurrentTreeMap<T, V>[] maps;
+
+        Shards(Object[] bounds, ConcurrentTreeMap<T, V>[] maps) {
+            this.bounds = bounds;
+            this.maps = maps;
+        }
+    }
+
+    private final Comparator<? super T> comparator;
+    private final int maxShardSize;
+    private final StampedLock routing = new StampedLock();
+    private volatile Shards<T, V> shards;
+
+    ShardedTreeMap() {
+        this(Collections.<T>emptyList(), null, DEFAULT_MAX_SHARD_SIZE);
+    }
+
+    ShardedTreeMap(Comparator<? super T> comparator) {
+        this(Collections.<T>emptyList(), comparator, DEFAULT_MAX_SHARD_SIZE);
+    }
+
+    /**
+     * Creates a map whose shards start at the given strictly ascending keys, plus one shard for
+     * everything below the first of them.
+     */
+    ShardedTreeMap(List<? extends T> boundaries, Comparator<? super T> comparator, int maxShardSize) {
+        if (boundaries == null) {
+            throw new RuntimeErrorException(new Error("Can't shard on null boundaries"));
+        }
+        if (maxShardSize < 2) {
+            throw new RuntimeErrorException(new Error("Can't keep shards smaller than two entries"));
+        }
+        this.comparator = comparator;
+        this.maxShardSize = maxShardSize;
+        Object[] bounds = new Object[boundaries.size() + 1];
+        ConcurrentTreeMap<T, V>[] maps = newShards(bounds.length);
+        maps[0] = new ConcurrentTreeMap<T, V>(comparator);
+        for (int i = 1; i < bounds.length; i++) {
+            T bound = boundaries.get(i - 1);
+            if (bound == null || (i > 1 && compare(bound(bounds, i - 1), bound) >= 0)) {
+                throw new RuntimeErrorException(new Error("Shard boundaries are not in strictly ascending key order"));
+            }
+            bounds[i] = bound;
+            maps[i] = new ConcurrentTreeMap<T, V>(comparator);
+        }
+        shards = new Shards<>(bounds, maps);
+    }
+
+    /**
+     * Creates a map with up to the given number of shards whose boundaries are the quantiles of
+     * a sample of the keys the map is expected to hold.
+     */
+    static <T extends Comparable<T>, V> ShardedTreeMap<T, V> fromSample(Collection<? extends T> sample, int shardCount,
+                                                                      Comparator<? super T> comparator) {
+        if (sample == null) {
+            throw new RuntimeErrorException(new Error("Can't shard on a null sample"));
+        }
+        List<T> sorted = new ArrayList<>(sample);
+        Collections.sort(sorted, comparator);
+        List<T> boundaries = new ArrayList<>();
+        for (int i = 1; i < shardCount && !sorted.isEmpty(); i++) {
+            T bound = sorted.get((int) ((long) i * sorted.size() / shardCount));
+            if (boundaries.isEmpty() || compare(comparator, boundaries.get(boundaries.size() - 1), bound) < 0) {
+                boundaries.add(bound);
+            }
+        }
+        return new ShardedTreeMap<T, V>(boundaries, comparator, DEFAULT_MAX_SHARD_SIZE);
+    }
+
+    /**
+     * Number of shards the key space is currently split into.
+     */
+    int shardCount() {
+        return shards.maps.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>, V> ConcurrentTreeMap<T, V>[] newShards(int length) {
+        return (ConcurrentTreeMap<T, V>[]) new ConcurrentTreeMap<?, ?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T bound(Object[] bounds, int index) {
+        return (T) bounds[index];
+    }
+
+    private static <T extends Comparable<T>> int compare(Comparator<? super T> comparator, T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    private int compare(T first, T second) {
+        return compare(comparator, first, second);
+    }
+
+    /**
+     * Index of the shard whose range holds key.
+     */
+    private int indexFor(Shards<T, V> table, T key) {
+        int low = 0;
+        int high = table.bounds.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (compare(ShardedTreeMap.<T>bound(table.bounds, middle), key) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    public Map.Entry<T, V> ceilingEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a ceil for null key"));
+        }
+        return neighbour(key, true, true);
+    }
+
+    /**
+     * Nearest entry above or below key, read optimistically when possible. A shard may hold no
+     * such entry, so the search moves on to the first or last entry of the next shards.
+     */
+    private Map.Entry<T, V> neighbour(T key, boolean above, boolean inclusive) {
+        long stamp = routing.tryOptimisticRead();
+        if (stamp != 0) {
+            Map.Entry<T, V> entry = neighbour(shards, key, above, inclusive);
+            if (routing.validate(stamp)) {
+                return entry;
+            }
+        }
+        stamp = routing.readLock();
+        try {
+            return neighbour(shards, key, above, inclusive);
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    private Map.Entry<T, V> neighbour(Shards<T, V> table, T key, boolean above, boolean inclusive) {
+        int index = indexFor(table, key);
+        ConcurrentTreeMap<T, V> map = table.maps[index];
+        Map.Entry<T, V> entry;
+        if (above) {
+            entry = inclusive ? map.ceilingEntry(key) : map.higherEntry(key);
+            while (entry == null && ++index < table.maps.length) {
+                entry = table.maps[index].firstEntry();
+            }
+        } else {
+            entry = inclusive ? map.floorEntry(key) : map.lowerEntry(key);
+            while (entry == null && --index >= 0) {
+                entry = table.maps[index].lastEntry();
+            }
+        }
+        return entry;
+    }
+
+    public T ceilingKey(T key) {
+        Map.Entry<T, V> ceilingEntry = ceilingEntry(key);
+        return ceilingEntry == null ? null : ceilingEntry.getKey();
+    }
+
+    public void clear() {
+        long stamp = routing.writeLock();
+        try {
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                map.clear();
+            }
+        } finally {
+            routing.unlockWrite(stamp);
+        }
+    }
+
+    public boolean containsKey(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't check for a null key"));
+        }
+        long stamp = routing.tryOptimisticRead();
+        if (stamp != 0) {
+            Shards<T, V> table = shards;
+            boolean found = table.maps[indexFor(table, key)].containsKey(key);
+            if (routing.validate(stamp)) {
+                return found;
+            }
+        }
+        stamp = routing.readLock();
+        try {
+            return shards.maps[indexFor(shards, key)].containsKey(key);
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsValue(V value) {
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't find a null value!"));
+        }
+        for (ConcurrentTreeMap<T, V> map : lockedShards()) {
+            if (map.containsValue(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The current table's shards, read under the routing read lock so no split is half done.
+     */
+    private ConcurrentTreeMap<T, V>[] lockedShards() {
+        long stamp = routing.readLock();
+        try {
+            return shards.maps;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public Set<Map.Entry<T, V>> entrySet() {
+        long stamp = routing.readLock();
+        try {
+            Set<Map.Entry<T, V>> result = new LinkedHashSet<>();
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                result.addAll(map.snapshot());
+            }
+            return result;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> firstEntry() {
+        long stamp = routing.readLock();
+        try {
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                Map.Entry<T, V> first = map.firstEntry();
+                if (first != null) {
+                    return first;
+                }
+            }
+            return null;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public T firstKey() {
+        Map.Entry<T, V> firstEntry = firstEntry();
+        return firstEntry == null ? null : firstEntry.getKey();
+    }
+
+    public Map.Entry<T, V> floorEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a floor for null key"));
+        }
+        return neighbour(key, false, true);
+    }
+
+    public T floorKey(T key) {
+        Map.Entry<T, V> floorEntry = floorEntry(key);
+        return floorEntry == null ? null : floorEntry.getKey();
+    }
+
+    public V get(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null key!"));
+        }
+        long stamp = routing.tryOptimisticRead();
+        if (stamp != 0) {
+            Shards<T, V> table = shards;
+            V value = table.maps[indexFor(table, key)].get(key);
+            if (routing.validate(stamp)) {
+                return value;
+            }
+        }
+        stamp = routing.readLock();
+        try {
+            return shards.maps[indexFor(shards, key)].get(key);
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey) {
+        return headMap(toKey, false);
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey, boolean inclusive) {
+        if (toKey == null) {
+            throw new RuntimeErrorException(new Error("Can't get a head map for a null key"));
+        }
+        long stamp = routing.readLock();
+        try {
+            int index = indexFor(shards, toKey);
+            ArrayList<Map.Entry<T, V>> list = new ArrayList<>();
+            for (int i = 0; i < index; i++) {
+                list.addAll(shards.maps[i].snapshot());
+            }
+            list.addAll(shards.maps[index].headMap(toKey, inclusive));
+            return list;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> higherEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a higher entry for null key"));
+        }
+        return neighbour(key, true, false);
+    }
+
+    public T higherKey(T key) {
+        Map.Entry<T, V> higherEntry = higherEntry(key);
+        return higherEntry == null ? null : higherEntry.getKey();
+    }
+
+    public Set<T> keySet() {
+        long stamp = routing.readLock();
+        try {
+            Set<T> result = new LinkedHashSet<>();
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                result.addAll(map.keySet());
+            }
+            return result;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> lastEntry() {
+        long stamp = routing.readLock();
+        try {
+            for (int i = shards.maps.length - 1; i >= 0; i--) {
+                Map.Entry<T, V> last = shards.maps[i].lastEntry();
+                if (last != null) {
+                    return last;
+                }
+            }
+            return null;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public T lastKey() {
+        Map.Entry<T, V> lastEntry = lastEntry();
+        return lastEntry == null ? null : lastEntry.getKey();
+    }
+
+    public Map.Entry<T, V> lowerEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a lower entry for null key"));
+        }
+        return neighbour(key, false, false);
+    }
+
+    public T lowerKey(T key) {
+        Map.Entry<T, V> lowerEntry = lowerEntry(key);
+        return lowerEntry == null ? null : lowerEntry.getKey();
+    }
+
+    /**
+     * Polls run under the routing read lock, since redoing one after a split would take a second entry.
+     */
+    public Map.Entry<T, V> pollFirstEntry() {
+        long stamp = routing.readLock();
+        try {
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                Map.Entry<T, V> first = map.pollFirstEntry();
+                if (first != null) {
+                    return first;
+                }
+            }
+            return null;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> pollLastEntry() {
+        long stamp = routing.readLock();
+        try {
+            for (int i = shards.maps.length - 1; i >= 0; i--) {
+                Map.Entry<T, V> last = shards.maps[i].pollLastEntry();
+                if (last != null) {
+                    return last;
+                }
+            }
+            return null;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public void put(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        long stamp = routing.tryOptimisticRead();
+        ConcurrentTreeMap<T, V> map = null;
+        if (stamp != 0) {
+            Shards<T, V> table = shards;
+            map = table.maps[indexFor(table, key)];
+            map.put(key, value);
+        }
+        if (stamp == 0 || !routing.validate(stamp)) {
+            stamp = routing.readLock();
+            try {
+                map = shards.maps[indexFor(shards, key)];
+                map.put(key, value);
+            } finally {
+                routing.unlockRead(stamp);
+            }
+        }
+        if (ThreadLocalRandom.current().nextInt(CHECK_EVERY) == 0 && map.size() > maxShardSize) {
+            split(map);
+        }
+    }
+
+    /**
+     * Runs under the routing read lock rather than optimistically, since a retry after a
+     * split would put twice and could report its own value as the previous one.
+     */
+    public V putIfAbsent(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        ConcurrentTreeMap<T, V> map;
+        V previous;
+        long stamp = routing.readLock();
+        try {
+            map = shards.maps[indexFor(shards, key)];
+            previous = map.putIfAbsent(key, value);
+        } finally {
+            routing.unlockRead(stamp);
+        }
+        if (previous == null && ThreadLocalRandom.current().nextInt(CHECK_EVERY) == 0 && map.size() > maxShardSize) {
+            split(map);
+        }
+        return previous;
+    }
+
+    /**
+     * Runs under the routing read lock so function is applied exactly once; it must not use this map.
+     */
+    public V compute(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't compute a value for a null key"));
+        }
+        ConcurrentTreeMap<T, V> map;
+        V value;
+        long stamp = routing.readLock();
+        try {
+            map = shards.maps[indexFor(shards, key)];
+            value = map.compute(key, function);
+        } finally {
+            routing.unlockRead(stamp);
+        }
+        if (ThreadLocalRandom.current().nextInt(CHECK_EVERY) == 0) {
+            if (map.size() > maxShardSize) {
+                split(map);
+            } else if (map.size() < maxShardSize / 8) {
+                merge(map);
+            }
+        }
+        return value;
+    }
+
+    public void putAll(Map<T, V> map) {
+        if (map == null) {
+            throw new RuntimeErrorException(new Error("Can't add a keys-values from a null map"));
+        }
+        for (Map.Entry<T, V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * A remove that raced a split may have hit the shard being copied, in which case it is
+     * redone on the new shard; the key was present if either attempt found it.
+     */
+    public boolean remove(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't delete a null key!"));
+        }
+        long stamp = routing.tryOptimisticRead();
+        ConcurrentTreeMap<T, V> map = null;
+        boolean removed = false;
+        if (stamp != 0) {
+            Shards<T, V> table = shards;
+            map = table.maps[indexFor(table, key)];
+            removed = map.remove(key);
+        }
+        if (stamp == 0 || !routing.validate(stamp)) {
+            stamp = routing.readLock();
+            try {
+                map = shards.maps[indexFor(shards, key)];
+                removed |= map.remove(key);
+            } finally {
+                routing.unlockRead(stamp);
+            }
+        }
+        if (removed && ThreadLocalRandom.current().nextInt(CHECK_EVERY) == 0 && map.size() < maxShardSize / 8) {
+            merge(map);
+        }
+        return removed;
+    }
+
+    public int size() {
+        long stamp = routing.readLock();
+        try {
+            int size = 0;
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                size += map.size();
+            }
+            return size;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public int rank(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't rank a null key"));
+        }
+        long stamp = routing.readLock();
+        try {
+            int index = indexFor(shards, key);
+            int rank = shards.maps[index].rank(key);
+            for (int i = 0; i < index; i++) {
+                rank += shards.maps[i].size();
+            }
+            return rank;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public Map.Entry<T, V> select(int index) {
+        if (index < 0) {
+            return null;
+        }
+        long stamp = routing.readLock();
+        try {
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                int size = map.size();
+                if (index < size) {
+                    return map.select(index);
+                }
+                index -= size;
+            }
+            return null;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public int countInRange(T lo, T hi) {
+        if (lo == null || hi == null) {
+            throw new RuntimeErrorException(new Error("Can't count a range with a null bound"));
+        }
+        if (compare(lo, hi) > 0) {
+            return 0;
+        }
+        long stamp = routing.readLock();
+        try {
+            int first = indexFor(shards, lo);
+            int last = indexFor(shards, hi);
+            if (first == last) {
+                return shards.maps[first].countInRange(lo, hi);
+            }
+            int count = shards.maps[first].size() - shards.maps[first].rank(lo);
+            for (int i = first + 1; i < last; i++) {
+                count += shards.maps[i].size();
+            }
+            return count + shards.maps[last].rank(hi) + (shards.maps[last].containsKey(hi) ? 1 : 0);
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    public Collection<V> values() {
+        long stamp = routing.readLock();
+        try {
+            ArrayList<V> list = new ArrayList<>();
+            for (ConcurrentTreeMap<T, V> map : shards.maps) {
+                list.addAll(map.values());
+            }
+            return list;
+        } finally {
+            routing.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Replaces the shard by two shards holding the halves of its entries either side of its median key.
+     */
+    private void split(ConcurrentTreeMap<T, V> map) {
+        long stamp = routing.writeLock();
+        try {
+            Shards<T, V> table = shards;
+            int index = Arrays.asList(table.maps).indexOf(map);
+            if (index < 0 || map.size() <= maxShardSize) {
+                return;
+            }
+            List<Map.Entry<T, V>> entries = map.snapshot();
+            int half = entries.size() / 2;
+            Object[] bounds = new Object[table.bounds.length + 1];
+            ConcurrentTreeMap<T, V>[] maps = newShards(bounds.length);
+            System.arraycopy(table.bounds, 0, bounds, 0, index + 1);
+            System.arraycopy(table.bounds, index + 1, bounds, index + 2, table.bounds.length - index - 1);
+            System.arraycopy(table.maps, 0, maps, 0, index);
+            System.arraycopy(table.maps, index + 1, maps, index + 2, table.maps.length - index - 1);
+            bounds[index + 1] = entries.get(half).getKey();
+            maps[index] = shardOf(entries.subList(0, half));
+            maps[index + 1] = shardOf(entries.subList(half, entries.size()));
+            shards = new Shards<>(bounds, maps);
+        } finally {
+            routing.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the shard and its smaller neighbour by one shard if together they are small enough.
+     */
+    private void merge(ConcurrentTreeMap<T, V> map) {
+        long stamp = routing.writeLock();
+        try {
+            Shards<T, V> table = shards;
+            int index = Arrays.asList(table.maps).indexOf(map);
+            if (index < 0 || table.maps.length == 1) {
+                return;
+            }
+            if (index == table.maps.length - 1
+                    || (index > 0 && table.maps[index - 1].size() < table.maps[index + 1].size())) {
+                index--;
+            }
+            if (table.maps[index].size() + table.maps[index + 1].size() >= maxShardSize / 4) {
+                return;
+            }
+            List<Map.Entry<T, V>> entries = table.maps[index].snapshot();
+            entries.addAll(table.maps[index + 1].snapshot());
+            Object[] bounds = new Object[table.bounds.length - 1];
+            ConcurrentTreeMap<T, V>[] maps = newShards(bounds.length);
+            System.arraycopy(table.bounds, 0, bounds, 0, index + 1);
+            System.arraycopy(table.bounds, index + 2, bounds, index + 1, table.bounds.length - index - 2);
+            System.arraycopy(table.maps, 0, maps, 0, index);
+            System.arraycopy(table.maps, index + 2, maps, index + 1, table.maps.length - index - 2);
+            maps[index] = shardOf(entries);
+            shards = new Shards<>(bounds, maps);
+        } finally {
+            routing.unlockWrite(stamp);
+        }
+    }
+
+    private ConcurrentTreeMap<T, V> shardOf(List<Map.Entry<T, V>> sortedEntries) {
+        return new ConcurrentTreeMap<T, V>(TreeMap.fromSorted(sortedEntries.iterator(), comparator), comparator);
+    }
+}
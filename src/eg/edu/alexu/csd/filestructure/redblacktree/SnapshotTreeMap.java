@@ -0,0 +1,309 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read only {@link ITreeMap} over one version of a {@link PersistentRedBlackTree}. The version
+ * never changes, so reads need no locking; every mutator throws.
+ */
+class SnapshotTreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
+
+    private final PersistentNode<T, V> root;
+    private final Comparator<? super T> comparator;
+
+    SnapshotTreeMap(PersistentNode<T, V> root, Comparator<? super T> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    private static RuntimeErrorException readOnly() {
+        return new RuntimeErrorException(new Error("Can't modify a snapshot"));
+    }
+
+    private static <T extends Comparable<T>, V> Map.Entry<T, V> entry(PersistentNode<T, V> node) {
+        return node == null || node.isNull() ? null : new AbstractMap.SimpleImmutableEntry<>(node.key, node.value);
+    }
+
+    public Map.Entry<T, V> ceilingEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a ceil for null key"));
+        }
+        return entry(neighbour(key, true, true));
+    }
+
+    /**
+     * return the node with the nearest key above or below key, or null if there is none.
+     */
+    private PersistentNode<T, V> neighbour(T key, boolean above, boolean inclusive) {
+        PersistentNode<T, V> candidate = null;
+        PersistentNode<T, V> current = root;
+        while (!current.isNull()) {
+            int comparison = compare(key, current.key);
+            if (comparison == 0 && inclusive) {
+                return current;
+            }
+            if (comparison < 0 || (comparison == 0 && !above)) {
+                if (above) {
+                    candidate = current;
+                }
+                current = current.left;
+            } else {
+                if (!above) {
+                    candidate = current;
+                }
+                current = current.right;
+            }
+        }
+        return candidate;
+    }
+
+    public T ceilingKey(T key) {
+        Map.Entry<T, V> ceilingEntry = ceilingEntry(key);
+        return ceilingEntry == null ? null : ceilingEntry.getKey();
+    }
+
+    public void clear() {
+        throw readOnly();
+    }
+
+    public boolean containsKey(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't check for a null key"));
+        }
+        return !PersistentRedBlackTree.find(root, key, comparator).isNull();
+    }
+
+    public boolean containsValue(V value) {
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't find a null value!"));
+        }
+        return values().contains(value);
+    }
+
+    public Set<Map.Entry<T, V>> entrySet() {
+        Set<Map.Entry<T, V>> result = new LinkedHashSet<>();
+        for (PersistentNode<T, V> node : inOrder(root, null, false)) {
+            result.add(entry(node));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    public Map.Entry<T, V> firstEntry() {
+        return entry(first());
+    }
+
+    public T firstKey() {
+        PersistentNode<T, V> first = first();
+        return first.isNull() ? null : first.key;
+    }
+
+    private PersistentNode<T, V> first() {
+        PersistentNode<T, V> current = root;
+        while (!current.isNull() && !current.left.isNull()) {
+            current = current.left;
+        }
+        return current;
+    }
+
+    public Map.Entry<T, V> floorEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a floor for null key"));
+        }
+        return entry(neighbour(key, false, true));
+    }
+
+    public T floorKey(T key) {
+        Map.Entry<T, V> floorEntry = floorEntry(key);
+        return floorEntry == null ? null : floorEntry.getKey();
+    }
+
+    public V get(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null key!"));
+        }
+        return PersistentRedBlackTree.find(root, key, comparator).value;
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey) {
+        return headMap(toKey, false);
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey, boolean inclusive) {
+        if (toKey == null) {
+            throw new RuntimeErrorException(new Error("Can't get a head map for a null key"));
+        }
+        ArrayList<Map.Entry<T, V>> list = new ArrayList<>();
+        for (PersistentNode<T, V> node : inOrder(root, toKey, inclusive)) {
+            list.add(entry(node));
+        }
+        return list;
+    }
+
+    public Map.Entry<T, V> higherEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a higher entry for null key"));
+        }
+        return entry(neighbour(key, true, false));
+    }
+
+    public T higherKey(T key) {
+        Map.Entry<T, V> higherEntry = higherEntry(key);
+        return higherEntry == null ? null : higherEntry.getKey();
+    }
+
+    public Set<T> keySet() {
+        Set<T> result = new LinkedHashSet<>();
+        for (PersistentNode<T, V> node : inOrder(root, null, false)) {
+            result.add(node.key);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    public Map.Entry<T, V> lastEntry() {
+        return entry(last());
+    }
+
+    public T lastKey() {
+        PersistentNode<T, V> last = last();
+        return last.isNull() ? null : last.key;
+    }
+
+    public Map.Entry<T, V> lowerEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a lower entry for null key"));
+        }
+        return entry(neighbour(key, false, false));
+    }
+
+    public T lowerKey(T key) {
+        Map.Entry<T, V> lowerEntry = lowerEntry(key);
+        return lowerEntry == null ? null : lowerEntry.getKey();
+    }
+
+    private PersistentNode<T, V> last() {
+        PersistentNode<T, V> current = root;
+        while (!current.isNull() && !current.right.isNull()) {
+            current = current.right;
+        }
+        return current;
+    }
+
+    public Map.Entry<T, V> pollFirstEntry() {
+        throw readOnly();
+    }
+
+    public Map.Entry<T, V> pollLastEntry() {
+        throw readOnly();
+    }
+
+    public void put(T key, V value) {
+        throw readOnly();
+    }
+
+    public void putAll(Map<T, V> map) {
+        throw readOnly();
+    }
+
+    public boolean remove(T key) {
+        throw readOnly();
+    }
+
+    public int size() {
+        return root.size;
+    }
+
+    public int rank(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't rank a null key"));
+        }
+        int rank = 0;
+        PersistentNode<T, V> current = root;
+        while (!current.isNull()) {
+            if (compare(key, current.key) > 0) {
+                rank += current.left.size + 1;
+                current = current.right;
+            } else {
+                current = current.left;
+            }
+        }
+        return rank;
+    }
+
+    public Map.Entry<T, V> select(int index) {
+        if (index < 0 || index >= root.size) {
+            return null;
+        }
+        PersistentNode<T, V> current = root;
+        while (index != current.left.size) {
+            if (index < current.left.size) {
+                current = current.left;
+            } else {
+                index -= current.left.size + 1;
+                current = current.right;
+            }
+        }
+        return entry(current);
+    }
+
+    public int countInRange(T lo, T hi) {
+        if (lo == null || hi == null) {
+            throw new RuntimeErrorException(new Error("Can't count a range with a null bound"));
+        }
+        if (compare(lo, hi) > 0) {
+            return 0;
+        }
+        return rank(hi) + (containsKey(hi) ? 1 : 0) - rank(lo);
+    }
+
+    public List<V> applyBatch(List<Op<T, V>> ops) {
+        throw readOnly();
+    }
+
+    public Collection<V> values() {
+        ArrayList<V> list = new ArrayList<>();
+        for (PersistentNode<T, V> node : inOrder(root, null, false)) {
+            list.add(node.value);
+        }
+        return list;
+    }
+
+    /**
+     * Nodes in key order, stopping before toKey (or after it if inclusive) when it is not null.
+     * Nodes have no parent links, so the path back up is kept in an array as deep as the tree can be.
+     */
+    @SuppressWarnings("unchecked")
+    private ArrayList<PersistentNode<T, V>> inOrder(PersistentNode<T, V> node, T toKey, boolean inclusive) {
+        ArrayList<PersistentNode<T, V>> result = new ArrayList<>(root.size);
+        PersistentNode<T, V>[] path = (PersistentNode<T, V>[]) new PersistentNode<?, ?>[64];
+        int depth = 0;
+        while (!node.isNull() || depth > 0) {
+            while (!node.isNull()) {
+                path[depth++] = node;
+                node = node.left;
+            }
+            node = path[--depth];
+            if (toKey != null) {
+                int comparison = compare(node.key, toKey);
+                if (comparison > 0 || (comparison == 0 && !inclusive)) {
+                    break;
+                }
+            }
+            result.add(node);
+            node = node.right;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,355 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.Comparator;
+
+/**
+ * Red black tree whose nodes carry no parent reference. Insert and delete rebalance on
+ * the way down in a single pass: insert splits nodes with two red children before
+ * stepping past them, and delete pushes a red node down ahead of itself, so neither
+ * ever has to walk back up. The rotations only need the few nodes of the current window.
+ */
+class TopDownRedBlackTree<T extends Comparable<T>, V> implements IRedBlackTree<T, V> {
+
+    static final class TopDownNode<T extends Comparable<T>, V> implements INode<T, V> {
+        private T key;
+        private V value;
+        private boolean color;
+        private TopDownNode<T, V> leftChild;
+        private TopDownNode<T, V> rightChild;
+
+        TopDownNode(T key, V value, boolean color, TopDownNode<T, V> leftChild, TopDownNode<T, V> rightChild) {
+            this.key = key;
+            this.value = value;
+            this.color = color;
+            this.leftChild = leftChild;
+            this.rightChild = rightChild;
+        }
+
+        TopDownNode<T, V> child(boolean right) {
+            return right ? rightChild : leftChild;
+        }
+
+        void setChild(boolean right, TopDownNode<T, V> child) {
+            if (right) {
+                rightChild = child;
+            } else {
+                leftChild = child;
+            }
+        }
+
+        boolean isRed() {
+            return color == INode.RED;
+        }
+
+        /**
+         * Nodes don't know their parent, so this does nothing.
+         */
+        public void setParent(INode<T, V> parent) {
+        }
+
+        /**
+         * Nodes don't know their parent.
+         *
+         * @return null.
+         */
+        public INode<T, V> getParent() {
+            return null;
+        }
+
+        public void setLeftChild(INode<T, V> leftChild) {
+            this.leftChild = (TopDownNode<T, V>) leftChild;
+        }
+
+        public INode<T, V> getLeftChild() {
+            return leftChild;
+        }
+
+        public void setRightChild(INode<T, V> rightChild) {
+            this.rightChild = (TopDownNode<T, V>) rightChild;
+        }
+
+        public INode<T, V> getRightChild() {
+            return rightChild;
+        }
+
+        public T getKey() {
+            return key;
+        }
+
+        public void setKey(T key) {
+            this.key = key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public void setValue(V value) {
+            this.value = value;
+        }
+
+        public boolean getColor() {
+            return color;
+        }
+
+        public void setColor(boolean color) {
+            this.color = color;
+        }
+
+        public boolean isNull() {
+            return this == NIL;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final TopDownNode NIL = new TopDownNode<>(null, null, INode.BLACK, null, null);
+
+    private final TopDownNode<T, V> nil;
+    private final Comparator<? super T> comparator;
+    /**
+     * Fake parent of root so that rotations at the top need no special case. Root is its right child.
+     */
+    private final TopDownNode<T, V> head;
+    private TopDownNode<T, V> root;
+
+    TopDownRedBlackTree() {
+        this(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    TopDownRedBlackTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        nil = NIL;
+        head = new TopDownNode<>(null, null, INode.BLACK, nil, nil);
+        root = nil;
+    }
+
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    /**
+     * return the root of the given Red black tree.
+     *
+     * @return root.
+     */
+    public INode<T, V> getRoot() {
+        return root;
+    }
+
+    /**
+     * return whether the given tree isEmpty or not.
+     *
+     * @return boolean represent the state of the tree.
+     */
+    public boolean isEmpty() {
+        return root == nil;
+    }
+
+    /**
+     * Clear all keys in the given tree.
+     */
+    public void clear() {
+        root = nil;
+    }
+
+    /**
+     * return the value associated with the given key or null if no value is found.
+     *
+     * @param key to search.
+     * @return value associated with this key.
+     */
+    public V search(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null key!"));
+        }
+        return getNodeWithKey(key).value;
+    }
+
+    /**
+     * return true if the tree contains the given key and false otherwise.
+     *
+     * @param key to search.
+     * @return found key in tree or not.
+     */
+    public boolean contains(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't check for a null key"));
+        }
+        return getNodeWithKey(key) != nil;
+    }
+
+    /**
+     * Insert the given key in the tree while maintaining the red black tree properties.
+     * If the key is already present in the tree, update its value.
+     *
+     * @param key   to be inserted
+     * @param value the associated value with the given key
+     * @return the value the key had before, or null if a new node was created.
+     */
+    public V insert(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        if (root == nil) {
+            root = new TopDownNode<>(key, value, INode.BLACK, nil, nil);
+            return null;
+        }
+        V previous = null;
+        boolean created = false;
+        TopDownNode<T, V> greatGrandParent = head;
+        TopDownNode<T, V> grandParent = null;
+        TopDownNode<T, V> parent = null;
+        TopDownNode<T, V> current = root;
+        boolean dir = false;
+        boolean last = false;
+        head.rightChild = root;
+        while (true) {
+            if (current == nil) {
+                current = new TopDownNode<>(key, value, INode.RED, nil, nil);
+                parent.setChild(dir, current);
+                created = true;
+            } else if (current.leftChild.isRed() && current.rightChild.isRed()) {
+                current.color = INode.RED;
+                current.leftChild.color = INode.BLACK;
+                current.rightChild.color = INode.BLACK;
+            }
+            if (current.isRed() && parent != null && parent.isRed()) {
+                boolean grandParentIsRight = greatGrandParent.rightChild == grandParent;
+                if (current == parent.child(last)) {
+                    greatGrandParent.setChild(grandParentIsRight, singleRotate(grandParent, !last));
+                } else {
+                    greatGrandParent.setChild(grandParentIsRight, doubleRotate(grandParent, !last));
+                }
+            }
+            int comparison = compare(key, current.key);
+            if (comparison == 0) {
+                if (!created) {
+                    previous = current.value;
+                    current.value = value;
+                }
+                break;
+            }
+            last = dir;
+            dir = comparison > 0;
+            if (grandParent != null) {
+                greatGrandParent = grandParent;
+            }
+            grandParent = parent;
+            parent = current;
+            current = current.child(dir);
+        }
+        root = head.rightChild;
+        root.color = INode.BLACK;
+        head.rightChild = nil;
+        return previous;
+    }
+
+    /**
+     * Delete the node associated with the given key.
+     * Return true in case of success and false otherwise.
+     *
+     * @param key to be deleted.
+     * @return true in case of success and false otherwise.
+     */
+    public boolean delete(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't delete a null key!"));
+        }
+        if (root == nil) {
+            return false;
+        }
+        TopDownNode<T, V> grandParent = null;
+        TopDownNode<T, V> parent = null;
+        TopDownNode<T, V> current = head;
+        TopDownNode<T, V> found = null;
+        boolean dir = true;
+        head.rightChild = root;
+        while (current.child(dir) != nil) {
+            boolean last = dir;
+            grandParent = parent;
+            parent = current;
+            current = current.child(dir);
+            int comparison = compare(key, current.key);
+            dir = comparison > 0;
+            if (comparison == 0) {
+                found = current;
+            }
+            if (!current.isRed() && !current.child(dir).isRed()) {
+                if (current.child(!dir).isRed()) {
+                    TopDownNode<T, V> rotated = singleRotate(current, dir);
+                    parent.setChild(last, rotated);
+                    parent = rotated;
+                } else {
+                    TopDownNode<T, V> sibling = parent.child(!last);
+                    if (sibling != nil) {
+                        if (!sibling.child(!last).isRed() && !sibling.child(last).isRed()) {
+                            parent.color = INode.BLACK;
+                            sibling.color = INode.RED;
+                            current.color = INode.RED;
+                        } else {
+                            boolean parentIsRight = grandParent.rightChild == parent;
+                            TopDownNode<T, V> rotated;
+                            if (sibling.child(last).isRed()) {
+                                rotated = doubleRotate(parent, last);
+                            } else {
+                                rotated = singleRotate(parent, last);
+                            }
+                            grandParent.setChild(parentIsRight, rotated);
+                            current.color = INode.RED;
+                            rotated.color = INode.RED;
+                            rotated.leftChild.color = INode.BLACK;
+                            rotated.rightChild.color = INode.BLACK;
+                        }
+                    }
+                }
+            }
+        }
+        if (found != null) {
+            found.key = current.key;
+            found.value = current.value;
+            parent.setChild(parent.rightChild == current, current.leftChild == nil ? current.rightChild : current.leftChild);
+            current.leftChild = null;
+            current.rightChild = null;
+        }
+        root = head.rightChild;
+        if (root != nil) {
+            root.color = INode.BLACK;
+        }
+        head.rightChild = nil;
+        return found != null;
+    }
+
+    private TopDownNode<T, V> getNodeWithKey(T key) {
+        TopDownNode<T, V> current = root;
+        while (current != nil) {
+            int comparison = compare(key, current.key);
+            if (comparison == 0) {
+                return current;
+            }
+            current = current.child(comparison > 0);
+        }
+        return nil;
+    }
+
+    /**
+     * Rotates node towards dir and colors the new subtree root black and node red.
+     */
+    private static <T extends Comparable<T>, V> TopDownNode<T, V> singleRotate(TopDownNode<T, V> node, boolean dir) {
+        TopDownNode<T, V> save = node.child(!dir);
+        node.setChild(!dir, save.child(dir));
+        save.setChild(dir, node);
+        node.color = INode.RED;
+        save.color = INode.BLACK;
+        return save;
+    }
+
+    private static <T extends Comparable<T>, V> TopDownNode<T, V> doubleRotate(TopDownNode<T, V> node, boolean dir) {
+        node.setChild(!dir, singleRotate(node.child(!dir), !dir));
+        return singleRotate(node, dir);
+    }
+}
@@ -2,17 +2,13 @@ package eg.edu.alexu.csd.filestructure.redblacktree;
 
 import javax.management.RuntimeErrorException;
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
 
-    private static class EntriesComparator<G extends Comparable<G>, H> implements Comparator<Map.Entry<G, H>> {
-
-        @Override
-        public int compare(Map.Entry<G, H> o1, Map.Entry<G, H> o2) {
-            return o1.getKey().compareTo(o2.getKey());
-        }
-    }
-
     private static class MapEntry<Q extends Comparable<Q>, W> implements Map.Entry<Q, W> {
         private Q key;
         private W value;
@@ -32,10 +28,12 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
             return value;
         }
 
+        /**
+         * The entry is a copy, so a new value would never reach the map.
+         */
         @Override
         public W setValue(W value) {
-            this.value = value;
-            return this.value;
+            throw new RuntimeErrorException(new Error("Can't set the value of a detached entry"));
         }
 
         @Override
@@ -45,50 +43,147 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
             return ((Map.Entry<?, ?>) o).getKey().equals(this.key) && ((Map.Entry<?, ?>) o).getValue().equals(this.value);
         }
 
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
     }
 
-    private IRedBlackTree<T, V> tree;
+    /**
+     * Entry of an entry set iterator, backed by the tree node so setValue writes through to the map.
+     */
+    private static class NodeEntry<Q extends Comparable<Q>, W> implements Map.Entry<Q, W> {
+        private final INode<Q, W> node;
+
+        NodeEntry(INode<Q, W> node) {
+            this.node = node;
+        }
+
+        @Override
+        public Q getKey() {
+            return node.getKey();
+        }
+
+        @Override
+        public W getValue() {
+            return node.getValue();
+        }
+
+        @Override
+        public W setValue(W value) {
+            if (value == null) {
+                throw new RuntimeErrorException(new Error("Can't set a null value"));
+            }
+            W previous = node.getValue();
+            node.setValue(value);
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Map.Entry)) return false;
+            return ((Map.Entry<?, ?>) o).getKey().equals(getKey()) && ((Map.Entry<?, ?>) o).getValue().equals(getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+
+    }
+
+    private RedBlackTree<T, V> tree;
+    private Comparator<? super T> comparator;
     private int size;
+    /**
+     * Count of structural changes, so iterators can fail fast when the map changes under them.
+     */
+    private int modCount;
 
     public TreeMap() {
-        tree = new RedBlackTree<>();
+        this(null);
+    }
+
+    /**
+     * Creates a map ordered by the given comparator, or by the keys' natural ordering if it is null.
+     * @param comparator
+     */
+    public TreeMap(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        tree = new RedBlackTree<T, V>(comparator);
         size = 0;
     }
 
+    /**
+     * Builds a map from entries in strictly ascending natural key order in linear time.
+     * @param entries
+     * @return
+     */
+    public static <T extends Comparable<T>, V> TreeMap<T, V> fromSorted(Iterator<? extends Map.Entry<T, V>> entries) {
+        return fromSorted(entries, null);
+    }
+
+    /**
+     * Builds a map from entries in strictly ascending comparator order in linear time.
+     * @param entries
+     * @param comparator
+     * @return
+     */
+    public static <T extends Comparable<T>, V> TreeMap<T, V> fromSorted(Iterator<? extends Map.Entry<T, V>> entries,
+                                                                        Comparator<? super T> comparator) {
+        if (entries == null) {
+            throw new RuntimeErrorException(new Error("Can't build a map from null entries"));
+        }
+        ArrayList<Map.Entry<T, V>> buffer = new ArrayList<>();
+        while (entries.hasNext()) {
+            buffer.add(entries.next());
+        }
+        TreeMap<T, V> map = new TreeMap<T, V>(comparator);
+        map.tree.buildFromSorted(buffer.iterator(), buffer.size());
+        map.size = buffer.size();
+        return map;
+    }
+
+    RedBlackTree<T, V> tree() {
+        return tree;
+    }
+
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
     public Map.Entry<T, V> ceilingEntry(T key) {
         if (key == null) {
             throw new RuntimeErrorException(new Error("Can't find a ceil for null key"));
         }
-        Map.Entry<T, V> ceil = null;
-        INode<T, V> current = tree.getRoot();
-        while (!current.isNull()) {
-            if (current.getKey().compareTo(key) == 0) {
-                ceil = new MapEntry<>(current.getKey(), current.getValue());
-                break;
-            } else if (current.getKey().compareTo(key) < 0) {
-                current = current.getRightChild();
-            } else {
-                ceil = new MapEntry<>(current.getKey(), current.getValue());
-                current = current.getLeftChild();
-
-            }
-        }
-        return ceil;
+        return entry(tree.ceiling(key, true));
     }
 
 
     public T ceilingKey(T key) {
-
-        Map.Entry<T, V> ceilingEntry = ceilingEntry(key);
-        if (ceilingEntry == null) {
-            return null;
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a ceil for null key"));
         }
-        return ceilingEntry.getKey();
+        return key(tree.ceiling(key, true));
+    }
+
+    /**
+     * return an entry holding the node's key and value, or null for no node.
+     */
+    private Map.Entry<T, V> entry(INode<T, V> node) {
+        return node == null ? null : new MapEntry<>(node.getKey(), node.getValue());
+    }
+
+    private static <T extends Comparable<T>, V> T key(INode<T, V> node) {
+        return node == null ? null : node.getKey();
     }
 
     public void clear() {
         tree.clear();
         size = 0;
+        modCount++;
     }
 
 
@@ -101,68 +196,66 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
         if (value == null) {
             throw new RuntimeErrorException(new Error("Can't find a null value!"));
         }
-        Stack<INode<T, V>> dfs = new Stack<>();
-        if (tree.getRoot() == null) {
-            return false;
-        }
-        dfs.push(tree.getRoot());
-        INode<T, V> tmp;
-        while (!dfs.empty()) {
-            tmp = dfs.pop();
-            if (tmp.getValue().equals(value)) {
+        for (INode<T, V> node = tree.first(); node != null; node = NodeIterator.successor(node)) {
+            if (node.getValue().equals(value)) {
                 return true;
             }
-            if (!tmp.getRightChild().isNull()) {
-                dfs.push(tmp.getRightChild());
-            }
-            if (!tmp.getLeftChild().isNull()) {
-                dfs.push(tmp.getLeftChild());
-            }
         }
         return false;
     }
 
+    /**
+     * Live view of the entries in key order; nothing is copied and iterating takes O(1)
+     * amortized per entry. Setting the value of an iterated entry writes through to the map.
+     * The map must only change through the view's iterator meanwhile.
+     */
     public Set<Map.Entry<T, V>> entrySet() {
-        Set<Map.Entry<T, V>> result = new TreeSet<>(new EntriesComparator<>());
-        Stack<INode<T, V>> dfs = new Stack<>();
-        if (tree.getRoot() == null) {
-            return result;
-        }
-        dfs.push(tree.getRoot());
-        INode<T, V> tmp;
-        while (!dfs.empty()) {
-            tmp = dfs.pop();
-            result.add(new MapEntry<>(tmp.getKey(), tmp.getValue()));
-            if (!tmp.getRightChild().isNull()) {
-                dfs.push(tmp.getRightChild());
+        return new AbstractSet<Map.Entry<T, V>>() {
+            public Iterator<Map.Entry<T, V>> iterator() {
+                return new ViewIterator<Map.Entry<T, V>>() {
+                    Map.Entry<T, V> element(INode<T, V> node) {
+                        return new NodeEntry<>(node);
+                    }
+                };
             }
-            if (!tmp.getLeftChild().isNull()) {
-                dfs.push(tmp.getLeftChild());
+
+            public int size() {
+                return size;
             }
-        }
-        return result;
+
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                V value = lookup(entry.getKey());
+                return value != null && value.equals(entry.getValue());
+            }
+
+            public boolean remove(Object o) {
+                return contains(o) && TreeMap.this.remove(keyOf(((Map.Entry<?, ?>) o).getKey()));
+            }
+
+            public void clear() {
+                TreeMap.this.clear();
+            }
+        };
     }
 
     public Map.Entry<T, V> firstEntry() {
-        if (size == 0) {
+        INode<T, V> current = tree.first();
+        if (current == null) {
             return null;
         }
-        INode<T, V> current = tree.getRoot();
-        while (!current.getLeftChild().isNull()) {
-            current = current.getLeftChild();
-        }
         return new MapEntry<>(current.getKey(), current.getValue());
     }
 
 
     public T firstKey() {
-        if (size == 0) {
+        INode<T, V> current = tree.first();
+        if (current == null) {
             return null;
         }
-        INode<T, V> current = tree.getRoot();
-        while (!current.getLeftChild().isNull()) {
-            current = current.getLeftChild();
-        }
         return current.getKey();
     }
 
@@ -171,30 +264,15 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
         if (key == null) {
             throw new RuntimeErrorException(new Error("Can't find a floor for null key"));
         }
-        Map.Entry<T, V> floor = null;
-        INode<T, V> current = tree.getRoot();
-        while (!current.isNull()) {
-            if (current.getKey().compareTo(key) == 0) {
-                floor = new MapEntry<>(current.getKey(), current.getValue());
-                break;
-            } else if (current.getKey().compareTo(key) < 0) {
-                current = current.getRightChild();
-                floor = new MapEntry<>(current.getKey(), current.getValue());
-            } else {
-                current = current.getLeftChild();
-
-            }
-        }
-        return floor;
+        return entry(tree.floor(key, true));
     }
 
 
     public T floorKey(T key) {
-        Map.Entry<T, V> floorEntry = floorEntry(key);
-        if (floorEntry == null) {
-            return null;
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a floor for null key"));
         }
-        return floorEntry.getKey();
+        return key(tree.floor(key, true));
     }
 
 
@@ -208,111 +286,157 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
     }
 
     public ArrayList<Map.Entry<T, V>> headMap(T toKey, boolean inclusive) {
-
-        INode<T, V> current = tree.getRoot();
         ArrayList<Map.Entry<T, V>> list = new ArrayList<>();
-        Stack<INode<T, V>> recStack = new Stack<>();
-        while (!current.isNull() || !recStack.empty()) {
-            while (!current.isNull()) {
-                recStack.push(current);
-                current = current.getLeftChild();
-            }
-            current = recStack.pop();
-            if (inclusive) {
-                if (current.getKey().compareTo(toKey) <= 0) {
-                    list.add(new MapEntry<>(current.getKey(), current.getValue()));
-                } else {
-                    break;
-                }
-            } else {
-                if (current.getKey().compareTo(toKey) < 0) {
-                    list.add(new MapEntry<>(current.getKey(), current.getValue()));
-                }else {
-                    break;
-                }
+        for (INode<T, V> node = tree.first(); node != null; node = NodeIterator.successor(node)) {
+            int comparison = compare(node.getKey(), toKey);
+            if (comparison > 0 || (!inclusive && comparison == 0)) {
+                break;
             }
-            current = current.getRightChild();
+            list.add(new MapEntry<>(node.getKey(), node.getValue()));
         }
         return list;
     }
 
 
+    public Map.Entry<T, V> higherEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a higher entry for null key"));
+        }
+        return entry(tree.ceiling(key, false));
+    }
+
+
+    public T higherKey(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a higher entry for null key"));
+        }
+        return key(tree.ceiling(key, false));
+    }
+
+
+    /**
+     * Live view of the keys in order, backed by the tree like {@link #entrySet()}.
+     */
     public Set<T> keySet() {
-        Set<T> result = new TreeSet<>();
-        Stack<INode<T, V>> dfs = new Stack<>();
-        if (tree.getRoot() == null) {
-            return result;
-        }
-        dfs.push(tree.getRoot());
-        INode<T, V> tmp;
-        while (!dfs.empty()) {
-            tmp = dfs.pop();
-            result.add(tmp.getKey());
-            if (!tmp.getRightChild().isNull()) {
-                dfs.push(tmp.getRightChild());
+        return new AbstractSet<T>() {
+            public Iterator<T> iterator() {
+                return new ViewIterator<T>() {
+                    T element(INode<T, V> node) {
+                        return node.getKey();
+                    }
+                };
             }
-            if (!tmp.getLeftChild().isNull()) {
-                dfs.push(tmp.getLeftChild());
+
+            public int size() {
+                return size;
             }
-        }
-        return result;
+
+            public boolean contains(Object o) {
+                return lookup(o) != null;
+            }
+
+            public boolean remove(Object o) {
+                return contains(o) && TreeMap.this.remove(keyOf(o));
+            }
+
+            public void clear() {
+                TreeMap.this.clear();
+            }
+        };
     }
 
     public Map.Entry<T, V> lastEntry() {
-        if (size == 0) {
+        INode<T, V> current = tree.last();
+        if (current == null) {
             return null;
         }
-        INode<T, V> current = tree.getRoot();
-        while (!current.getRightChild().isNull()) {
-            current = current.getRightChild();
-        }
         return new MapEntry<>(current.getKey(), current.getValue());
     }
 
 
     public T lastKey() {
-        if (size == 0) {
+        INode<T, V> current = tree.last();
+        if (current == null) {
             return null;
         }
-        INode<T, V> current = tree.getRoot();
-        while (!current.getRightChild().isNull()) {
-            current = current.getRightChild();
-        }
         return current.getKey();
     }
 
 
+    public Map.Entry<T, V> lowerEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a lower entry for null key"));
+        }
+        return entry(tree.floor(key, false));
+    }
+
+
+    public T lowerKey(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a lower entry for null key"));
+        }
+        return key(tree.floor(key, false));
+    }
+
+
     public Map.Entry<T, V> pollFirstEntry() {
-        if (size == 0) {
+        INode<T, V> current = tree.first();
+        if (current == null) {
             return null;
         }
-        INode<T, V> current = tree.getRoot();
-        while (!current.getLeftChild().isNull()) {
-            current = current.getLeftChild();
-        }
+        Map.Entry<T, V> entry = new MapEntry<>(current.getKey(), current.getValue());
         remove(current.getKey());
-        return new MapEntry<>(current.getKey(), current.getValue());
+        return entry;
     }
 
     public Map.Entry<T, V> pollLastEntry() {
-        if (size == 0) {
+        INode<T, V> current = tree.last();
+        if (current == null) {
             return null;
         }
-        INode<T, V> current = tree.getRoot();
-        while (!current.getRightChild().isNull()) {
-            current = current.getRightChild();
-        }
+        Map.Entry<T, V> entry = new MapEntry<>(current.getKey(), current.getValue());
         remove(current.getKey());
-        return new MapEntry<>(current.getKey(), current.getValue());
+        return entry;
     }
 
 
     public void put(T key, V value) {
-        boolean increaseSize = tree.contains(key);
-        tree.insert(key, value);
-        if (!increaseSize) {
+        insert(key, value);
+    }
+
+    /**
+     * Puts the entry with one descent of the tree.
+     *
+     * @return the value the key had before, or null if it is new.
+     */
+    private V insert(T key, V value) {
+        V previous = tree.insert(key, value);
+        if (previous == null) {
             size++;
+            modCount++;
         }
+        return previous;
+    }
+
+    public V putIfAbsent(T key, V value) {
+        V previous = tree.insert(key, value, false);
+        if (previous == null) {
+            size++;
+            modCount++;
+        }
+        return previous;
+    }
+
+    public V compute(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        if (function == null) {
+            throw new RuntimeErrorException(new Error("Can't compute with a null function"));
+        }
+        V value = tree.compute(key, function);
+        if (size != tree.size()) {
+            size = tree.size();
+            modCount++;
+        }
+        return value;
     }
 
 
@@ -320,6 +444,12 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
         if (map == null) {
             throw new RuntimeErrorException(new Error("Can't add a keys-values from a null map"));
         }
+        if (size == 0 && map instanceof SortedMap && sameOrder(((SortedMap<T, V>) map).comparator())) {
+            tree.buildFromSorted(map.entrySet().iterator(), map.size());
+            size = map.size();
+            modCount++;
+            return;
+        }
 
         for (Map.Entry<T, V> entry : map.entrySet()) {
             this.put(entry.getKey(), entry.getValue());
@@ -328,10 +458,16 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
     }
 
 
+    private boolean sameOrder(Comparator<?> other) {
+        return comparator == null ? other == null : comparator.equals(other);
+    }
+
+
     public boolean remove(T key) {
         boolean result = tree.delete(key);
         if (result) {
             size--;
+            modCount++;
             return true;
         }
         return false;
@@ -343,24 +479,414 @@ public class TreeMap<T extends Comparable<T>, V> implements ITreeMap<T, V> {
         return size;
     }
 
+    public int rank(T key) {
+        return tree.rank(key, false);
+    }
+
+    public Map.Entry<T, V> select(int index) {
+        INode<T, V> node = tree.select(index);
+        if (node == null) {
+            return null;
+        }
+        return new MapEntry<>(node.getKey(), node.getValue());
+    }
+
+    public int countInRange(T lo, T hi) {
+        if (lo == null || hi == null) {
+            throw new RuntimeErrorException(new Error("Can't count a range with a null bound"));
+        }
+        if (compare(lo, hi) > 0) {
+            return 0;
+        }
+        return tree.rank(hi, true) - tree.rank(lo, false);
+    }
+
+    public List<V> applyBatch(List<Op<T, V>> ops) {
+        List<V> previous = tree.applyBatch(ops);
+        size = tree.size();
+        modCount++;
+        return previous;
+    }
+
+    /**
+     * Adds every entry of other to this map in parallel; a key in both maps gets
+     * merge(this value, other value), or is removed if that is null. other is not modified.
+     * @param other map with the same ordering.
+     * @param merge
+     */
+    public void union(TreeMap<T, V> other, BinaryOperator<V> merge) {
+        tree.union(sameOrderTree(other), merge);
+        size = tree.size();
+        modCount++;
+    }
+
+    /**
+     * Keeps only the keys also in other, each with merge(this value, other value), or removed if that is null.
+     * other is not modified.
+     * @param other map with the same ordering.
+     * @param merge
+     */
+    public void intersect(TreeMap<T, V> other, BinaryOperator<V> merge) {
+        tree.intersect(sameOrderTree(other), merge);
+        size = tree.size();
+        modCount++;
+    }
+
+    /**
+     * Removes every key that is also in other. other is not modified.
+     * @param other map with the same ordering.
+     */
+    public void difference(TreeMap<T, V> other) {
+        tree.difference(sameOrderTree(other));
+        size = tree.size();
+        modCount++;
+    }
+
+    private RedBlackTree<T, V> sameOrderTree(TreeMap<T, V> other) {
+        if (other == null) {
+            throw new RuntimeErrorException(new Error("Can't combine with a null map"));
+        }
+        if (!sameOrder(other.comparator)) {
+            throw new RuntimeErrorException(new Error("Can't combine maps with different orderings"));
+        }
+        return other.tree;
+    }
+
+    /**
+     * Streams straight off the tree without copying it; the map must not change meanwhile.
+     */
+    public Stream<Map.Entry<T, V>> stream() {
+        return StreamSupport.stream(tree.spliterator(), false);
+    }
+
+    public Stream<Map.Entry<T, V>> parallelStream() {
+        return StreamSupport.stream(tree.spliterator(), true);
+    }
+
+    /**
+     * Live view of the values in key order, backed by the tree like {@link #entrySet()}.
+     */
     public Collection<V> values() {
-        return inOrderTraversal(tree.getRoot());
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator() {
+                return new ViewIterator<V>() {
+                    V element(INode<T, V> node) {
+                        return node.getValue();
+                    }
+                };
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public void clear() {
+                TreeMap.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Returns a live view of the entries with keys from fromKey to toKey. Creating it costs nothing,
+     * its first entry is found with one descent and the rest are read on demand; size() is
+     * answered from the ranks of the bounds. Puts and removes through the view change this map,
+     * and keys outside the range are rejected.
+     * @param fromKey       low end of the range.
+     * @param fromInclusive whether fromKey itself is in the range.
+     * @param toKey         high end of the range.
+     * @param toInclusive   whether toKey itself is in the range.
+     * @return the range view.
+     */
+    public SortedMap<T, V> subMap(T fromKey, boolean fromInclusive, T toKey, boolean toInclusive) {
+        if (fromKey == null || toKey == null) {
+            throw new RuntimeErrorException(new Error("Can't get the subMap of null key"));
+        }
+        if (compare(fromKey, toKey) > 0) {
+            throw new RuntimeErrorException(new Error("Can't get a subMap whose fromKey is greater than its toKey"));
+        }
+        return new RangeView(false, fromKey, fromInclusive, false, toKey, toInclusive);
+    }
+
+    /**
+     * Returns a live view of the entries with keys from fromKey up, like {@link #subMap}.
+     * @param fromKey   low end of the range.
+     * @param inclusive whether fromKey itself is in the range.
+     * @return the range view.
+     */
+    public SortedMap<T, V> tailMap(T fromKey, boolean inclusive) {
+        if (fromKey == null) {
+            throw new RuntimeErrorException(new Error("Can't get the tailMap of null key"));
+        }
+        return new RangeView(false, fromKey, inclusive, true, null, false);
+    }
+
+    /**
+     * Returns a live view of the entries with keys up to toKey, like {@link #subMap}.
+     * Unlike {@link #headMap(Comparable, boolean)}, nothing is copied.
+     * @param toKey     high end of the range.
+     * @param inclusive whether toKey itself is in the range.
+     * @return the range view.
+     */
+    public SortedMap<T, V> headMapView(T toKey, boolean inclusive) {
+        if (toKey == null) {
+            throw new RuntimeErrorException(new Error("Can't get the headMap of null key"));
+        }
+        return new RangeView(true, null, false, false, toKey, inclusive);
     }
 
-    private Collection<V> inOrderTraversal(INode<T, V> root) {
-        ArrayList<V> list = new ArrayList<>();
-        INode<T, V> current = root;
-        Stack<INode<T, V>> recStack = new Stack<>();
-        while (!current.isNull() || !recStack.empty()) {
-            while (!current.isNull()) {
-                recStack.push(current);
-                current = current.getLeftChild();
+    /**
+     * Keys between two optional bounds of this map.
+     */
+    private final class RangeView extends AbstractMap<T, V> implements SortedMap<T, V> {
+        private final boolean fromStart;
+        private final T low;
+        private final boolean lowInclusive;
+        private final boolean toEnd;
+        private final T high;
+        private final boolean highInclusive;
+
+        RangeView(boolean fromStart, T low, boolean lowInclusive, boolean toEnd, T high, boolean highInclusive) {
+            this.fromStart = fromStart;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.toEnd = toEnd;
+            this.high = high;
+            this.highInclusive = highInclusive;
+        }
+
+        boolean tooLow(T key) {
+            if (fromStart) {
+                return false;
+            }
+            int comparison = compare(key, low);
+            return comparison < 0 || (comparison == 0 && !lowInclusive);
+        }
+
+        boolean tooHigh(T key) {
+            if (toEnd) {
+                return false;
+            }
+            int comparison = compare(key, high);
+            return comparison > 0 || (comparison == 0 && !highInclusive);
+        }
+
+        private boolean covers(Object key) {
+            if (key == null) {
+                return false;
+            }
+            try {
+                return !tooLow(keyOf(key)) && !tooHigh(keyOf(key));
+            } catch (ClassCastException e) {
+                return false;
+            }
+        }
+
+        private INode<T, V> firstNode() {
+            INode<T, V> node = fromStart ? tree.first() : tree.ceiling(low, lowInclusive);
+            return node == null || tooHigh(node.getKey()) ? null : node;
+        }
+
+        private INode<T, V> lastNode() {
+            INode<T, V> node = toEnd ? tree.last() : tree.floor(high, highInclusive);
+            return node == null || tooLow(node.getKey()) ? null : node;
+        }
+
+        public int size() {
+            int below = fromStart ? 0 : tree.rank(low, !lowInclusive);
+            int upTo = toEnd ? size : tree.rank(high, highInclusive);
+            return Math.max(0, upTo - below);
+        }
+
+        public boolean isEmpty() {
+            return firstNode() == null;
+        }
+
+        public V get(Object key) {
+            return covers(key) ? lookup(key) : null;
+        }
+
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        public V put(T key, V value) {
+            if (key != null && (tooLow(key) || tooHigh(key))) {
+                throw new RuntimeErrorException(new Error("Can't put a key outside the map's range"));
+            }
+            return insert(key, value);
+        }
+
+        public V remove(Object key) {
+            V previous = get(key);
+            if (previous != null) {
+                TreeMap.this.remove(keyOf(key));
+            }
+            return previous;
+        }
+
+        public Set<Map.Entry<T, V>> entrySet() {
+            return new AbstractSet<Map.Entry<T, V>>() {
+                public Iterator<Map.Entry<T, V>> iterator() {
+                    return new ViewIterator<Map.Entry<T, V>>(firstNode(), RangeView.this) {
+                        Map.Entry<T, V> element(INode<T, V> node) {
+                            return new NodeEntry<>(node);
+                        }
+                    };
+                }
+
+                public int size() {
+                    return RangeView.this.size();
+                }
+
+                public boolean contains(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                    V value = get(entry.getKey());
+                    return value != null && value.equals(entry.getValue());
+                }
+
+                public boolean remove(Object o) {
+                    return contains(o) && TreeMap.this.remove(keyOf(((Map.Entry<?, ?>) o).getKey()));
+                }
+            };
+        }
+
+        public Comparator<? super T> comparator() {
+            return comparator;
+        }
+
+        public T firstKey() {
+            INode<T, V> node = firstNode();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            return node.getKey();
+        }
+
+        public T lastKey() {
+            INode<T, V> node = lastNode();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            return node.getKey();
+        }
+
+        public SortedMap<T, V> subMap(T fromKey, T toKey) {
+            checkBound(fromKey, true);
+            checkBound(toKey, false);
+            if (compare(fromKey, toKey) > 0) {
+                throw new RuntimeErrorException(new Error("Can't get a subMap whose fromKey is greater than its toKey"));
+            }
+            return new RangeView(false, fromKey, true, false, toKey, false);
+        }
+
+        public SortedMap<T, V> headMap(T toKey) {
+            checkBound(toKey, false);
+            return new RangeView(fromStart, low, lowInclusive, false, toKey, false);
+        }
+
+        public SortedMap<T, V> tailMap(T fromKey) {
+            checkBound(fromKey, true);
+            return new RangeView(false, fromKey, true, toEnd, high, highInclusive);
+        }
+
+        /**
+         * Rejects a bound of a nested range that would let it reach past this one. An inclusive
+         * bound must be a key of this range; an exclusive one may also equal one of its ends.
+         */
+        private void checkBound(T key, boolean inclusive) {
+            if (key == null) {
+                throw new RuntimeErrorException(new Error("Can't bound a range with a null key"));
+            }
+            boolean outside = inclusive ? tooLow(key) || tooHigh(key)
+                    : (!fromStart && compare(key, low) < 0) || (!toEnd && compare(key, high) > 0);
+            if (outside) {
+                throw new RuntimeErrorException(new Error("Can't bound a range outside its parent range"));
+            }
+        }
+    }
+
+    /**
+     * return the value of a key of unknown type, or null if it is absent or not comparable with the keys.
+     */
+    private V lookup(Object key) {
+        if (key == null) {
+            return null;
+        }
+        try {
+            return tree.search(keyOf(key));
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T keyOf(Object key) {
+        return (T) key;
+    }
+
+    /**
+     * Iterator of a view, mapping each node of an in order {@link NodeIterator} to an element.
+     * It throws {@link ConcurrentModificationException} once the map is structurally changed
+     * other than through its own remove.
+     */
+    private abstract class ViewIterator<E> implements Iterator<E> {
+        private final NodeIterator<T, V> nodes;
+        /**
+         * View whose upper bound ends the iteration, or null to run to the last key.
+         */
+        private final RangeView range;
+        private INode<T, V> lastReturned;
+        private int expectedModCount = modCount;
+
+        ViewIterator() {
+            this(tree.first(), null);
+        }
+
+        ViewIterator(INode<T, V> first, RangeView range) {
+            this.nodes = new NodeIterator<>(first, false);
+            this.range = range;
+        }
+
+        abstract E element(INode<T, V> node);
+
+        public boolean hasNext() {
+            INode<T, V> next = nodes.peek();
+            return next != null && (range == null || !range.tooHigh(next.getKey()));
+        }
+
+        public E next() {
+            checkForComodification();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = nodes.next();
+            return element(lastReturned);
+        }
+
+        /**
+         * Removing a node with two children moves its successor's entry into it, so that node comes next.
+         */
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            if (!lastReturned.getLeftChild().isNull() && !lastReturned.getRightChild().isNull()) {
+                nodes.skipTo(lastReturned);
+            }
+            TreeMap.this.remove(lastReturned.getKey());
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
             }
-            current = recStack.pop();
-            list.add(current.getValue());
-            current = current.getRightChild();
         }
-        return list;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the entries of a {@link RedBlackTree} whose keys have ranks from..to-1.
+ * Splitting uses the subtree sizes to cut the range at the highest node inside it, so both
+ * halves are subtree aligned and their sizes are exact; nothing is copied up front.
+ * The tree must not be modified while it is being traversed.
+ */
+class TreeSpliterator<T extends Comparable<T>, V> implements Spliterator<Map.Entry<T, V>> {
+
+    private final RedBlackTree<T, V> tree;
+    private int from;
+    private final int to;
+    /**
+     * Node holding the key of rank from, or null until it is looked up.
+     */
+    private INode<T, V> next;
+
+    TreeSpliterator(RedBlackTree<T, V> tree, int from, int to, INode<T, V> next) {
+        this.tree = tree;
+        this.from = from;
+        this.to = to;
+        this.next = next;
+    }
+
+    public boolean tryAdvance(Consumer<? super Map.Entry<T, V>> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        if (from >= to) {
+            return false;
+        }
+        if (next == null) {
+            next = tree.select(from);
+        }
+        INode<T, V> current = next;
+        next = ++from < to ? NodeIterator.successor(current) : null;
+        action.accept(new AbstractMap.SimpleImmutableEntry<>(current.getKey(), current.getValue()));
+        return true;
+    }
+
+    public void forEachRemaining(Consumer<? super Map.Entry<T, V>> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        if (from >= to) {
+            return;
+        }
+        INode<T, V> current = next == null ? tree.select(from) : next;
+        int remaining = to - from;
+        from = to;
+        next = null;
+        while (true) {
+            action.accept(new AbstractMap.SimpleImmutableEntry<>(current.getKey(), current.getValue()));
+            if (--remaining == 0) {
+                return;
+            }
+            current = NodeIterator.successor(current);
+        }
+    }
+
+    /**
+     * Splits off the keys before the highest node whose rank lies strictly inside the range.
+     */
+    public Spliterator<Map.Entry<T, V>> trySplit() {
+        if (to - from < 2) {
+            return null;
+        }
+        INode<T, V> current = tree.getRoot();
+        int offset = 0;
+        while (true) {
+            int rank = offset + tree.size(current.getLeftChild());
+            if (rank <= from) {
+                offset = rank + 1;
+                current = current.getRightChild();
+            } else if (rank >= to) {
+                current = current.getLeftChild();
+            } else {
+                Spliterator<Map.Entry<T, V>> prefix = new TreeSpliterator<>(tree, from, rank, next);
+                from = rank;
+                next = current;
+                return prefix;
+            }
+        }
+    }
+
+    public long estimateSize() {
+        return to - from;
+    }
+
+    public int characteristics() {
+        return ORDERED | SORTED | SIZED | SUBSIZED | DISTINCT | NONNULL;
+    }
+
+    public Comparator<? super Map.Entry<T, V>> getComparator() {
+        Comparator<? super T> comparator = tree.comparator();
+        return comparator == null ? Map.Entry.<T, V>comparingByKey() : Map.Entry.<T, V>comparingByKey(comparator);
+    }
+}
@@ -2,24 +2,41 @@ package eg.edu.alexu.csd.filestructure.redblacktree;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.Spliterator;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import javax.management.RuntimeErrorException;
 
+import eg.edu.alexu.csd.filestructure.redblacktree.server.TreeMapClient;
+import eg.edu.alexu.csd.filestructure.redblacktree.server.TreeMapServer;
+
 import org.hamcrest.core.IsInstanceOf;
+import org.hamcrest.core.IsNot;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -1678,6 +1695,1691 @@ public class UnitTest {
 		
 	}
 	
+	/**
+	 * Test a map ordered by an explicit comparator.
+	 */
+	@Test
+	public void testTreeMapWithComparator() {
+
+		ITreeMap<Integer, String> treemap = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>(Collections.<Integer>reverseOrder());
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>(Collections.<Integer>reverseOrder());
+			Random r = new Random();
+			for (int i = 0; i < 10000; i++) {
+				int key = r.nextInt(100000);
+				t.put(key, "soso" + key);
+				treemap.put(key, "soso" + key);
+			}
+			Assert.assertEquals(t.firstKey(), treemap.firstKey());
+			Assert.assertEquals(t.lastKey(), treemap.lastKey());
+			for (int i = 0; i < 1000; i++) {
+				int key = r.nextInt(100000);
+				Assert.assertEquals(t.ceilingKey(key), treemap.ceilingKey(key));
+				Assert.assertEquals(t.floorKey(key), treemap.floorKey(key));
+				Assert.assertEquals(t.get(key), treemap.get(key));
+			}
+			Iterator<Entry<Integer, String>> itr1 = treemap.entrySet().iterator();
+			Iterator<Entry<Integer, String>> itr2 = t.entrySet().iterator();
+			while (itr1.hasNext() && itr2.hasNext())
+				Assert.assertEquals(itr2.next(), itr1.next());
+			Assert.assertEquals(itr1.hasNext(), itr2.hasNext());
+			int toKey = r.nextInt(100000);
+			Assert.assertEquals(new ArrayList<>(t.headMap(toKey, true).entrySet()), treemap.headMap(toKey, true));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in treemap with comparator", e);
+		}
+	}
+
+	/**
+	 * Test building trees of every small size from sorted entries.
+	 */
+	@Test
+	public void testBuildFromSorted() {
+
+		try {
+			for (int n = 0; n < 300; n++) {
+				TreeMap<Integer, String> t = new TreeMap<>();
+				for (int i = 0; i < n; i++)
+					t.put(i * 2, "soso" + i);
+				RedBlackTree<Integer, String> redBlackTree = new RedBlackTree<>();
+				redBlackTree.buildFromSorted(t.entrySet().iterator(), t.size());
+				Assert.assertTrue(verifyProps(redBlackTree.getRoot()));
+				for (int i = 0; i < n; i++)
+					Assert.assertEquals("soso" + i, redBlackTree.search(i * 2));
+				redBlackTree.insert(-1, "koko");
+				redBlackTree.delete(n);
+				Assert.assertTrue(verifyProps(redBlackTree.getRoot()));
+			}
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 10000; i++) {
+				int key = r.nextInt(100000);
+				t.put(key, "soso" + key);
+			}
+			ITreeMap<Integer, String> treemap = (ITreeMap<Integer, String>) TestRunner.getImplementationInstanceForInterface(ITreeMap.class);
+			treemap.putAll(t);
+			Assert.assertEquals(t.size(), treemap.size());
+			Assert.assertEquals(new ArrayList<>(t.headMap(50000).entrySet()), treemap.headMap(50000));
+			treemap = eg.edu.alexu.csd.filestructure.redblacktree.TreeMap.fromSorted(t.entrySet().iterator());
+			Assert.assertEquals(t.size(), treemap.size());
+			Assert.assertEquals(t.lastEntry(), treemap.lastEntry());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in building from sorted entries", e);
+		}
+		try {
+			List<Entry<Integer, String>> unsorted = new ArrayList<>(new TreeMap<>(Collections.singletonMap(1, "soso")).entrySet());
+			unsorted.add(new java.util.AbstractMap.SimpleEntry<>(0, "koko"));
+			eg.edu.alexu.csd.filestructure.redblacktree.TreeMap.fromSorted(unsorted.iterator());
+			Assert.fail();
+		} catch (RuntimeErrorException ex) {
+		} catch (Throwable e) {
+			TestRunner.fail("Fail to reject unsorted entries", e);
+		}
+	}
+
+	/**
+	 * Test rank, select and countInRange while inserting and deleting.
+	 */
+	@Test
+	public void testOrderStatistics() {
+
+		ITreeMap<Integer, String> treemap = (ITreeMap<Integer, String>) TestRunner.getImplementationInstanceForInterface(ITreeMap.class);
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 20000; i++) {
+				int key = r.nextInt(5000);
+				if (r.nextInt(3) == 0) {
+					t.remove(key);
+					treemap.remove(key);
+				} else {
+					t.put(key, "soso" + key);
+					treemap.put(key, "soso" + key);
+				}
+			}
+			ArrayList<Integer> keys = new ArrayList<>(t.keySet());
+			for (int i = 0; i < keys.size(); i++) {
+				Assert.assertEquals(keys.get(i), treemap.select(i).getKey());
+				Assert.assertEquals(i, treemap.rank(keys.get(i)));
+			}
+			Assert.assertNull(treemap.select(-1));
+			Assert.assertNull(treemap.select(keys.size()));
+			for (int i = 0; i < 1000; i++) {
+				int lo = r.nextInt(5200) - 100;
+				int hi = r.nextInt(5200) - 100;
+				Assert.assertEquals(t.headMap(lo).size(), treemap.rank(lo));
+				Assert.assertEquals(lo > hi ? 0 : t.subMap(lo, true, hi, true).size(), treemap.countInRange(lo, hi));
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in order statistics", e);
+		}
+	}
+
+	/**
+	 * Test the top down tree against java's TreeMap, checking the properties as it goes.
+	 */
+	@Test
+	public void testTopDownRedBlackTree() {
+
+		IRedBlackTree<Integer, String> tree = new TopDownRedBlackTree<>();
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 100000; i++) {
+				int key = r.nextInt(10000);
+				if (r.nextInt(3) == 0) {
+					Assert.assertEquals(t.remove(key) != null, tree.delete(key));
+				} else {
+					t.put(key, "soso" + i);
+					tree.insert(key, "soso" + i);
+				}
+				if (i % 1000 == 0)
+					Assert.assertTrue(verifyProps(tree.getRoot()));
+			}
+			for (int key = -1; key <= 10000; key++)
+				Assert.assertEquals(t.get(key), tree.search(key));
+			for (Integer key : t.keySet())
+				Assert.assertTrue(tree.delete(key));
+			Assert.assertTrue(tree.isEmpty());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in top down red black tree", e);
+		}
+	}
+
+	/**
+	 * Test the array backed tree against java's TreeMap, across growth and slot reuse.
+	 */
+	@Test
+	public void testArrayRedBlackTree() {
+
+		ArrayRedBlackTree<Integer, String> tree = new ArrayRedBlackTree<>();
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 100000; i++) {
+				int key = r.nextInt(5000);
+				if (r.nextInt(3) == 0) {
+					Assert.assertEquals(t.remove(key) != null, tree.delete(key));
+				} else {
+					Assert.assertEquals(t.put(key, "soso" + i), tree.insert(key, "soso" + i));
+				}
+				if (i % 10000 == 0)
+					Assert.assertTrue(verifyProps(tree.getRoot()));
+			}
+			Assert.assertTrue(verifyProps(tree.getRoot()));
+			for (int key = -1; key <= 5000; key++) {
+				Assert.assertEquals(t.get(key), tree.search(key));
+				Assert.assertEquals(t.containsKey(key), tree.contains(key));
+			}
+			INode<Integer, String> nil = tree.getRoot();
+			while (!nil.isNull())
+				nil = nil.getLeftChild();
+			nil.setColor(INode.RED);
+			nil.setKey(7);
+			nil.setLeftChild(tree.getRoot());
+			Assert.assertEquals(INode.BLACK, nil.getColor());
+			Assert.assertNull(nil.getKey());
+			Assert.assertTrue(nil.getLeftChild() == null);
+			Assert.assertTrue(verifyProps(tree.getRoot()));
+			for (Integer key : new ArrayList<>(t.keySet()))
+				Assert.assertTrue(tree.delete(key));
+			Assert.assertTrue(tree.isEmpty());
+			Assert.assertNull(tree.search(1));
+
+			ArrayRedBlackTree<Integer, String> reversed = new ArrayRedBlackTree<>(Collections.<Integer>reverseOrder());
+			for (int i = 0; i < 1000; i++)
+				reversed.insert(i, "soso" + i);
+			INode<Integer, String> node = reversed.getRoot();
+			while (!node.getLeftChild().isNull())
+				node = node.getLeftChild();
+			Assert.assertEquals(Integer.valueOf(999), node.getKey());
+			Assert.assertEquals("soso500", reversed.search(500));
+			Assert.assertTrue(reversed.delete(500));
+			Assert.assertFalse(reversed.contains(500));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in array red black tree", e);
+		}
+	}
+
+	/**
+	 * Test that first() and last() follow every kind of delete, and that inserts past them still balance.
+	 */
+	@Test
+	public void testFirstLastAfterDelete() {
+
+		RedBlackTree<Integer, String> tree = new RedBlackTree<>();
+		try {
+			tree.insert(1, "soso1");
+			Assert.assertTrue(tree.delete(1));
+			Assert.assertNull(tree.first());
+			Assert.assertNull(tree.last());
+			tree.insert(5, "soso5");
+			Assert.assertEquals(Integer.valueOf(5), tree.first().getKey());
+			Assert.assertEquals(Integer.valueOf(5), tree.last().getKey());
+
+			tree.insert(3, "soso3");
+			tree.insert(7, "soso7");
+			Assert.assertTrue(tree.delete(5));
+			Assert.assertEquals(Integer.valueOf(3), tree.first().getKey());
+			Assert.assertEquals(Integer.valueOf(7), tree.last().getKey());
+			Assert.assertEquals("soso7", tree.last().getValue());
+			Assert.assertTrue(tree.delete(7));
+			Assert.assertEquals(Integer.valueOf(3), tree.last().getKey());
+			Assert.assertTrue(tree.delete(3));
+			Assert.assertNull(tree.first());
+
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 2000; i++) {
+				int key = r.nextInt(1000);
+				t.put(key, "soso" + key);
+				tree.insert(key, "soso" + key);
+			}
+			for (int i = 0; i < 3000 && !t.isEmpty(); i++) {
+				int kind = r.nextInt(4);
+				Integer key = kind == 0 ? t.firstKey() : kind == 1 ? t.lastKey() : t.ceilingKey(r.nextInt(1000));
+				if (key == null)
+					key = t.lastKey();
+				Assert.assertTrue(tree.delete(key));
+				t.remove(key);
+				if (r.nextInt(4) == 0) {
+					int appended = t.isEmpty() ? 0 : r.nextBoolean() ? t.lastKey() + 1 : t.firstKey() - 1;
+					t.put(appended, "soso" + appended);
+					tree.insert(appended, "soso" + appended);
+				}
+				if (t.isEmpty()) {
+					Assert.assertNull(tree.first());
+					Assert.assertNull(tree.last());
+				} else {
+					Assert.assertEquals(t.firstKey(), tree.first().getKey());
+					Assert.assertEquals(t.lastKey(), tree.last().getKey());
+					Assert.assertEquals(t.firstEntry().getValue(), tree.first().getValue());
+					Assert.assertEquals(t.lastEntry().getValue(), tree.last().getValue());
+				}
+			}
+			Assert.assertTrue(verifyProps(tree.getRoot()));
+			Assert.assertTrue(verifyLinks(tree.getRoot()));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in first and last after delete", e);
+		}
+	}
+
+	/**
+	 * Test that optimistic readers of the concurrent map always see the keys no writer touches.
+	 */
+	@Test
+	public void testConcurrentTreeMap() {
+
+		final ITreeMap<Integer, String> map = new ConcurrentTreeMap<>();
+		try {
+			for (int i = 0; i < 20000; i += 2)
+				map.put(i, "soso" + i);
+			final AtomicInteger misses = new AtomicInteger();
+			final AtomicBoolean running = new AtomicBoolean(true);
+			Thread[] readers = new Thread[3];
+			for (int t = 0; t < readers.length; t++) {
+				readers[t] = new Thread(new Runnable() {
+					public void run() {
+						Random r = new Random();
+						while (running.get()) {
+							int key = r.nextInt(10000) * 2;
+							if (!("soso" + key).equals(map.get(key)) || !map.containsKey(key)
+									|| map.floorEntry(key).getKey() != key || map.ceilingKey(key) != key
+									|| map.floorKey(key + 1) < key || map.ceilingKey(key - 1) > key
+									|| map.firstKey() != 0 || map.lastKey() < 19998)
+								misses.incrementAndGet();
+						}
+					}
+				});
+				readers[t].start();
+			}
+			Random r = new Random();
+			TreeMap<Integer, String> t = new TreeMap<>();
+			for (int i = 0; i < 200000; i++) {
+				int key = r.nextInt(10000) * 2 + 1;
+				if (r.nextBoolean()) {
+					map.put(key, "soso" + key);
+					t.put(key, "soso" + key);
+				} else {
+					Assert.assertEquals(t.remove(key) != null, map.remove(key));
+				}
+			}
+			running.set(false);
+			for (Thread reader : readers)
+				reader.join();
+			Assert.assertEquals(0, misses.get());
+			Assert.assertEquals(10000 + t.size(), map.size());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in concurrent tree map", e);
+		}
+	}
+
+	/**
+	 * Test that iterating the views of the concurrent map while a writer runs sees a consistent copy.
+	 */
+	@Test
+	public void testConcurrentViews() {
+
+		final ITreeMap<Integer, String> map = new ConcurrentTreeMap<>();
+		try {
+			for (int i = 0; i < 20000; i += 2)
+				map.put(i, "soso" + i);
+			final AtomicInteger failures = new AtomicInteger();
+			final AtomicBoolean running = new AtomicBoolean(true);
+			Thread writer = new Thread(new Runnable() {
+				public void run() {
+					Random r = new Random();
+					while (running.get()) {
+						int key = r.nextInt(10000) * 2 + 1;
+						if (r.nextBoolean())
+							map.put(key, "soso" + key);
+						else
+							map.remove(key);
+					}
+				}
+			});
+			writer.start();
+			for (int i = 0; i < 300; i++) {
+				try {
+					Integer previous = null;
+					int even = 0;
+					for (Entry<Integer, String> entry : map.entrySet()) {
+						if (previous != null && previous >= entry.getKey())
+							failures.incrementAndGet();
+						if (entry.getKey() % 2 == 0)
+							even++;
+						previous = entry.getKey();
+					}
+					previous = null;
+					for (Integer key : map.keySet()) {
+						if (previous != null && previous >= key)
+							failures.incrementAndGet();
+						previous = key;
+					}
+					for (String value : map.values())
+						if (value == null)
+							failures.incrementAndGet();
+					if (even != 10000 || map.stream().filter(e -> e.getKey() % 2 == 0).count() != 10000)
+						failures.incrementAndGet();
+				} catch (RuntimeException e) {
+					failures.incrementAndGet();
+				}
+			}
+			running.set(false);
+			writer.join();
+			Assert.assertEquals(0, failures.get());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in concurrent views", e);
+		}
+	}
+
+	/**
+	 * Test that snapshots of the persistent tree keep their entries while the tree changes.
+	 */
+	@Test
+	public void testPersistentRedBlackTree() {
+
+		PersistentRedBlackTree<Integer, String> tree = new PersistentRedBlackTree<>();
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			List<TreeMap<Integer, String>> expected = new ArrayList<>();
+			List<ITreeMap<Integer, String>> snapshots = new ArrayList<>();
+			Random r = new Random();
+			for (int i = 0; i < 50000; i++) {
+				int key = r.nextInt(2000);
+				if (r.nextInt(3) == 0) {
+					Assert.assertEquals(t.remove(key) != null, tree.delete(key));
+				} else {
+					t.put(key, "soso" + i);
+					tree.insert(key, "soso" + i);
+				}
+				if (i % 5000 == 0) {
+					Assert.assertTrue(verifyProps(tree.getRoot()));
+					expected.add(new TreeMap<>(t));
+					snapshots.add(tree.snapshot());
+				}
+			}
+			Assert.assertThat(((PersistentNode<Integer, String>) tree.getRoot()).owner,
+					IsNot.not(IsInstanceOf.instanceOf(PersistentRedBlackTree.Update.class)));
+			tree.clear();
+			for (int i = 0; i < snapshots.size(); i++) {
+				ITreeMap<Integer, String> snapshot = snapshots.get(i);
+				TreeMap<Integer, String> e = expected.get(i);
+				Assert.assertEquals(e.size(), snapshot.size());
+				Assert.assertEquals(new ArrayList<>(e.entrySet()), new ArrayList<>(snapshot.entrySet()));
+				for (int key = -1; key <= 2000; key += 7) {
+					Assert.assertEquals(e.get(key), snapshot.get(key));
+					Assert.assertEquals(e.floorKey(key), snapshot.floorKey(key));
+					Assert.assertEquals(e.ceilingKey(key), snapshot.ceilingKey(key));
+					Assert.assertEquals(e.headMap(key).size(), snapshot.rank(key));
+				}
+				if (!e.isEmpty())
+					Assert.assertEquals(e.lastKey(), snapshot.select(e.size() - 1).getKey());
+			}
+			try {
+				snapshots.get(0).put(1, "soso");
+				Assert.fail("Snapshot accepted a put");
+			} catch (RuntimeErrorException ex) {
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in persistent red black tree", e);
+		}
+	}
+
+	/**
+	 * Test the sharded map against java's TreeMap while its shards split and merge.
+	 */
+	@Test
+	public void testShardedTreeMap() {
+
+		ShardedTreeMap<Integer, String> map = new ShardedTreeMap<>(Arrays.asList(1000, 3000), null, 64);
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 100000; i++) {
+				int key = r.nextInt(5000);
+				if (r.nextInt(4) == 0) {
+					Assert.assertEquals(t.remove(key) != null, map.remove(key));
+				} else {
+					t.put(key, "soso" + i);
+					map.put(key, "soso" + i);
+				}
+			}
+			Assert.assertTrue(map.shardCount() > 3);
+			Assert.assertEquals(t.size(), map.size());
+			Assert.assertEquals(new ArrayList<>(t.entrySet()), new ArrayList<>(map.entrySet()));
+			Assert.assertEquals(t.firstKey(), map.firstKey());
+			Assert.assertEquals(t.lastKey(), map.lastKey());
+			for (int key = -1; key <= 5000; key += 3) {
+				Assert.assertEquals(t.get(key), map.get(key));
+				Assert.assertEquals(t.floorKey(key), map.floorKey(key));
+				Assert.assertEquals(t.ceilingKey(key), map.ceilingKey(key));
+				Assert.assertEquals(t.headMap(key).size(), map.rank(key));
+				Assert.assertEquals(t.subMap(key, true, key + 500, true).size(), map.countInRange(key, key + 500));
+			}
+			Assert.assertEquals(new ArrayList<>(t.headMap(2500, true).entrySet()), map.headMap(2500, true));
+			Assert.assertEquals(t.ceilingKey(2500), map.select(t.headMap(2500).size()).getKey());
+			Assert.assertEquals(t.pollLastEntry(), map.pollLastEntry());
+			int shards = map.shardCount();
+			while (t.size() > 10)
+				Assert.assertTrue(map.remove(t.pollFirstEntry().getKey()));
+			Assert.assertTrue(map.shardCount() < shards);
+			Assert.assertEquals(new ArrayList<>(t.entrySet()), new ArrayList<>(map.entrySet()));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in sharded tree map", e);
+		}
+	}
+
+	/**
+	 * Test that concurrent writers of the lock free map lose no updates and readers see stable keys.
+	 */
+	@Test
+	public void testLockFreeTreeMap() {
+
+		final ITreeMap<Integer, String> map = new LockFreeTreeMap<>();
+		try {
+			for (int i = 0; i < 1000; i++)
+				map.put(i * 8, "soso" + i * 8);
+			final AtomicInteger misses = new AtomicInteger();
+			Thread[] writers = new Thread[4];
+			final List<TreeMap<Integer, String>> expected = new ArrayList<>();
+			for (int w = 0; w < writers.length; w++) {
+				final int id = w;
+				final TreeMap<Integer, String> t = new TreeMap<>();
+				expected.add(t);
+				writers[w] = new Thread(new Runnable() {
+					public void run() {
+						Random r = new Random();
+						for (int i = 0; i < 20000; i++) {
+							int key = r.nextInt(1000) * 8 + id + 1;
+							if (r.nextBoolean()) {
+								map.put(key, "soso" + i);
+								t.put(key, "soso" + i);
+							} else if ((t.remove(key) != null) != map.remove(key)) {
+								misses.incrementAndGet();
+							}
+							int stable = r.nextInt(1000) * 8;
+							if (!("soso" + stable).equals(map.get(stable)) || map.floorKey(stable) != stable)
+								misses.incrementAndGet();
+						}
+					}
+				});
+				writers[w].start();
+			}
+			for (Thread writer : writers)
+				writer.join();
+			Assert.assertEquals(0, misses.get());
+			TreeMap<Integer, String> all = new TreeMap<>();
+			for (int i = 0; i < 1000; i++)
+				all.put(i * 8, "soso" + i * 8);
+			for (TreeMap<Integer, String> t : expected)
+				all.putAll(t);
+			Assert.assertEquals(new ArrayList<>(all.entrySet()), new ArrayList<>(map.entrySet()));
+			Assert.assertEquals(all.size(), map.size());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in lock free tree map", e);
+		}
+	}
+
+	/**
+	 * Test batches of puts and removes, with repeated keys, against applying them one by one.
+	 */
+	@Test
+	public void testApplyBatch() {
+
+		eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> map = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+		IRedBlackTree<Integer, String> persistent = new PersistentRedBlackTree<>();
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int round = 0; round < 50; round++) {
+				List<Op<Integer, String>> ops = new ArrayList<>();
+				List<String> expected = new ArrayList<>();
+				int batch = r.nextInt(3000);
+				for (int i = 0; i < batch; i++) {
+					int key = r.nextInt(5000);
+					if (r.nextInt(3) == 0) {
+						ops.add(Op.<Integer, String>remove(key));
+						expected.add(t.remove(key));
+					} else {
+						ops.add(Op.put(key, "soso" + round + "_" + i));
+						expected.add(t.put(key, "soso" + round + "_" + i));
+					}
+				}
+				Assert.assertEquals(expected, map.applyBatch(ops));
+				Assert.assertEquals(expected, persistent.applyBatch(ops));
+				Assert.assertEquals(t.size(), map.size());
+				Assert.assertTrue(verifyProps(map.tree().getRoot()));
+				Assert.assertTrue(verifyProps(persistent.getRoot()));
+				Assert.assertEquals(t.isEmpty() ? null : t.firstKey(), map.firstKey());
+				Assert.assertEquals(t.isEmpty() ? null : t.lastKey(), map.lastKey());
+			}
+			Assert.assertEquals(new ArrayList<>(t.values()), new ArrayList<>(map.values()));
+			Assert.assertEquals(t.size(), map.rank(Integer.MAX_VALUE));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in apply batch", e);
+		}
+	}
+
+	/**
+	 * Test streaming the map, sequentially, in parallel and through repeated splits.
+	 */
+	@Test
+	public void testStream() {
+
+		try {
+			Random r = new Random();
+			for (int n : new int[] {0, 1, 2, 3, 17, 1000, 50000}) {
+				Comparator<Integer> order = n % 2 == 0 ? null : Collections.<Integer>reverseOrder();
+				eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, Integer> map = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>(order);
+				TreeMap<Integer, Integer> t = new TreeMap<>(order);
+				while (t.size() < n) {
+					int key = r.nextInt();
+					map.put(key, key % 1000);
+					t.put(key, key % 1000);
+				}
+				List<Integer> keys = new ArrayList<>(t.keySet());
+				Assert.assertEquals(keys, map.stream().map(Entry::getKey).collect(Collectors.toList()));
+				Assert.assertEquals(keys, map.parallelStream().map(Entry::getKey).collect(Collectors.toList()));
+				long sum = 0;
+				for (int value : t.values()) {
+					sum += value;
+				}
+				Assert.assertEquals(sum, map.parallelStream().mapToLong(Entry::getValue).sum());
+				Assert.assertEquals(n, map.parallelStream().count());
+
+				Spliterator<Entry<Integer, Integer>> whole = map.tree().spliterator();
+				Assert.assertTrue(whole.hasCharacteristics(Spliterator.SORTED | Spliterator.SIZED | Spliterator.SUBSIZED));
+				Assert.assertEquals(n, whole.getExactSizeIfKnown());
+				List<Integer> collected = new ArrayList<>();
+				Spliterator<Entry<Integer, Integer>> rest = whole;
+				if (n > 0) {
+					Assert.assertTrue(rest.tryAdvance(e -> collected.add(e.getKey())));
+				}
+				Deque<Spliterator<Entry<Integer, Integer>>> pending = new ArrayDeque<>();
+				pending.push(rest);
+				while (!pending.isEmpty()) {
+					Spliterator<Entry<Integer, Integer>> part = pending.pop();
+					long size = part.estimateSize();
+					Spliterator<Entry<Integer, Integer>> prefix = r.nextInt(4) == 0 ? null : part.trySplit();
+					if (prefix == null) {
+						int before = collected.size();
+						if (size > 0 && r.nextBoolean()) {
+							Assert.assertTrue(part.tryAdvance(e -> collected.add(e.getKey())));
+						}
+						part.forEachRemaining(e -> collected.add(e.getKey()));
+						Assert.assertEquals(size, collected.size() - before);
+						Assert.assertFalse(part.tryAdvance(e -> collected.add(e.getKey())));
+					} else {
+						Assert.assertEquals(size, prefix.estimateSize() + part.estimateSize());
+						Assert.assertTrue(prefix.estimateSize() > 0 && part.estimateSize() > 0);
+						pending.push(part);
+						pending.push(prefix);
+					}
+				}
+				Assert.assertEquals(keys, collected);
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in stream", e);
+		}
+	}
+
+	/**
+	 * Test the join based union, intersection and difference, and splitting and joining whole trees.
+	 */
+	@Test
+	public void testSetOperations() {
+
+		try {
+			Random r = new Random();
+			int[][] sizes = {{0, 0}, {0, 100}, {100, 0}, {1, 1}, {5, 3000}, {3000, 5}, {2000, 2000}, {20000, 15000}, {100, 60000}};
+			for (int[] pair : sizes) {
+				for (int operation = 0; operation < 3; operation++) {
+					eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> a = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+					eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> b = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+					TreeMap<Integer, String> ta = new TreeMap<>();
+					TreeMap<Integer, String> tb = new TreeMap<>();
+					int range = 2 * (pair[0] + pair[1]) + 1;
+					while (ta.size() < pair[0]) {
+						int key = r.nextInt(range);
+						a.put(key, "a" + key);
+						ta.put(key, "a" + key);
+					}
+					while (tb.size() < pair[1]) {
+						int key = r.nextInt(range);
+						b.put(key, "b" + key);
+						tb.put(key, "b" + key);
+					}
+					if (operation == 0) {
+						a.union(b, (x, y) -> Integer.parseInt(x.substring(1)) % 5 == 0 ? null : x + y);
+						for (Entry<Integer, String> entry : tb.entrySet()) {
+							String old = ta.get(entry.getKey());
+							if (old == null) {
+								ta.put(entry.getKey(), entry.getValue());
+							} else if (entry.getKey() % 5 == 0) {
+								ta.remove(entry.getKey());
+							} else {
+								ta.put(entry.getKey(), old + entry.getValue());
+							}
+						}
+					} else if (operation == 1) {
+						a.intersect(b, (x, y) -> y + x);
+						ta.keySet().retainAll(tb.keySet());
+						for (Entry<Integer, String> entry : ta.entrySet()) {
+							entry.setValue(tb.get(entry.getKey()) + entry.getValue());
+						}
+					} else {
+						a.difference(b);
+						ta.keySet().removeAll(tb.keySet());
+					}
+					Assert.assertEquals(new ArrayList<>(ta.entrySet()), new ArrayList<>(a.entrySet()));
+					Assert.assertEquals(new ArrayList<>(tb.entrySet()), new ArrayList<>(b.entrySet()));
+					Assert.assertEquals(ta.size(), a.size());
+					Assert.assertTrue(verifyProps(a.tree().getRoot()));
+					Assert.assertTrue(verifyLinks(a.tree().getRoot()));
+					Assert.assertEquals(ta.isEmpty() ? null : ta.firstKey(), a.firstKey());
+					Assert.assertEquals(ta.isEmpty() ? null : ta.lastKey(), a.lastKey());
+					for (int i = 0; i < 50 && !ta.isEmpty(); i++) {
+						int key = r.nextInt(range);
+						Assert.assertEquals(ta.headMap(key).size(), a.rank(key));
+						Assert.assertEquals(ta.containsKey(key), a.remove(key));
+						ta.remove(key);
+					}
+					Assert.assertTrue(verifyProps(a.tree().getRoot()));
+				}
+			}
+			eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> self = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+			for (int i = 0; i < 10000; i++) {
+				self.put(i, "" + i);
+			}
+			self.union(self, (x, y) -> x + y);
+			Assert.assertEquals(10000, self.size());
+			Assert.assertEquals("99999999", self.get(9999));
+			Assert.assertTrue(verifyProps(self.tree().getRoot()));
+
+			RedBlackTree<Integer, String> tree = new RedBlackTree<>();
+			for (int i = 0; i < 5000; i++) {
+				tree.insert(r.nextInt(10000), "soso");
+			}
+			int size = tree.size();
+			for (int i = 0; i < 20; i++) {
+				int key = r.nextInt(12000) - 1000;
+				int rank = tree.rank(key, true);
+				RedBlackTree<Integer, String> greater = tree.split(key);
+				Assert.assertEquals(rank, tree.size());
+				Assert.assertEquals(size - rank, greater.size());
+				Assert.assertTrue(verifyProps(tree.getRoot()) && verifyLinks(tree.getRoot()));
+				Assert.assertTrue(verifyProps(greater.getRoot()) && verifyLinks(greater.getRoot()));
+				if (!greater.isEmpty()) {
+					Assert.assertTrue(greater.first().getKey() > key);
+				}
+				tree.join(greater);
+				Assert.assertTrue(greater.isEmpty());
+				Assert.assertEquals(size, tree.size());
+				Assert.assertTrue(verifyProps(tree.getRoot()) && verifyLinks(tree.getRoot()));
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in set operations", e);
+		}
+	}
+
+	/**
+	 * Test the network server through single calls and pipelines against java's TreeMap.
+	 */
+	@Test
+	public void testTreeMapServer() {
+
+		try (TreeMapServer server = new TreeMapServer(new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<String, String>(), 0)) {
+			server.start();
+			TreeMap<String, String> t = new TreeMap<>();
+			Random r = new Random();
+			try (TreeMapClient client = new TreeMapClient("127.0.0.1", server.getPort())) {
+				Assert.assertNull(client.firstEntry());
+				for (int i = 0; i < 500; i++) {
+					String key = "k" + r.nextInt(300);
+					String value = "soso" + i;
+					Assert.assertEquals(t.put(key, value), client.put(key, value));
+					key = "k" + r.nextInt(300);
+					Assert.assertEquals(t.get(key), client.get(key));
+					Assert.assertEquals(t.containsKey(key), client.containsKey(key));
+					Assert.assertEquals(t.ceilingEntry(key), client.ceilingEntry(key));
+					Assert.assertEquals(t.floorEntry(key), client.floorEntry(key));
+					if (i % 5 == 0) {
+						Assert.assertEquals(t.remove(key) != null, client.remove(key));
+					}
+				}
+				Assert.assertEquals(t.size(), client.size());
+				Assert.assertEquals(t.firstEntry(), client.firstEntry());
+				Assert.assertEquals(t.lastEntry(), client.lastEntry());
+				Assert.assertEquals(new ArrayList<>(t.headMap("k150", true).entrySet()), client.headMap("k150", true));
+				Assert.assertEquals(new ArrayList<>(t.headMap("k150").entrySet()).subList(0, 10), client.headMap("k150", false).subList(0, 10));
+				Assert.assertEquals(new ArrayList<>(t.tailMap("k2").entrySet()).subList(0, 7), client.scan("k2", 7));
+
+				TreeMapClient.Pipeline pipeline = client.pipeline();
+				List<Object> expected = new ArrayList<>();
+				for (int i = 0; i < 5000; i++) {
+					String key = "k" + r.nextInt(300);
+					switch (r.nextInt(4)) {
+						case 0:
+							pipeline.put(key, "p" + i);
+							expected.add(t.put(key, "p" + i));
+							break;
+						case 1:
+							pipeline.remove(key);
+							expected.add(t.remove(key) != null);
+							break;
+						case 2:
+							pipeline.get(key);
+							expected.add(t.get(key));
+							break;
+						default:
+							pipeline.ceilingEntry(key);
+							expected.add(t.ceilingEntry(key));
+					}
+				}
+				pipeline.size();
+				expected.add(t.size());
+				Assert.assertEquals(expected, pipeline.sync());
+
+				char[] big = new char[300000];
+				Arrays.fill(big, 'x');
+				client.put("big", new String(big));
+				Assert.assertEquals(new String(big), client.get("big"));
+				try {
+					client.scan("k", -1);
+					Assert.fail("Negative scan should fail");
+				} catch (RuntimeErrorException e) {
+					Assert.assertEquals("Can't scan a negative number of entries", e.getTargetError().getMessage());
+				}
+				for (int i = 0; i < 60; i++)
+					client.put("z" + i, new String(big));
+				try {
+					client.headMap("zz", true);
+					Assert.fail("A head map larger than a frame should fail");
+				} catch (RuntimeErrorException e) {
+				}
+				Assert.assertEquals(10, client.scan("z", 10).size());
+				Assert.assertEquals(t.size() + 61, client.size());
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in tree map server", e);
+		}
+	}
+
+	/**
+	 * Test reads at pinned timestamps, reclamation, and stable scans while a writer keeps going.
+	 */
+	@Test
+	public void testVersionedTreeMap() {
+
+		try {
+			VersionedTreeMap<Integer, String> map = new VersionedTreeMap<>();
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			long firstPin = map.pin();
+			TreeMap<Integer, String> atFirstPin = new TreeMap<>(t);
+			for (int i = 0; i < 20000; i++) {
+				int key = r.nextInt(1000);
+				switch (r.nextInt(6)) {
+					case 0:
+						Assert.assertEquals(t.remove(key) != null, map.remove(key));
+						break;
+					case 1:
+						Assert.assertEquals(t.ceilingEntry(key), map.ceilingEntry(key));
+						Assert.assertEquals(t.floorEntry(key), map.floorEntry(key));
+						break;
+					case 2:
+						Assert.assertEquals(t.headMap(key).size(), map.rank(key));
+						break;
+					default:
+						t.put(key, "soso" + i);
+						map.put(key, "soso" + i);
+				}
+				Assert.assertEquals(t.get(key), map.get(key));
+				if (i == 5000) {
+					atFirstPin = new TreeMap<>(t);
+					map.unpin(firstPin);
+					firstPin = map.pin();
+				}
+			}
+			Assert.assertEquals(t.size(), map.size());
+			Assert.assertEquals(new ArrayList<>(t.entrySet()), new ArrayList<>(map.entrySet()));
+			Assert.assertEquals(t.firstEntry(), map.firstEntry());
+			Assert.assertEquals(t.lastEntry(), map.lastEntry());
+			Assert.assertEquals(t.pollFirstEntry(), map.pollFirstEntry());
+			Assert.assertEquals(new ArrayList<>(t.headMap(500, true).entrySet()), map.headMap(500, true));
+
+			List<Entry<Integer, String>> old = new ArrayList<>();
+			for (Iterator<Entry<Integer, String>> range = map.range(null, null, firstPin); range.hasNext(); ) {
+				old.add(range.next());
+			}
+			Assert.assertEquals(new ArrayList<>(atFirstPin.entrySet()), old);
+			for (int key = 0; key < 1000; key += 7) {
+				Assert.assertEquals(atFirstPin.get(key), map.get(key, firstPin));
+				Assert.assertEquals(atFirstPin.ceilingEntry(key), map.ceilingEntry(key, firstPin));
+			}
+			map.unpin(firstPin);
+			map.put(-1, "soso");
+			t.put(-1, "soso");
+			map.reclaim();
+			Assert.assertEquals(t.size(), map.versions());
+			try {
+				map.get(1, firstPin);
+				Assert.fail("Reading a reclaimed timestamp should fail");
+			} catch (RuntimeErrorException e) {
+			}
+
+			final VersionedTreeMap<Integer, Integer> accounts = new VersionedTreeMap<>();
+			for (int i = 0; i < 100; i++) {
+				accounts.put(i, 1000);
+			}
+			final AtomicBoolean stop = new AtomicBoolean();
+			final AtomicInteger failures = new AtomicInteger();
+			Thread writer = new Thread(() -> {
+				Random random = new Random();
+				while (!stop.get()) {
+					int from = random.nextInt(100);
+					int to = random.nextInt(100);
+					if (from == to) {
+						continue;
+					}
+					int amount = random.nextInt(10);
+					accounts.applyBatch(Arrays.asList(Op.put(from, accounts.get(from) - amount), Op.put(to, accounts.get(to) + amount)));
+				}
+			});
+			writer.start();
+			long end = System.currentTimeMillis() + 1000;
+			int scans = 0;
+			while (System.currentTimeMillis() < end) {
+				long timestamp = accounts.pin();
+				try {
+					long total = 0;
+					for (Iterator<Entry<Integer, Integer>> range = accounts.range(null, null, timestamp); range.hasNext(); ) {
+						total += range.next().getValue();
+						Thread.yield();
+					}
+					if (total != 100000 || !accounts.get(50, timestamp).equals(accounts.get(50, timestamp))) {
+						failures.incrementAndGet();
+					}
+				} finally {
+					accounts.unpin(timestamp);
+				}
+				scans++;
+			}
+			stop.set(true);
+			writer.join();
+			Assert.assertEquals(0, failures.get());
+			Assert.assertTrue(scans > 0);
+			accounts.reclaim();
+			Assert.assertEquals(100, accounts.versions());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in versioned tree map", e);
+		}
+	}
+
+	/**
+	 * Test the asynchronous map from several threads, in per thread order, and after closing.
+	 */
+	@Test
+	public void testAsyncTreeMap() {
+
+		try {
+			final AsyncTreeMap<Integer, String> map = new AsyncTreeMap<>();
+			final int threads = 4;
+			final int perThread = 20000;
+			final AtomicInteger failures = new AtomicInteger();
+			Thread[] workers = new Thread[threads];
+			for (int w = 0; w < threads; w++) {
+				final int id = w;
+				workers[w] = new Thread(() -> {
+					List<CompletableFuture<String>> reads = new ArrayList<>();
+					for (int i = 0; i < perThread; i++) {
+						int key = i * threads + id;
+						map.put(key, "soso" + key);
+						if (i % 3 == 0) {
+							map.remove(key);
+						}
+						reads.add(map.get(key));
+					}
+					for (int i = 0; i < perThread; i++) {
+						int key = i * threads + id;
+						String expected = i % 3 == 0 ? null : "soso" + key;
+						if (!Objects.equals(expected, reads.get(i).join())) {
+							failures.incrementAndGet();
+						}
+					}
+				});
+				workers[w].start();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+			Assert.assertEquals(0, failures.get());
+			int expectedSize = threads * (perThread - (perThread + 2) / 3);
+			Assert.assertEquals(expectedSize, map.size().join().intValue());
+			Assert.assertEquals("soso4", map.put(4, "x").join());
+			Assert.assertNull(map.put(-1, "x").join());
+			Assert.assertTrue(map.remove(-1).join());
+			Assert.assertFalse(map.remove(-1).join());
+			Assert.assertEquals(Integer.valueOf(threads), map.firstEntry().join().getKey());
+			Assert.assertEquals(Integer.valueOf(threads * perThread - 1), map.lastEntry().join().getKey());
+			Assert.assertEquals(Integer.valueOf(expectedSize), map.submit(ITreeMap::size).join());
+			Assert.assertTrue(isFailed(map.get(null)));
+			Assert.assertTrue(isFailed(map.submit(m -> {
+				throw new AssertionError();
+			})));
+			Assert.assertEquals(expectedSize, map.size().join().intValue());
+			map.close();
+			Assert.assertTrue(isFailed(map.get(1)));
+			AsyncTreeMap<Integer, String> strict = new AsyncTreeMap<>((a, b) -> {
+				if (a == -5 || b == -5)
+					throw new StackOverflowError();
+				return a.compareTo(b);
+			});
+			strict.put(1, "soso").join();
+			Assert.assertTrue(isFailed(strict.put(-5, "soso")));
+			Assert.assertEquals("soso", strict.get(1).join());
+			strict.close();
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in async tree map", e);
+		}
+	}
+
+	private static boolean isFailed(CompletableFuture<?> future) {
+		try {
+			future.join();
+			return false;
+		} catch (CompletionException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Stress the lock coupled tree with writers on their own key ranges and on a shared one,
+	 * then check the red black properties and every writer's keys.
+	 */
+	@Test
+	public void testLockCouplingRedBlackTree() {
+
+		final IRedBlackTree<Integer, String> tree = new LockCouplingRedBlackTree<>();
+		try {
+			final int writers = 4;
+			final int range = 5000;
+			final List<TreeMap<Integer, String>> expected = new ArrayList<>();
+			for (int w = 0; w < writers; w++)
+				expected.add(new TreeMap<Integer, String>());
+			for (int round = 0; round < 3; round++) {
+				final AtomicInteger failures = new AtomicInteger();
+				Thread[] threads = new Thread[writers + 1];
+				for (int w = 0; w < writers; w++) {
+					final TreeMap<Integer, String> own = expected.get(w);
+					final int base = w * range;
+					threads[w] = new Thread(new Runnable() {
+						public void run() {
+							Random r = new Random();
+							for (int i = 0; i < 50000; i++) {
+								int key = base + r.nextInt(range);
+								int shared = -1 - r.nextInt(range);
+								switch (r.nextInt(4)) {
+								case 0:
+									if ((own.remove(key) != null) != tree.delete(key))
+										failures.incrementAndGet();
+									tree.delete(shared);
+									break;
+								case 1:
+									if (!String.valueOf(own.get(key)).equals(String.valueOf(tree.search(key))))
+										failures.incrementAndGet();
+									break;
+								default:
+									own.put(key, "soso" + i);
+									tree.insert(key, "soso" + i);
+									tree.insert(shared, "soso" + i);
+								}
+							}
+						}
+					});
+				}
+				threads[writers] = new Thread(new Runnable() {
+					public void run() {
+						Random r = new Random();
+						for (int i = 0; i < 100000; i++)
+							tree.contains(r.nextInt(writers * range * 2) - writers * range);
+					}
+				});
+				for (Thread thread : threads)
+					thread.start();
+				for (Thread thread : threads) {
+					thread.join(60000);
+					Assert.assertFalse("Deadlocked", thread.isAlive());
+				}
+				Assert.assertEquals(0, failures.get());
+				Assert.assertTrue(verifyProps(tree.getRoot()));
+				for (int w = 0; w < writers; w++)
+					for (int key = w * range; key < (w + 1) * range; key++)
+						Assert.assertEquals(expected.get(w).get(key), tree.search(key));
+				for (int key = -range; key < 0; key++)
+					tree.delete(key);
+				Assert.assertTrue(verifyProps(tree.getRoot()));
+			}
+			final AtomicInteger torn = new AtomicInteger();
+			Thread[] batchers = new Thread[writers];
+			for (int w = 0; w < writers; w++) {
+				final String name = "t" + w;
+				batchers[w] = new Thread(() -> {
+					for (int i = 0; i < 20000; i++) {
+						List<String> previous = tree.applyBatch(Arrays.asList(Op.put(0, name + i), Op.<Integer, String>remove(0)));
+						if (previous.get(0) != null || !(name + i).equals(previous.get(1)))
+							torn.incrementAndGet();
+					}
+				});
+				batchers[w].start();
+			}
+			for (Thread batcher : batchers) {
+				batcher.join(60000);
+				Assert.assertFalse("Deadlocked", batcher.isAlive());
+			}
+			Assert.assertEquals(0, torn.get());
+			tree.clear();
+			Assert.assertTrue(tree.isEmpty());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in lock coupling red black tree", e);
+		}
+	}
+
+	/**
+	 * Test that entrySet, keySet and values are live views of the map.
+	 */
+	@Test
+	public void testLiveViews() {
+
+		eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> map = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Set<Entry<Integer, String>> entries = map.entrySet();
+			Set<Integer> keys = map.keySet();
+			Collection<String> values = map.values();
+			Assert.assertTrue(entries.isEmpty() && keys.isEmpty() && values.isEmpty());
+			Random r = new Random();
+			for (int i = 0; i < 10000; i++) {
+				int key = r.nextInt(20000);
+				t.put(key, "soso" + key);
+				map.put(key, "soso" + key);
+			}
+			Assert.assertEquals(t.size(), entries.size());
+			Assert.assertEquals(new ArrayList<>(t.entrySet()), new ArrayList<>(entries));
+			Assert.assertEquals(new ArrayList<>(t.keySet()), new ArrayList<>(keys));
+			Assert.assertEquals(new ArrayList<>(t.values()), new ArrayList<>(values));
+			Assert.assertEquals(t.entrySet(), entries);
+			Assert.assertEquals(t.keySet(), keys);
+			for (int key = -1; key <= 20000; key++) {
+				Assert.assertEquals(t.containsKey(key), keys.contains(key));
+				Assert.assertEquals(t.containsKey(key), entries.contains(new java.util.AbstractMap.SimpleEntry<>(key, "soso" + key)));
+				Assert.assertFalse(entries.contains(new java.util.AbstractMap.SimpleEntry<>(key, "other")));
+			}
+			Assert.assertFalse(keys.contains("soso"));
+			Assert.assertFalse(keys.contains(null));
+			for (Iterator<Integer> it = keys.iterator(); it.hasNext();) {
+				int key = it.next();
+				if (key % 3 == 0) {
+					it.remove();
+					t.remove(key);
+				}
+			}
+			Assert.assertTrue(keys.remove(t.firstKey()));
+			Assert.assertTrue(entries.remove(t.pollLastEntry()));
+			t.remove(t.firstKey());
+			Assert.assertEquals(t.size(), map.size());
+			Assert.assertEquals(new ArrayList<>(t.entrySet()), new ArrayList<>(entries));
+			Assert.assertTrue(verifyProps(map.tree().getRoot()));
+			values.clear();
+			Assert.assertTrue(map.size() == 0 && entries.isEmpty());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in live views", e);
+		}
+	}
+
+	/**
+	 * Test the parent linked node iterator both ways against java's TreeMap.
+	 */
+	@Test
+	public void testNodeIterator() {
+
+		RedBlackTree<Integer, String> tree = new RedBlackTree<>();
+		try {
+			Assert.assertFalse(new NodeIterator<>(tree.first(), false).hasNext());
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 10000; i++) {
+				int key = r.nextInt(100000);
+				t.put(key, "soso" + key);
+				tree.insert(key, "soso" + key);
+			}
+			List<Integer> ascending = new ArrayList<>();
+			for (NodeIterator<Integer, String> nodes = new NodeIterator<>(tree.first(), false); nodes.hasNext();)
+				ascending.add(nodes.next().getKey());
+			Assert.assertEquals(new ArrayList<>(t.keySet()), ascending);
+			List<Integer> descending = new ArrayList<>();
+			for (NodeIterator<Integer, String> nodes = new NodeIterator<>(tree.last(), true); nodes.hasNext();)
+				descending.add(nodes.next().getKey());
+			Assert.assertEquals(new ArrayList<>(t.descendingKeySet()), descending);
+			NodeIterator<Integer, String> nodes = new NodeIterator<>(tree.first(), false);
+			nodes.skipTo(tree.last());
+			Assert.assertEquals(t.lastKey(), nodes.next().getKey());
+			Assert.assertFalse(nodes.hasNext());
+			try {
+				nodes.next();
+				Assert.fail();
+			} catch (java.util.NoSuchElementException e) {
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in node iterator", e);
+		}
+	}
+
+	/**
+	 * Test the range views against java's TreeMap, reading and writing through them.
+	 */
+	@Test
+	public void testRangeViews() {
+
+		eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> map = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 5000; i++) {
+				int key = r.nextInt(10000);
+				t.put(key, "soso" + key);
+				map.put(key, "soso" + key);
+			}
+			for (int i = 0; i < 200; i++) {
+				int from = r.nextInt(11000) - 500;
+				int to = from + r.nextInt(3000);
+				boolean fromInclusive = r.nextBoolean();
+				boolean toInclusive = r.nextBoolean();
+				SortedMap<Integer, String> view = map.subMap(from, fromInclusive, to, toInclusive);
+				NavigableMap<Integer, String> real = t.subMap(from, fromInclusive, to, toInclusive);
+				Assert.assertEquals(real.size(), view.size());
+				Assert.assertEquals(new ArrayList<>(real.entrySet()), new ArrayList<>(view.entrySet()));
+				Assert.assertEquals(real, view);
+				if (!real.isEmpty()) {
+					Assert.assertEquals(real.firstKey(), view.firstKey());
+					Assert.assertEquals(real.lastKey(), view.lastKey());
+				}
+				Assert.assertEquals(new ArrayList<>(t.tailMap(from, fromInclusive).entrySet()), new ArrayList<>(map.tailMap(from, fromInclusive).entrySet()));
+				Assert.assertEquals(t.headMap(to, toInclusive).size(), map.headMapView(to, toInclusive).size());
+				Assert.assertEquals(t.headMap(to, toInclusive).keySet(), map.headMapView(to, toInclusive).keySet());
+				for (int key = from - 2; key <= to + 2; key += 7)
+					Assert.assertEquals(real.get(key), view.get(key));
+			}
+			SortedMap<Integer, String> view = map.subMap(2000, true, 4000, false);
+			NavigableMap<Integer, String> real = t.subMap(2000, true, 4000, false);
+			Assert.assertEquals(real.put(3000, "changed"), view.put(3000, "changed"));
+			Assert.assertEquals(real.remove(3001), view.remove(3001));
+			Assert.assertNull(view.remove(5000));
+			map.put(3500, "outside");
+			t.put(3500, "outside");
+			Assert.assertEquals("outside", view.get(3500));
+			for (Iterator<Integer> it = view.keySet().iterator(); it.hasNext();)
+				if (it.next() % 2 == 0)
+					it.remove();
+			real.keySet().removeIf(key -> key % 2 == 0);
+			Assert.assertEquals(t.size(), map.size());
+			Assert.assertEquals(new ArrayList<>(t.entrySet()), new ArrayList<>(map.entrySet()));
+			Assert.assertEquals(real.headMap(3000).tailMap(2500), view.headMap(3000).tailMap(2500));
+			Assert.assertEquals(real.subMap(2100, 2200), view.subMap(2100, 2200));
+			try {
+				view.put(4000, "soso");
+				Assert.fail();
+			} catch (RuntimeErrorException e) {
+			}
+			try {
+				view.tailMap(1000);
+				Assert.fail();
+			} catch (RuntimeErrorException e) {
+			}
+			SortedMap<Integer, String> open = map.subMap(2100, false, 2200, false);
+			NavigableMap<Integer, String> realOpen = t.subMap(2100, false, 2200, false);
+			Assert.assertEquals(realOpen.headMap(2200), open.headMap(2200));
+			Assert.assertEquals(realOpen.subMap(2150, 2200), open.subMap(2150, 2200));
+			try {
+				open.tailMap(2100);
+				Assert.fail();
+			} catch (RuntimeErrorException e) {
+			}
+			try {
+				open.subMap(2100, 2150);
+				Assert.fail();
+			} catch (RuntimeErrorException e) {
+			}
+			try {
+				open.tailMap(2200);
+				Assert.fail();
+			} catch (RuntimeErrorException e) {
+			}
+			view.clear();
+			real.clear();
+			Assert.assertTrue(view.isEmpty());
+			Assert.assertEquals(t.size(), map.size());
+			Assert.assertTrue(verifyProps(map.tree().getRoot()));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in range views", e);
+		}
+	}
+
+	/**
+	 * Test that map and range view iterators fail fast on changes made around them.
+	 */
+	@Test
+	public void testFailFastIterators() {
+		try {
+			eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> map = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+			for (int key = 0; key < 100; key++)
+				map.put(key, "soso" + key);
+			Iterator<Entry<Integer, String>> entries = map.entrySet().iterator();
+			entries.next();
+			map.put(1000, "new");
+			try {
+				entries.next();
+				Assert.fail();
+			} catch (ConcurrentModificationException e) {
+			}
+			Iterator<Integer> keys = map.subMap(10, true, 50, false).keySet().iterator();
+			keys.next();
+			map.remove(30);
+			try {
+				keys.next();
+				Assert.fail();
+			} catch (ConcurrentModificationException e) {
+			}
+			Iterator<String> values = map.values().iterator();
+			values.next();
+			map.put(0, "replaced");
+			Assert.assertEquals("soso1", values.next());
+			values.remove();
+			Assert.assertEquals("soso2", values.next());
+			map.clear();
+			try {
+				values.remove();
+				Assert.fail();
+			} catch (ConcurrentModificationException e) {
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in fail fast iterators", e);
+		}
+	}
+
+	/**
+	 * Test that entries of the map's entry sets write through, and that detached entries refuse a value.
+	 */
+	@Test
+	public void testEntrySetValue() {
+		try {
+			eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String> map = new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<>();
+			for (int key = 0; key < 100; key++)
+				map.put(key, "soso" + key);
+			for (Entry<Integer, String> entry : map.entrySet())
+				Assert.assertEquals("soso" + entry.getKey(), entry.setValue("new" + entry.getKey()));
+			for (Entry<Integer, String> entry : map.subMap(10, true, 20, false).entrySet())
+				Assert.assertEquals("new" + entry.getKey(), entry.setValue("sub" + entry.getKey()));
+			for (int key = 0; key < 100; key++)
+				Assert.assertEquals((key >= 10 && key < 20 ? "sub" : "new") + key, map.get(key));
+			try {
+				map.firstEntry().setValue("soso");
+				Assert.fail();
+			} catch (RuntimeErrorException e) {
+			}
+			Assert.assertEquals("new0", map.get(0));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in entry set value", e);
+		}
+	}
+
+	/**
+	 * Test that writing to the root of an empty tree can't change the leaf shared by every tree.
+	 */
+	@Test
+	public void testSharedSentinel() {
+		try {
+			RedBlackTree<Integer, String> empty = new RedBlackTree<>();
+			RedBlackTree<Integer, String> other = new RedBlackTree<>();
+			INode<Integer, String> root = empty.getRoot();
+			root.setColor(INode.RED);
+			root.setKey(5);
+			root.setValue("soso");
+			root.setParent(new Node<>(1, "soso", INode.BLACK, null, null, null));
+			root.setLeftChild(new Node<>(1, "soso", INode.BLACK, null, null, null));
+			Assert.assertTrue(root.isNull());
+			Assert.assertEquals(INode.BLACK, root.getColor());
+			Assert.assertNull(root.getKey());
+			Assert.assertNull(root.getValue());
+			Assert.assertNull(root.getParent());
+			Assert.assertNull(root.getLeftChild());
+			for (int key = 0; key < 1000; key++)
+				other.insert(key, "soso" + key);
+			Assert.assertTrue(verifyProps(other.getRoot()));
+			Assert.assertTrue(empty.isEmpty());
+			Assert.assertNull(empty.search(5));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in shared sentinel", e);
+		}
+	}
+
+	/**
+	 * Test ceiling, floor, higher and lower of every map against java's TreeMap.
+	 */
+	@Test
+	public void testNavigation() {
+
+		try {
+			List<ITreeMap<Integer, String>> maps = Arrays.<ITreeMap<Integer, String>>asList(
+					new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, String>(),
+					new ConcurrentTreeMap<Integer, String>(), new ShardedTreeMap<Integer, String>(Arrays.asList(2500, 5000, 7500), null, 1 << 20),
+					new LockFreeTreeMap<Integer, String>(), new VersionedTreeMap<Integer, String>());
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 3000; i++) {
+				int key = r.nextInt(5000) * 2;
+				t.put(key, "soso" + key);
+				for (ITreeMap<Integer, String> map : maps)
+					map.put(key, "soso" + key);
+			}
+			for (ITreeMap<Integer, String> map : maps) {
+				for (int key = -3; key <= 10003; key++) {
+					Assert.assertEquals(t.ceilingKey(key), map.ceilingKey(key));
+					Assert.assertEquals(t.floorKey(key), map.floorKey(key));
+					Assert.assertEquals(t.higherKey(key), map.higherKey(key));
+					Assert.assertEquals(t.lowerKey(key), map.lowerKey(key));
+					Assert.assertEquals(t.ceilingEntry(key), map.ceilingEntry(key));
+					Assert.assertEquals(t.floorEntry(key), map.floorEntry(key));
+					Assert.assertEquals(t.higherEntry(key), map.higherEntry(key));
+					Assert.assertEquals(t.lowerEntry(key), map.lowerEntry(key));
+				}
+				try {
+					map.higherKey(null);
+					Assert.fail();
+				} catch (RuntimeErrorException e) {
+				}
+				try {
+					map.lowerEntry(null);
+					Assert.fail();
+				} catch (RuntimeErrorException e) {
+				}
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in navigation", e);
+		}
+	}
+
+	/**
+	 * Test that insert reports the old value, and compute, merge and putIfAbsent of every map against java's TreeMap.
+	 */
+	@Test
+	public void testComputeAndMerge() {
+
+		try {
+			List<IRedBlackTree<Integer, String>> trees = Arrays.<IRedBlackTree<Integer, String>>asList(
+					new RedBlackTree<Integer, String>(), new TopDownRedBlackTree<Integer, String>(),
+					new ArrayRedBlackTree<Integer, String>(), new PersistentRedBlackTree<Integer, String>(),
+					new LockCouplingRedBlackTree<Integer, String>());
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 5000; i++) {
+				int key = r.nextInt(2000);
+				String previous = t.put(key, "soso" + i);
+				for (IRedBlackTree<Integer, String> tree : trees)
+					Assert.assertEquals(previous, tree.insert(key, "soso" + i));
+			}
+			RedBlackTree<Integer, String> redBlackTree = (RedBlackTree<Integer, String>) trees.get(0);
+			for (int i = 0; i < 5000; i++) {
+				int key = r.nextInt(2000);
+				String value = r.nextBoolean() ? null : "soso" + i;
+				Assert.assertEquals(t.compute(key, (k, v) -> value), redBlackTree.compute(key, (k, v) -> value));
+			}
+			Assert.assertEquals(t.size(), redBlackTree.size());
+			Assert.assertTrue(verifyProps(redBlackTree.getRoot()));
+
+			List<ITreeMap<Integer, Integer>> maps = Arrays.<ITreeMap<Integer, Integer>>asList(
+					new eg.edu.alexu.csd.filestructure.redblacktree.TreeMap<Integer, Integer>(),
+					new ConcurrentTreeMap<Integer, Integer>(), new ShardedTreeMap<Integer, Integer>(Arrays.asList(500, 1000, 1500), null, 1 << 20),
+					new LockFreeTreeMap<Integer, Integer>(), new VersionedTreeMap<Integer, Integer>());
+			TreeMap<Integer, Integer> counts = new TreeMap<>();
+			for (int i = 0; i < 50000; i++) {
+				int key = r.nextInt(2000);
+				int delta = r.nextInt(7) - 3;
+				int op = r.nextInt(5);
+				Integer expected;
+				if (op == 0) {
+					expected = counts.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b);
+				} else if (op == 1) {
+					expected = counts.compute(key, (k, v) -> v == null ? k : (v > 1000 ? null : v + delta));
+				} else if (op == 2) {
+					expected = counts.computeIfAbsent(key, k -> delta < 0 ? null : k + delta);
+				} else if (op == 3) {
+					expected = counts.computeIfPresent(key, (k, v) -> delta == 0 ? null : v * 2);
+				} else {
+					expected = counts.putIfAbsent(key, delta);
+				}
+				for (ITreeMap<Integer, Integer> map : maps) {
+					Integer actual;
+					if (op == 0) {
+						actual = map.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b);
+					} else if (op == 1) {
+						actual = map.compute(key, (k, v) -> v == null ? k : (v > 1000 ? null : v + delta));
+					} else if (op == 2) {
+						actual = map.computeIfAbsent(key, k -> delta < 0 ? null : k + delta);
+					} else if (op == 3) {
+						actual = map.computeIfPresent(key, (k, v) -> delta == 0 ? null : v * 2);
+					} else {
+						actual = map.putIfAbsent(key, delta);
+					}
+					Assert.assertEquals(expected, actual);
+				}
+			}
+			for (ITreeMap<Integer, Integer> map : maps) {
+				Assert.assertEquals(counts.size(), map.size());
+				Assert.assertEquals(new ArrayList<>(counts.entrySet()), new ArrayList<>(map.entrySet()));
+				try {
+					map.compute(null, (k, v) -> v);
+					Assert.fail();
+				} catch (RuntimeErrorException e) {
+				}
+				try {
+					map.merge(1, null, (a, b) -> a);
+					Assert.fail();
+				} catch (RuntimeErrorException e) {
+				}
+			}
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in compute and merge", e);
+		}
+	}
+
+	/**
+	 * Test the long keyed tree against java's TreeMap.
+	 */
+	@Test
+	public void testLongRedBlackTree() {
+
+		ILongRedBlackTree<String> tree = new LongRedBlackTree<>();
+		try {
+			TreeMap<Long, String> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 100000; i++) {
+				long key = r.nextInt(10000) - 5000;
+				if (r.nextInt(3) == 0) {
+					Assert.assertEquals(t.remove(key) != null, tree.remove(key));
+				} else {
+					t.put(key, "soso" + i);
+					tree.put(key, "soso" + i);
+				}
+			}
+			Assert.assertEquals(t.size(), tree.size());
+			for (long key = -5001; key <= 5001; key++) {
+				Assert.assertEquals(t.get(key), tree.get(key));
+				Long ceil = t.ceilingKey(key);
+				Long floor = t.floorKey(key);
+				Assert.assertEquals(ceil == null ? Long.MAX_VALUE : ceil, tree.ceilingKey(key, Long.MAX_VALUE));
+				Assert.assertEquals(floor == null ? Long.MIN_VALUE : floor, tree.floorKey(key, Long.MIN_VALUE));
+				Assert.assertEquals(ceil == null ? null : t.get(ceil), tree.ceilingValue(key));
+				Assert.assertEquals(floor == null ? null : t.get(floor), tree.floorValue(key));
+				Long higher = t.higherKey(key);
+				Long lower = t.lowerKey(key);
+				Assert.assertEquals(higher == null ? Long.MAX_VALUE : higher, tree.higherKey(key, Long.MAX_VALUE));
+				Assert.assertEquals(lower == null ? Long.MIN_VALUE : lower, tree.lowerKey(key, Long.MIN_VALUE));
+				Assert.assertEquals(higher == null ? null : t.get(higher), tree.higherValue(key));
+				Assert.assertEquals(lower == null ? null : t.get(lower), tree.lowerValue(key));
+			}
+			Assert.assertEquals((long) t.firstKey(), tree.firstKey(Long.MAX_VALUE));
+			Assert.assertEquals((long) t.lastKey(), tree.lastKey(Long.MIN_VALUE));
+			Assert.assertEquals(t.firstEntry().getValue(), tree.firstValue());
+			Assert.assertEquals(t.lastEntry().getValue(), tree.lastValue());
+			PrimitiveIterator.OfLong keys = tree.keyIterator();
+			Iterator<String> values = tree.valueIterator();
+			for (Entry<Long, String> entry : t.entrySet()) {
+				Assert.assertEquals((long) entry.getKey(), keys.nextLong());
+				Assert.assertEquals(entry.getValue(), values.next());
+			}
+			Assert.assertFalse(keys.hasNext());
+			Assert.assertFalse(values.hasNext());
+			tree.clear();
+			Assert.assertEquals(-1L, tree.firstKey(-1L));
+			Assert.assertNull(tree.lastValue());
+			Assert.assertFalse(tree.keyIterator().hasNext());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in long red black tree", e);
+		}
+	}
+
+	/**
+	 * Test the int keyed tree, including the extreme keys, against java's TreeMap.
+	 */
+	@Test
+	public void testIntRedBlackTree() {
+
+		IIntRedBlackTree<String> tree = new IntRedBlackTree<>();
+		try {
+			TreeMap<Integer, String> t = new TreeMap<>();
+			Random r = new Random();
+			tree.put(Integer.MIN_VALUE, "min");
+			tree.put(Integer.MAX_VALUE, "max");
+			t.put(Integer.MIN_VALUE, "min");
+			t.put(Integer.MAX_VALUE, "max");
+			for (int i = 0; i < 100000; i++) {
+				int key = r.nextInt(10000) - 5000;
+				if (r.nextInt(3) == 0) {
+					Assert.assertEquals(t.remove(key) != null, tree.remove(key));
+				} else {
+					t.put(key, "soso" + i);
+					tree.put(key, "soso" + i);
+				}
+			}
+			Assert.assertEquals(t.size(), tree.size());
+			for (int key = -5001; key <= 5001; key++) {
+				Assert.assertEquals(t.get(key), tree.get(key));
+				Assert.assertEquals(t.containsKey(key), tree.contains(key));
+				Assert.assertEquals((int) t.ceilingKey(key), tree.ceilingKey(key, 0));
+				Assert.assertEquals((int) t.floorKey(key), tree.floorKey(key, 0));
+				Assert.assertEquals((int) t.higherKey(key), tree.higherKey(key, 0));
+				Assert.assertEquals((int) t.lowerKey(key), tree.lowerKey(key, 0));
+				Assert.assertEquals(t.ceilingEntry(key).getValue(), tree.ceilingValue(key));
+				Assert.assertEquals(t.lowerEntry(key).getValue(), tree.lowerValue(key));
+			}
+			Assert.assertEquals(Integer.MIN_VALUE, tree.firstKey(0));
+			Assert.assertEquals(Integer.MAX_VALUE, tree.lastKey(0));
+			Assert.assertEquals(42, tree.higherKey(Integer.MAX_VALUE, 42));
+			Assert.assertEquals(42, tree.lowerKey(Integer.MIN_VALUE, 42));
+			Assert.assertEquals("min", tree.firstValue());
+			Assert.assertEquals("max", tree.lastValue());
+			PrimitiveIterator.OfInt keys = tree.keyIterator();
+			Iterator<String> values = tree.valueIterator();
+			for (Entry<Integer, String> entry : t.entrySet()) {
+				Assert.assertEquals((int) entry.getKey(), keys.nextInt());
+				Assert.assertEquals(entry.getValue(), values.next());
+			}
+			Assert.assertFalse(keys.hasNext());
+			Assert.assertFalse(values.hasNext());
+			Assert.assertTrue(tree.remove(Integer.MIN_VALUE));
+			Assert.assertEquals(t.higherKey(Integer.MIN_VALUE), Integer.valueOf(tree.firstKey(0)));
+			tree.clear();
+			Assert.assertTrue(tree.isEmpty());
+			Assert.assertNull(tree.firstValue());
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in int red black tree", e);
+		}
+	}
+
+	/**
+	 * Test the ordering of negative, zero and special keys in the double keyed tree.
+	 */
+	@Test
+	public void testDoubleRedBlackTree() {
+
+		IDoubleRedBlackTree<String> tree = new DoubleRedBlackTree<>();
+		try {
+			double[] keys = {Double.NEGATIVE_INFINITY, -1e9, -2.5, -0.0, 0.0, 1e-300, 3.75, Double.POSITIVE_INFINITY};
+			for (int i = keys.length - 1; i >= 0; i--)
+				tree.put(keys[i], "soso" + i);
+			for (int i = 0; i < keys.length; i++) {
+				Assert.assertEquals("soso" + i, tree.get(keys[i]));
+				Assert.assertEquals(Double.valueOf(keys[i]), Double.valueOf(tree.ceilingKey(keys[i], Double.NaN)));
+				Assert.assertEquals(Double.valueOf(keys[i]), Double.valueOf(tree.floorKey(keys[i], Double.NaN)));
+			}
+			Assert.assertEquals(-2.5, tree.floorKey(-1.0, Double.NaN), 0);
+			Assert.assertTrue(Double.isNaN(tree.ceilingKey(Double.NaN, Double.NaN)));
+			Assert.assertEquals("soso0", tree.floorValue(-1e10));
+			PrimitiveIterator.OfDouble iterator = tree.keyIterator();
+			for (int i = 0; i < keys.length; i++) {
+				Assert.assertEquals(Double.valueOf(keys[i]), Double.valueOf(iterator.nextDouble()));
+				if (i > 0)
+					Assert.assertEquals(Double.valueOf(keys[i - 1]), Double.valueOf(tree.lowerKey(keys[i], Double.NaN)));
+				if (i < keys.length - 1)
+					Assert.assertEquals("soso" + (i + 1), tree.higherValue(keys[i]));
+			}
+			Assert.assertFalse(iterator.hasNext());
+			Assert.assertEquals(Double.NEGATIVE_INFINITY, tree.firstKey(Double.NaN), 0);
+			Assert.assertEquals(Double.POSITIVE_INFINITY, tree.lastKey(Double.NaN), 0);
+			Assert.assertTrue(Double.isNaN(tree.higherKey(Double.POSITIVE_INFINITY, Double.NaN)));
+			Assert.assertTrue(tree.remove(Double.NEGATIVE_INFINITY));
+			Assert.assertNull(tree.floorValue(-1e10));
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in double red black tree", e);
+		}
+	}
+
+	/**
+	 * Test the off heap tree against java's TreeMap.
+	 */
+	@Test
+	public void testOffHeapLongRedBlackTree() {
+
+		OffHeapLongRedBlackTree tree = new OffHeapLongRedBlackTree();
+		try {
+			TreeMap<Long, Long> t = new TreeMap<>();
+			Random r = new Random();
+			for (int i = 0; i < 200000; i++) {
+				long key = r.nextInt(100000);
+				if (r.nextInt(3) == 0) {
+					Assert.assertEquals(t.remove(key) != null, tree.remove(key));
+				} else {
+					t.put(key, (long) i);
+					tree.put(key, i);
+				}
+			}
+			Assert.assertEquals(t.size(), tree.size());
+			for (long key = -1; key <= 100001; key += 7) {
+				Assert.assertEquals(t.containsKey(key) ? t.get(key) : -1L, tree.get(key, -1L));
+				Assert.assertEquals(t.ceilingKey(key) == null ? -1L : t.ceilingKey(key), tree.ceilingKey(key, -1L));
+				Assert.assertEquals(t.floorKey(key) == null ? -1L : t.floorKey(key), tree.floorKey(key, -1L));
+			}
+			tree.close();
+			tree.get(1, -1L);
+			Assert.fail();
+		} catch (RuntimeErrorException ex) {
+		} catch (Throwable e) {
+			TestRunner.fail("Fail in off heap red black tree", e);
+		}
+	}
+
 	private boolean validateBST(INode<Integer, String> node, INode<Integer, String> leftRange, INode<Integer, String> rightRange) {
 		if (node == null || node.isNull()) return true;
 		
@@ -1727,6 +3429,32 @@ public class UnitTest {
 		return verifyProperty2(root) && verifyProperty3(root) && verifyProperty4(root) && verifyProperty5(root) && validateBST(root, null, null);
 	}
 
+	/**
+	 * Checks every child points back at its parent and the root has none.
+	 */
+	private boolean verifyLinks(INode<Integer, String> root) {
+		if (root.isNull()) {
+			return true;
+		}
+		if (root.getParent() != null) {
+			return false;
+		}
+		Queue<INode<Integer, String>> queue = new LinkedList<>();
+		queue.add(root);
+		while (!queue.isEmpty()) {
+			INode<Integer, String> node = queue.poll();
+			for (INode<Integer, String> child : Arrays.asList(node.getLeftChild(), node.getRightChild())) {
+				if (!child.isNull()) {
+					if (child.getParent() != node) {
+						return false;
+					}
+					queue.add(child);
+				}
+			}
+		}
+		return true;
+	}
+
 	private boolean isRed(INode<Integer, String> node) {
 		if (node == null || node.isNull()) return INode.BLACK;
 		return node.getColor() == INode.RED;
@@ -0,0 +1,699 @@
+package eg.edu.alexu.csd.filestructure.redblacktree;
+
+import javax.management.RuntimeErrorException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+
+/**
+ * Multi version {@link IVersionedTreeMap}. Every key ever written sits in a persistent index
+ * (see {@link PersistentRedBlackTree}) whose value is the key's version chain, newest first;
+ * a remove pushes a tombstone. Overwriting a key only pushes onto its chain, and adding a key
+ * publishes a path copied index root, so readers never lock and never see a tree mid rotation.
+ * Writers take turns on one lock and stamp each write with the next epoch.
+ * Reclamation is epoch based: chains written since the last pass are cut below their newest
+ * version at or before the oldest pinned timestamp, and keys whose only version left is a
+ * tombstone leave the index.
+ */
+class VersionedTreeMap<T extends Comparable<T>, V> implements IVersionedTreeMap<T, V> {
+
+    /**
+     * Chains written since the last reclamation pass that make the next write run one; the
+     * bar doubles while pinned readers keep chains from being cut.
+     */
+    private static final int RECLAIM_EVERY = 1024;
+
+    /**
+     * One value of a key, or a tombstone when value is null, visible from stamp on.
+     */
+    private static final class Version<V> {
+        final long stamp;
+        final V value;
+        volatile Version<V> older;
+
+        Version(long stamp, V value, Version<V> older) {
+            this.stamp = stamp;
+            this.value = value;
+            this.older = older;
+        }
+    }
+
+    private static final class Chain<V> {
+        volatile Version<V> head;
+
+        Chain(Version<V> head) {
+            this.head = head;
+        }
+
+        /**
+         * return the newest version at or before the timestamp, or null if there is none.
+         */
+        Version<V> at(long timestamp) {
+            Version<V> version = head;
+            while (version != null && version.stamp > timestamp) {
+                version = version.older;
+            }
+            return version;
+        }
+    }
+
+    private final Comparator<? super T> comparator;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile PersistentNode<T, Chain<V>> root = PersistentNode.nil();
+    private volatile long epoch;
+    private volatile int size;
+    /**
+     * Oldest timestamp whose versions are all still kept.
+     */
+    private volatile long horizon;
+    /**
+     * Number of readers pinned at each timestamp.
+     */
+    private final ConcurrentHashMap<Long, Integer> pins = new ConcurrentHashMap<>();
+    private ArrayDeque<T> written = new ArrayDeque<>();
+    private int reclaimAt = RECLAIM_EVERY;
+
+    VersionedTreeMap() {
+        this(null);
+    }
+
+    VersionedTreeMap(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    /**
+     * Announces the timestamp before trusting it: a reclamation pass runs between writes, so
+     * if the epoch is unchanged after the announcement, any pass that missed it kept this
+     * epoch's versions anyway.
+     */
+    public long pin() {
+        while (true) {
+            long timestamp = epoch;
+            pins.merge(timestamp, 1, Integer::sum);
+            if (epoch == timestamp) {
+                return timestamp;
+            }
+            unpin(timestamp);
+        }
+    }
+
+    public void unpin(long timestamp) {
+        if (!pins.containsKey(timestamp)) {
+            throw new RuntimeErrorException(new Error("Can't unpin a timestamp that isn't pinned"));
+        }
+        pins.computeIfPresent(timestamp, (k, pinned) -> pinned == 1 ? null : pinned - 1);
+    }
+
+    /**
+     * Checks that nothing visible at the timestamp has been reclaimed; called after a read,
+     * so a read that raced with reclamation is reported rather than answered wrongly.
+     */
+    private void checkKept(long timestamp) {
+        if (timestamp < horizon) {
+            throw new RuntimeErrorException(new Error("Can't read at a timestamp older than the kept versions"));
+        }
+        if (timestamp > epoch) {
+            throw new RuntimeErrorException(new Error("Can't read at a timestamp in the future"));
+        }
+    }
+
+    private V valueAt(PersistentNode<T, Chain<V>> node, long timestamp) {
+        if (node.isNull()) {
+            return null;
+        }
+        Version<V> version = node.value.at(timestamp);
+        return version == null ? null : version.value;
+    }
+
+    public V get(T key, long timestamp) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't get the value of a null key"));
+        }
+        V value = valueAt(PersistentRedBlackTree.find(root, key, comparator), timestamp);
+        checkKept(timestamp);
+        return value;
+    }
+
+    public Map.Entry<T, V> ceilingEntry(T key, long timestamp) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a ceil for null key"));
+        }
+        Cursor cursor = new Cursor(key, true, null, false, timestamp, false);
+        Map.Entry<T, V> entry = cursor.hasNext() ? cursor.next() : null;
+        checkKept(timestamp);
+        return entry;
+    }
+
+    public Iterator<Map.Entry<T, V>> range(T from, T to, long timestamp) {
+        checkKept(timestamp);
+        return new Cursor(from, true, to, false, timestamp, false);
+    }
+
+    /**
+     * In key order walk over one index root, skipping keys with no value at the timestamp.
+     * It keeps the path to the next node on a stack, ascending or descending from an
+     * inclusive start and stopping at an optional end.
+     */
+    private final class Cursor implements Iterator<Map.Entry<T, V>> {
+        @SuppressWarnings("unchecked")
+        private final PersistentNode<T, Chain<V>>[] path = (PersistentNode<T, Chain<V>>[]) new PersistentNode<?, ?>[64];
+        private int depth;
+        private final T end;
+        private final boolean endInclusive;
+        private final long timestamp;
+        private final boolean descending;
+        private Map.Entry<T, V> next;
+
+        Cursor(T start, boolean startInclusive, T end, boolean endInclusive, long timestamp, boolean descending) {
+            this.end = end;
+            this.endInclusive = endInclusive;
+            this.timestamp = timestamp;
+            this.descending = descending;
+            PersistentNode<T, Chain<V>> current = root;
+            while (!current.isNull()) {
+                int comparison = start == null ? (descending ? 1 : -1) : compare(start, current.key);
+                if (descending ? comparison > 0 || comparison == 0 && startInclusive : comparison < 0 || comparison == 0 && startInclusive) {
+                    path[depth++] = current;
+                    current = descending ? current.right : current.left;
+                } else {
+                    current = descending ? current.left : current.right;
+                }
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && depth > 0) {
+                PersistentNode<T, Chain<V>> node = path[--depth];
+                for (PersistentNode<T, Chain<V>> child = descending ? node.left : node.right; !child.isNull();
+                     child = descending ? child.right : child.left) {
+                    path[depth++] = child;
+                }
+                if (end != null) {
+                    int comparison = compare(node.key, end);
+                    if (descending ? comparison < 0 || comparison == 0 && !endInclusive : comparison > 0 || comparison == 0 && !endInclusive) {
+                        depth = 0;
+                        return;
+                    }
+                }
+                V value = valueAt(node, timestamp);
+                if (value != null) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(node.key, value);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<T, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<T, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+
+    /**
+     * Runs a read of the latest version with its timestamp pinned.
+     */
+    private <R> R latest(LongFunction<R> read) {
+        long timestamp = pin();
+        try {
+            return read.apply(timestamp);
+        } finally {
+            unpin(timestamp);
+        }
+    }
+
+    private Map.Entry<T, V> first(T start, boolean inclusive, boolean descending) {
+        return latest(timestamp -> {
+            Cursor cursor = new Cursor(start, inclusive, null, false, timestamp, descending);
+            return cursor.hasNext() ? cursor.next() : null;
+        });
+    }
+
+    private List<Map.Entry<T, V>> entries(T end, boolean inclusive) {
+        return latest(timestamp -> {
+            List<Map.Entry<T, V>> list = new ArrayList<>();
+            for (Cursor cursor = new Cursor(null, true, end, inclusive, timestamp, false); cursor.hasNext(); ) {
+                list.add(cursor.next());
+            }
+            return list;
+        });
+    }
+
+    public Map.Entry<T, V> ceilingEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a ceil for null key"));
+        }
+        return first(key, true, false);
+    }
+
+    public T ceilingKey(T key) {
+        Map.Entry<T, V> entry = ceilingEntry(key);
+        return entry == null ? null : entry.getKey();
+    }
+
+    /**
+     * Removes every key as one write, so earlier timestamps still see them.
+     */
+    public void clear() {
+        writeLock.lock();
+        try {
+            long stamp = epoch + 1;
+            for (Cursor cursor = new Cursor(null, true, null, false, epoch, false); cursor.hasNext(); ) {
+                write(cursor.next().getKey(), null, stamp);
+            }
+            publish(stamp);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean containsKey(T key) {
+        return get(key) != null;
+    }
+
+    public boolean containsValue(V value) {
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't search for a null value"));
+        }
+        for (Map.Entry<T, V> entry : entries(null, false)) {
+            if (entry.getValue().equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<Map.Entry<T, V>> entrySet() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(entries(null, false)));
+    }
+
+    public Map.Entry<T, V> firstEntry() {
+        return first(null, true, false);
+    }
+
+    public T firstKey() {
+        Map.Entry<T, V> entry = firstEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    public Map.Entry<T, V> floorEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a floor for null key"));
+        }
+        return first(key, true, true);
+    }
+
+    public T floorKey(T key) {
+        Map.Entry<T, V> entry = floorEntry(key);
+        return entry == null ? null : entry.getKey();
+    }
+
+    public V get(T key) {
+        return latest(timestamp -> get(key, timestamp));
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey) {
+        return headMap(toKey, false);
+    }
+
+    public ArrayList<Map.Entry<T, V>> headMap(T toKey, boolean inclusive) {
+        if (toKey == null) {
+            throw new RuntimeErrorException(new Error("Can't get the headMap of null key"));
+        }
+        return new ArrayList<>(entries(toKey, inclusive));
+    }
+
+    public Map.Entry<T, V> higherEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a higher entry for null key"));
+        }
+        return first(key, false, false);
+    }
+
+    public T higherKey(T key) {
+        Map.Entry<T, V> entry = higherEntry(key);
+        return entry == null ? null : entry.getKey();
+    }
+
+    public Set<T> keySet() {
+        Set<T> result = new LinkedHashSet<>();
+        for (Map.Entry<T, V> entry : entries(null, false)) {
+            result.add(entry.getKey());
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    public Map.Entry<T, V> lastEntry() {
+        return first(null, true, true);
+    }
+
+    public T lastKey() {
+        Map.Entry<T, V> entry = lastEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    public Map.Entry<T, V> lowerEntry(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't find a lower entry for null key"));
+        }
+        return first(key, false, true);
+    }
+
+    public T lowerKey(T key) {
+        Map.Entry<T, V> entry = lowerEntry(key);
+        return entry == null ? null : entry.getKey();
+    }
+
+    public Map.Entry<T, V> pollFirstEntry() {
+        return poll(false);
+    }
+
+    public Map.Entry<T, V> pollLastEntry() {
+        return poll(true);
+    }
+
+    private Map.Entry<T, V> poll(boolean last) {
+        writeLock.lock();
+        try {
+            Cursor cursor = new Cursor(null, true, null, false, epoch, last);
+            if (!cursor.hasNext()) {
+                return null;
+            }
+            Map.Entry<T, V> entry = cursor.next();
+            long stamp = epoch + 1;
+            write(entry.getKey(), null, stamp);
+            publish(stamp);
+            return entry;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void put(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        writeLock.lock();
+        try {
+            long stamp = epoch + 1;
+            write(key, value, stamp);
+            publish(stamp);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public V putIfAbsent(T key, V value) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a value with null key"));
+        }
+        if (value == null) {
+            throw new RuntimeErrorException(new Error("Can't insert a null value"));
+        }
+        writeLock.lock();
+        try {
+            V previous = valueAt(PersistentRedBlackTree.find(root, key, comparator), epoch);
+            if (previous == null) {
+                long stamp = epoch + 1;
+                write(key, value, stamp);
+                publish(stamp);
+            }
+            return previous;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs function under the write lock, so it must not write to this map.
+     * A result identical to the current value stamps no new version.
+     */
+    public V compute(T key, BiFunction<? super T, ? super V, ? extends V> function) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't compute a value for a null key"));
+        }
+        if (function == null) {
+            throw new RuntimeErrorException(new Error("Can't compute with a null function"));
+        }
+        writeLock.lock();
+        try {
+            V previous = valueAt(PersistentRedBlackTree.find(root, key, comparator), epoch);
+            V value = function.apply(key, previous);
+            if (value != previous) {
+                long stamp = epoch + 1;
+                write(key, value, stamp);
+                publish(stamp);
+            }
+            return value;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stamps all the entries with one epoch, so readers see either none or all of them.
+     */
+    public void putAll(Map<T, V> map) {
+        if (map == null) {
+            throw new RuntimeErrorException(new Error("Can't add a keys-values from a null map"));
+        }
+        for (Map.Entry<T, V> entry : map.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                throw new RuntimeErrorException(new Error("Can't insert a null key or value"));
+            }
+        }
+        writeLock.lock();
+        try {
+            long stamp = epoch + 1;
+            for (Map.Entry<T, V> entry : map.entrySet()) {
+                write(entry.getKey(), entry.getValue(), stamp);
+            }
+            publish(stamp);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stamps the whole batch with one epoch.
+     */
+    public List<V> applyBatch(List<Op<T, V>> ops) {
+        if (ops == null || ops.contains(null)) {
+            throw new RuntimeErrorException(new Error("Can't apply a null op"));
+        }
+        writeLock.lock();
+        try {
+            long stamp = epoch + 1;
+            List<V> previous = new ArrayList<>(ops.size());
+            for (Op<T, V> op : ops) {
+                previous.add(write(op.getKey(), op.getValue(), stamp));
+            }
+            publish(stamp);
+            return previous;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean remove(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't delete a null key!"));
+        }
+        writeLock.lock();
+        try {
+            long stamp = epoch + 1;
+            boolean removed = write(key, null, stamp) != null;
+            publish(stamp);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Makes key hold value, or a tombstone if it is null, from stamp on.
+     * Writes under the same stamp replace each other. Must hold the write lock.
+     *
+     * @return the latest value key held before.
+     */
+    private V write(T key, V value, long stamp) {
+        PersistentNode<T, Chain<V>> node = PersistentRedBlackTree.find(root, key, comparator);
+        if (node.isNull()) {
+            if (value != null) {
+                root = new PersistentRedBlackTree.Update<T, Chain<V>>(comparator).insert(root, key, new Chain<>(new Version<>(stamp, value, null)));
+                size++;
+            }
+            return null;
+        }
+        Chain<V> chain = node.value;
+        Version<V> head = chain.head;
+        if (head.value == null && value == null) {
+            return null;
+        }
+        Version<V> older = head.stamp == stamp ? head.older : head;
+        chain.head = new Version<>(stamp, value, older);
+        if (head.value == null) {
+            size++;
+        } else if (value == null) {
+            size--;
+        }
+        written.add(key);
+        return head.value;
+    }
+
+    /**
+     * Makes the writes stamped with stamp visible, then reclaims if enough chains grew.
+     * Must hold the write lock.
+     */
+    private void publish(long stamp) {
+        epoch = stamp;
+        if (written.size() >= reclaimAt) {
+            reclaim();
+            reclaimAt = Math.max(RECLAIM_EVERY, 2 * written.size());
+        }
+    }
+
+    /**
+     * Cuts every chain written since the last pass below its newest version visible at the
+     * oldest pinned timestamp. Chains still holding newer versions are kept for the next pass.
+     */
+    void reclaim() {
+        writeLock.lock();
+        try {
+            long oldest = epoch;
+            for (Long pinned : pins.keySet()) {
+                oldest = Math.min(oldest, pinned);
+            }
+            horizon = Math.max(horizon, oldest);
+            ArrayDeque<T> pending = written;
+            written = new ArrayDeque<>();
+            for (T key : pending) {
+                PersistentNode<T, Chain<V>> node = PersistentRedBlackTree.find(root, key, comparator);
+                if (node.isNull()) {
+                    continue;
+                }
+                Chain<V> chain = node.value;
+                Version<V> kept = chain.at(oldest);
+                if (kept == null) {
+                    written.add(key);
+                    continue;
+                }
+                kept.older = null;
+                if (kept != chain.head) {
+                    written.add(key);
+                } else if (kept.value == null) {
+                    root = new PersistentRedBlackTree.Update<T, Chain<V>>(comparator).delete(root, key);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * return the number of versions, tombstones included, held by the index.
+     */
+    int versions() {
+        int count = 0;
+        ArrayDeque<PersistentNode<T, Chain<V>>> stack = new ArrayDeque<>();
+        if (!root.isNull()) {
+            stack.push(root);
+        }
+        while (!stack.isEmpty()) {
+            PersistentNode<T, Chain<V>> node = stack.pop();
+            for (Version<V> version = node.value.head; version != null; version = version.older) {
+                count++;
+            }
+            if (!node.left.isNull()) {
+                stack.push(node.left);
+            }
+            if (!node.right.isNull()) {
+                stack.push(node.right);
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Linear in the number of indexed keys: removed keys stay in the index until reclaimed,
+     * so the index's subtree sizes don't count live keys.
+     */
+    public int rank(T key) {
+        if (key == null) {
+            throw new RuntimeErrorException(new Error("Can't rank a null key"));
+        }
+        return entries(key, false).size();
+    }
+
+    public Map.Entry<T, V> select(int index) {
+        if (index < 0) {
+            return null;
+        }
+        return latest(timestamp -> {
+            int at = 0;
+            for (Cursor cursor = new Cursor(null, true, null, false, timestamp, false); cursor.hasNext(); at++) {
+                Map.Entry<T, V> entry = cursor.next();
+                if (at == index) {
+                    return entry;
+                }
+            }
+            return null;
+        });
+    }
+
+    public int countInRange(T lo, T hi) {
+        if (lo == null || hi == null) {
+            throw new RuntimeErrorException(new Error("Can't count a range with a null bound"));
+        }
+        if (compare(lo, hi) > 0) {
+            return 0;
+        }
+        return latest(timestamp -> {
+            int count = 0;
+            for (Cursor cursor = new Cursor(lo, true, hi, true, timestamp, false); cursor.hasNext(); cursor.next()) {
+                count++;
+            }
+            return count;
+        });
+    }
+
+    public Collection<V> values() {
+        List<V> values = new ArrayList<>();
+        for (Map.Entry<T, V> entry : entries(null, false)) {
+            values.add(entry.getValue());
+        }
+        return values;
+    }
+}
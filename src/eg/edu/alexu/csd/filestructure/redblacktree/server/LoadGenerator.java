@@ -0,0 +1,113 @@
+package eg.edu.alexu.csd.filestructure.redblacktree.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives a {@link TreeMapServer} from several connections, each sending pipelines of mixed
+ * gets, puts and short scans over random keys, and reports throughput and round trip latency.
+ * Run with {@code java LoadGenerator host port connections depth seconds}.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7379;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        double seconds = args.length > 4 ? Double.parseDouble(args[4]) : 5;
+        run(host, port, connections, depth, seconds, 1000000);
+    }
+
+    /**
+     * Runs the load and prints one line of results.
+     * @param connections number of connections, each on its own thread.
+     * @param depth       requests per pipeline.
+     * @param seconds     how long to run.
+     * @param keys        size of the key space.
+     */
+    public static void run(final String host, final int port, int connections, final int depth, double seconds,
+                           final int keys) throws Exception {
+        final long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        final long[][] latencies = new long[connections][];
+        final int[] counts = new int[connections];
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(connections);
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            final int index = c;
+            new Thread(new Runnable() {
+                public void run() {
+                    long[] samples = new long[1024];
+                    int count = 0;
+                    try (TreeMapClient client = new TreeMapClient(host, port)) {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (System.nanoTime() < deadline) {
+                            TreeMapClient.Pipeline pipeline = client.pipeline();
+                            for (int i = 0; i < depth; i++) {
+                                String key = key(random.nextInt(keys));
+                                int kind = random.nextInt(10);
+                                if (kind < 5) {
+                                    pipeline.get(key);
+                                } else if (kind < 9) {
+                                    pipeline.put(key, key);
+                                } else {
+                                    pipeline.scan(key, 10);
+                                }
+                            }
+                            long sent = System.nanoTime();
+                            pipeline.sync();
+                            if (count == samples.length) {
+                                samples = Arrays.copyOf(samples, 2 * count);
+                            }
+                            samples[count++] = System.nanoTime() - sent;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        latencies[index] = samples;
+                        counts[index] = count;
+                        done.countDown();
+                    }
+                }
+            }, "load-" + c).start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int at = 0;
+        for (int c = 0; c < connections; c++) {
+            System.arraycopy(latencies[c], 0, all, at, counts[c]);
+            at += counts[c];
+        }
+        Arrays.sort(all);
+        System.out.printf("  connections %3d  depth %3d  %10.0f requests/s  round trip p50 %8.1f us  p99 %8.1f us%n",
+                connections, depth, (double) total * depth / (elapsed / 1e9),
+                percentile(all, 0.50) / 1e3, percentile(all, 0.99) / 1e3);
+    }
+
+    /**
+     * return a fixed width key, so the string order matches the numeric one.
+     */
+    public static String key(int number) {
+        String digits = Integer.toString(number);
+        return "0000000000".substring(digits.length()) + digits;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,92 @@
+package eg.edu.alexu.csd.filestructure.redblacktree.server;
+
+import javax.management.RuntimeErrorException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by {@link TreeMapServer} and {@link TreeMapClient}.
+ * Every request and every response is a frame: an int length followed by that many bytes.
+ * A request body is an op code and its arguments; a response body is a status and its result.
+ * Strings are an int byte count followed by UTF-8 bytes. Responses come back in request
+ * order, so a client may write many requests before reading any response.
+ */
+final class Protocol {
+    static final byte GET = 1;
+    static final byte PUT = 2;
+    static final byte REMOVE = 3;
+    static final byte CONTAINS = 4;
+    static final byte CEILING = 5;
+    static final byte FLOOR = 6;
+    static final byte HEAD = 7;
+    static final byte SCAN = 8;
+    static final byte SIZE = 9;
+    static final byte FIRST = 10;
+    static final byte LAST = 11;
+
+    static final byte OK = 0;
+    static final byte NONE = 1;
+    static final byte ERROR = 2;
+
+    /**
+     * Largest frame either side accepts, so a bad length can't make the peer allocate without bound.
+     */
+    static final int MAX_FRAME = 1 << 24;
+
+    private Protocol() {
+    }
+
+    static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new RuntimeErrorException(new Error("Can't read a string past the end of the frame"));
+        }
+        String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * return the number of bytes a string takes in a frame.
+     */
+    static int sizeOf(String string) {
+        return 4 + 3 * string.length();
+    }
+
+    /**
+     * return a buffer holding the contents of the given one, flipped for writing, with room for extra more bytes.
+     */
+    static ByteBuffer ensure(ByteBuffer buffer, int extra) {
+        if (buffer.remaining() >= extra) {
+            return buffer;
+        }
+        int capacity = buffer.capacity();
+        while (capacity - buffer.position() < extra) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * return the length of the frame at the buffer's position if all of it has arrived, or -1.
+     */
+    static int completeFrame(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return -1;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > MAX_FRAME) {
+            throw new RuntimeErrorException(new Error("Can't accept a frame of " + length + " bytes"));
+        }
+        return buffer.remaining() - 4 >= length ? length : -1;
+    }
+}
@@ -0,0 +1,285 @@
+package eg.edu.alexu.csd.filestructure.redblacktree.server;
+
+import javax.management.RuntimeErrorException;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocking client for a {@link TreeMapServer}. Each single call is one round trip; a
+ * {@link Pipeline} sends any number of requests in one write and then reads all the responses.
+ * A client is not thread safe.
+ */
+public class TreeMapClient implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Connects to the server listening on the given host and port.
+     * @param host
+     * @param port
+     * @throws IOException if the connection fails.
+     */
+    public TreeMapClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        in.flip();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * return an empty pipeline on this connection.
+     * @return pipeline.
+     */
+    public Pipeline pipeline() {
+        return new Pipeline();
+    }
+
+    public String get(String key) throws IOException {
+        return (String) pipeline().get(key).sync().get(0);
+    }
+
+    /**
+     * Maps key to value and returns the value it replaced, or null.
+     */
+    public String put(String key, String value) throws IOException {
+        return (String) pipeline().put(key, value).sync().get(0);
+    }
+
+    public boolean remove(String key) throws IOException {
+        return (Boolean) pipeline().remove(key).sync().get(0);
+    }
+
+    public boolean containsKey(String key) throws IOException {
+        return (Boolean) pipeline().containsKey(key).sync().get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map.Entry<String, String> ceilingEntry(String key) throws IOException {
+        return (Map.Entry<String, String>) pipeline().ceilingEntry(key).sync().get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map.Entry<String, String> floorEntry(String key) throws IOException {
+        return (Map.Entry<String, String>) pipeline().floorEntry(key).sync().get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map.Entry<String, String> firstEntry() throws IOException {
+        return (Map.Entry<String, String>) pipeline().firstEntry().sync().get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map.Entry<String, String> lastEntry() throws IOException {
+        return (Map.Entry<String, String>) pipeline().lastEntry().sync().get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Map.Entry<String, String>> headMap(String toKey, boolean inclusive) throws IOException {
+        return (List<Map.Entry<String, String>>) pipeline().headMap(toKey, inclusive).sync().get(0);
+    }
+
+    /**
+     * return up to limit entries in key order, starting at the least key greater than or equal to from.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map.Entry<String, String>> scan(String from, int limit) throws IOException {
+        return (List<Map.Entry<String, String>>) pipeline().scan(from, limit).sync().get(0);
+    }
+
+    public int size() throws IOException {
+        return (Integer) pipeline().size().sync().get(0);
+    }
+
+    /**
+     * Requests queued to be sent together. {@link #sync()} returns one result per request, in
+     * order, typed as the matching single call's result.
+     */
+    public final class Pipeline {
+        private ByteBuffer out = ByteBuffer.allocate(256);
+        private final List<Byte> ops = new ArrayList<>();
+        private int frameStart;
+
+        private Pipeline() {
+        }
+
+        public Pipeline get(String key) {
+            return request(Protocol.GET, key);
+        }
+
+        public Pipeline put(String key, String value) {
+            if (value == null) {
+                throw new RuntimeErrorException(new Error("Can't insert a null value"));
+            }
+            return request(Protocol.PUT, key, value);
+        }
+
+        public Pipeline remove(String key) {
+            return request(Protocol.REMOVE, key);
+        }
+
+        public Pipeline containsKey(String key) {
+            return request(Protocol.CONTAINS, key);
+        }
+
+        public Pipeline ceilingEntry(String key) {
+            return request(Protocol.CEILING, key);
+        }
+
+        public Pipeline floorEntry(String key) {
+            return request(Protocol.FLOOR, key);
+        }
+
+        public Pipeline firstEntry() {
+            return request(Protocol.FIRST);
+        }
+
+        public Pipeline lastEntry() {
+            return request(Protocol.LAST);
+        }
+
+        public Pipeline headMap(String toKey, boolean inclusive) {
+            request(Protocol.HEAD, toKey);
+            out.put((byte) (inclusive ? 1 : 0));
+            return seal();
+        }
+
+        public Pipeline scan(String from, int limit) {
+            request(Protocol.SCAN, from);
+            out.putInt(limit);
+            return seal();
+        }
+
+        public Pipeline size() {
+            return request(Protocol.SIZE);
+        }
+
+        /**
+         * return the number of queued requests.
+         */
+        public int count() {
+            return ops.size();
+        }
+
+        /**
+         * Sends the queued requests and reads their responses, leaving the pipeline empty.
+         * @return one result per request.
+         * @throws IOException if the connection fails.
+         */
+        public List<Object> sync() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+            List<Object> results = new ArrayList<>(ops.size());
+            String error = null;
+            for (byte op : ops) {
+                ByteBuffer frame = readFrame();
+                byte status = frame.get();
+                if (status == Protocol.ERROR) {
+                    String message = Protocol.getString(frame);
+                    error = error == null ? message : error;
+                    results.add(null);
+                } else {
+                    results.add(status == Protocol.NONE ? null : decode(op, frame));
+                }
+            }
+            ops.clear();
+            if (error != null) {
+                throw new RuntimeErrorException(new Error(error));
+            }
+            return results;
+        }
+
+        /**
+         * Writes a request frame with room for one more int argument, which {@link #seal()} counts in.
+         */
+        private Pipeline request(byte op, String... strings) {
+            int size = 4 + 1 + 4;
+            for (String string : strings) {
+                if (string == null) {
+                    throw new RuntimeErrorException(new Error("Can't send a null key"));
+                }
+                size += Protocol.sizeOf(string);
+            }
+            out = Protocol.ensure(out, size);
+            frameStart = out.position();
+            out.putInt(0).put(op);
+            for (String string : strings) {
+                Protocol.putString(out, string);
+            }
+            ops.add(op);
+            return seal();
+        }
+
+        private Pipeline seal() {
+            out.putInt(frameStart, out.position() - frameStart - 4);
+            return this;
+        }
+    }
+
+    private Object decode(byte op, ByteBuffer frame) {
+        switch (op) {
+            case Protocol.GET:
+            case Protocol.PUT:
+                return Protocol.getString(frame);
+            case Protocol.REMOVE:
+            case Protocol.CONTAINS:
+                return frame.get() != 0;
+            case Protocol.SIZE:
+                return frame.getInt();
+            case Protocol.HEAD:
+            case Protocol.SCAN:
+                int count = frame.getInt();
+                List<Map.Entry<String, String>> entries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    entries.add(entry(frame));
+                }
+                return entries;
+            default:
+                return entry(frame);
+        }
+    }
+
+    private static Map.Entry<String, String> entry(ByteBuffer frame) {
+        String key = Protocol.getString(frame);
+        return new AbstractMap.SimpleImmutableEntry<>(key, Protocol.getString(frame));
+    }
+
+    /**
+     * Blocks until the next whole response frame has arrived and returns its body.
+     */
+    private ByteBuffer readFrame() throws IOException {
+        int length;
+        while ((length = Protocol.completeFrame(in)) < 0) {
+            int pending = in.remaining() >= 4 ? in.getInt(in.position()) + 4 : 0;
+            in.compact();
+            if (pending > in.capacity()) {
+                in = Protocol.ensure(in, pending - in.position());
+            }
+            int read = channel.read(in);
+            in.flip();
+            if (read < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+        in.getInt();
+        ByteBuffer frame = in.slice();
+        frame.limit(length);
+        in.position(in.position() + length);
+        return frame;
+    }
+}
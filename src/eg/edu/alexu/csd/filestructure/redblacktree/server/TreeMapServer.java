@@ -0,0 +1,419 @@
+package eg.edu.alexu.csd.filestructure.redblacktree.server;
+
+import eg.edu.alexu.csd.filestructure.redblacktree.ITreeMap;
+import eg.edu.alexu.csd.filestructure.redblacktree.Op;
+
+import javax.management.RuntimeErrorException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves an {@link ITreeMap} over TCP in the {@link Protocol} wire format.
+ * One selector thread owns every connection and is the only thread touching the map, so the
+ * map needs no locking of its own. All the requests that arrived on a connection in one read
+ * are executed together, and each run of consecutive puts and removes among them is applied
+ * with a single {@link ITreeMap#applyBatch} call; the responses go back in one write.
+ */
+public class TreeMapServer implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ITreeMap<String, String> map;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private Thread loop;
+    private volatile boolean closed;
+
+    /**
+     * Binds the server to the given port on every interface, or to a free port if it is zero.
+     * @param map   to serve.
+     * @param port  to listen on.
+     * @throws IOException if the port can't be bound.
+     */
+    public TreeMapServer(ITreeMap<String, String> map, int port) throws IOException {
+        if (map == null) {
+            throw new RuntimeErrorException(new Error("Can't serve a null map"));
+        }
+        this.map = map;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * return the port the server listens on.
+     * @return port.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Starts serving on a background thread.
+     */
+    public synchronized void start() {
+        if (loop != null) {
+            throw new RuntimeErrorException(new Error("Can't start a server twice"));
+        }
+        loop = new Thread(new Runnable() {
+            public void run() {
+                serve();
+            }
+        }, "tree-map-server-" + getPort());
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    /**
+     * Stops serving and closes every connection.
+     */
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        Thread thread;
+        synchronized (this) {
+            thread = loop;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        drop(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            closed = true;
+        }
+    }
+
+    /**
+     * Closes a failed connection; an error closing it must not stop the loop serving the others.
+     */
+    private void drop(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // the channel is unusable either way and its key is already cancelled
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    /**
+     * One decoded request; error is set instead when the frame could not be decoded.
+     */
+    private static final class Request {
+        byte op;
+        String key;
+        String value;
+        int number;
+        String error;
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        private int frameStart;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                key.cancel();
+                channel.close();
+                return;
+            }
+            in.flip();
+            List<Request> requests = new ArrayList<>();
+            int length;
+            while ((length = Protocol.completeFrame(in)) >= 0) {
+                in.getInt();
+                ByteBuffer frame = in.slice();
+                frame.limit(length);
+                in.position(in.position() + length);
+                requests.add(decode(frame));
+            }
+            int pending = in.remaining() >= 4 ? in.getInt(in.position()) + 4 : 0;
+            in.compact();
+            if (pending > in.capacity()) {
+                in = Protocol.ensure(in, pending - in.position());
+            }
+            if (!requests.isEmpty()) {
+                execute(requests);
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            key.interestOps(out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            out.compact();
+        }
+
+        private Request decode(ByteBuffer frame) {
+            Request request = new Request();
+            try {
+                request.op = frame.get();
+                switch (request.op) {
+                    case Protocol.PUT:
+                        request.key = Protocol.getString(frame);
+                        request.value = Protocol.getString(frame);
+                        break;
+                    case Protocol.HEAD:
+                        request.key = Protocol.getString(frame);
+                        request.number = frame.get();
+                        break;
+                    case Protocol.SCAN:
+                        request.key = Protocol.getString(frame);
+                        request.number = frame.getInt();
+                        break;
+                    case Protocol.SIZE:
+                    case Protocol.FIRST:
+                    case Protocol.LAST:
+                        break;
+                    case Protocol.GET:
+                    case Protocol.REMOVE:
+                    case Protocol.CONTAINS:
+                    case Protocol.CEILING:
+                    case Protocol.FLOOR:
+                        request.key = Protocol.getString(frame);
+                        break;
+                    default:
+                        request.error = "Unknown op " + request.op;
+                }
+            } catch (BufferUnderflowException | RuntimeErrorException e) {
+                request.error = "Malformed request";
+            }
+            return request;
+        }
+
+        private void execute(List<Request> requests) {
+            List<Op<String, String>> run = new ArrayList<>();
+            for (Request request : requests) {
+                if (request.error == null && (request.op == Protocol.PUT || request.op == Protocol.REMOVE)) {
+                    run.add(request.op == Protocol.PUT ? Op.put(request.key, request.value) : Op.<String, String>remove(request.key));
+                    continue;
+                }
+                applyRun(run);
+                try {
+                    respond(request);
+                } catch (RuntimeException e) {
+                    error(message(e));
+                }
+            }
+            applyRun(run);
+        }
+
+        /**
+         * Applies a run of puts and removes as one batch and answers each with the value it replaced.
+         */
+        private void applyRun(List<Op<String, String>> run) {
+            if (run.isEmpty()) {
+                return;
+            }
+            try {
+                List<String> previous = map.applyBatch(run);
+                for (int i = 0; i < run.size(); i++) {
+                    String value = previous.get(i);
+                    if (run.get(i).isRemove()) {
+                        begin(1).put(Protocol.OK).put((byte) (value == null ? 0 : 1));
+                    } else if (value == null) {
+                        begin(0).put(Protocol.NONE);
+                    } else {
+                        begin(Protocol.sizeOf(value)).put(Protocol.OK);
+                        Protocol.putString(out, value);
+                    }
+                    end();
+                }
+            } catch (RuntimeException e) {
+                for (int i = 0; i < run.size(); i++) {
+                    error(message(e));
+                }
+            }
+            run.clear();
+        }
+
+        private void respond(Request request) {
+            if (request.error != null) {
+                error(request.error);
+                return;
+            }
+            switch (request.op) {
+                case Protocol.GET:
+                    string(map.get(request.key));
+                    break;
+                case Protocol.CONTAINS:
+                    boolean contained = map.containsKey(request.key);
+                    begin(1).put(Protocol.OK).put((byte) (contained ? 1 : 0));
+                    end();
+                    break;
+                case Protocol.CEILING:
+                    entry(map.ceilingEntry(request.key));
+                    break;
+                case Protocol.FLOOR:
+                    entry(map.floorEntry(request.key));
+                    break;
+                case Protocol.FIRST:
+                    entry(map.firstEntry());
+                    break;
+                case Protocol.LAST:
+                    entry(map.lastEntry());
+                    break;
+                case Protocol.SIZE:
+                    int size = map.size();
+                    begin(4).put(Protocol.OK).putInt(size);
+                    end();
+                    break;
+                case Protocol.HEAD:
+                    entries(map.headMap(request.key, request.number != 0));
+                    break;
+                default:
+                    scan(request.key, request.number);
+            }
+        }
+
+        /**
+         * Answers with up to limit entries starting at the least key greater than or equal to from.
+         */
+        private void scan(String from, int limit) {
+            if (limit < 0) {
+                throw new RuntimeErrorException(new Error("Can't scan a negative number of entries"));
+            }
+            int start = map.rank(from);
+            int end = (int) Math.min((long) start + limit, map.size());
+            List<Map.Entry<String, String>> entries = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                entries.add(map.select(i));
+            }
+            entries(entries);
+        }
+
+        private void string(String value) {
+            if (value == null) {
+                begin(0).put(Protocol.NONE);
+            } else {
+                begin(Protocol.sizeOf(value)).put(Protocol.OK);
+                Protocol.putString(out, value);
+            }
+            end();
+        }
+
+        private void entry(Map.Entry<String, String> entry) {
+            if (entry == null) {
+                begin(0).put(Protocol.NONE);
+            } else {
+                begin(Protocol.sizeOf(entry.getKey()) + Protocol.sizeOf(entry.getValue())).put(Protocol.OK);
+                Protocol.putString(out, entry.getKey());
+                Protocol.putString(out, entry.getValue());
+            }
+            end();
+        }
+
+        /**
+         * Answers with the entries, or with an error if they don't fit in one frame the client
+         * accepts; a large range has to be read in pages with SCAN.
+         */
+        private void entries(List<Map.Entry<String, String>> entries) {
+            long size = 4;
+            for (Map.Entry<String, String> entry : entries) {
+                size += Protocol.sizeOf(entry.getKey()) + Protocol.sizeOf(entry.getValue());
+            }
+            if (1 + size > Protocol.MAX_FRAME) {
+                throw new RuntimeErrorException(new Error("Can't answer with " + entries.size()
+                        + " entries in one frame, scan them in pages"));
+            }
+            begin((int) size).put(Protocol.OK).putInt(entries.size());
+            for (Map.Entry<String, String> entry : entries) {
+                Protocol.putString(out, entry.getKey());
+                Protocol.putString(out, entry.getValue());
+            }
+            end();
+        }
+
+        private void error(String message) {
+            begin(Protocol.sizeOf(message)).put(Protocol.ERROR);
+            Protocol.putString(out, message);
+            end();
+        }
+
+        /**
+         * Starts a response frame with room for the status and size more bytes.
+         */
+        private ByteBuffer begin(int size) {
+            out = Protocol.ensure(out, 4 + 1 + size);
+            frameStart = out.position();
+            out.putInt(0);
+            return out;
+        }
+
+        private void end() {
+            out.putInt(frameStart, out.position() - frameStart - 4);
+        }
+    }
+
+    private static String message(RuntimeException e) {
+        if (e instanceof RuntimeErrorException) {
+            return ((RuntimeErrorException) e).getTargetError().getMessage();
+        }
+        return String.valueOf(e);
+    }
+}